@@ -17,6 +17,7 @@
  */
 package org.jboss.arquillian.container.android.managed;
 
+import java.io.File;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -29,7 +30,10 @@ import org.jboss.arquillian.android.spi.event.AndroidUndeployArchive;
 import org.jboss.arquillian.container.android.api.IdentifierGenerator;
 import org.jboss.arquillian.container.android.managed.configuration.AndroidManagedContainerConfiguration;
 import org.jboss.arquillian.container.android.managed.configuration.AndroidSDK;
+import org.jboss.arquillian.container.android.managed.configuration.ExecutorStrategy;
+import org.jboss.arquillian.container.android.managed.impl.EmulatorReaper;
 import org.jboss.arquillian.container.android.managed.impl.ProcessExecutor;
+import org.jboss.arquillian.container.android.managed.impl.ProcessResultCache;
 import org.jboss.arquillian.container.android.utils.AndroidIdentifierGenerator;
 import org.jboss.arquillian.container.spi.client.container.DeployableContainer;
 import org.jboss.arquillian.container.spi.client.container.DeploymentException;
@@ -108,12 +112,15 @@ public class AndroidManagedDeployableContainer implements DeployableContainer<An
         this.configuration.set(configuration);
         this.androidSDK.set(new AndroidSDK(this.configuration.get()));
         this.idGenerator.set(new AndroidIdentifierGenerator());
-        this.executor.set(new ProcessExecutor());
     }
 
     @Override
     public void start() throws LifecycleException {
         logger.log(Level.INFO, "Starting the container {0}.", getContainerName());
+        // the executor is shut down when the container is stopped, a container started again needs a new one
+        AndroidManagedContainerConfiguration configuration = this.configuration.get();
+        this.executor.set(new ProcessExecutor(ExecutorStrategy.fromString(configuration.getExecutorStrategy()),
+            configuration.isCommandCache() ? new ProcessResultCache(new File(configuration.getCommandCacheFile())) : null));
         this.androidContainerStartEvent.fire(new AndroidContainerStart());
     }
 
@@ -134,7 +141,19 @@ public class AndroidManagedDeployableContainer implements DeployableContainer<An
     @Override
     public void stop() throws LifecycleException {
         logger.log(Level.INFO, "Stopping the container {0}.", getContainerName());
-        this.androidContainerStopEvent.fire(new AndroidContainerStop());
+        try {
+            this.androidContainerStopEvent.fire(new AndroidContainerStop());
+        } finally {
+            ProcessExecutor executor = this.executor.get();
+            logger.log(Level.INFO, "Execution metrics of commands run by the container {0}:{1}", new Object[] {
+                getContainerName(), executor.getMetrics() });
+            if (configuration.get().isEmulatorDeferredTeardown()) {
+                // the emulator is still being torn down by the executor in the background
+                EmulatorReaper.getInstance().deferShutdown(executor);
+            } else {
+                executor.shutdown();
+            }
+        }
     }
 
     @Override
@@ -44,6 +44,9 @@ public class AndroidManagedContainerConfiguration implements ContainerConfigurat
 
     private String emulatorOptions;
 
+    // named set of emulator options, see EmulatorProfile
+    private String emulatorProfile;
+
     private String sdSize = "128M";
 
     private String sdCard;
@@ -58,6 +61,12 @@ public class AndroidManagedContainerConfiguration implements ContainerConfigurat
 
     private long emulatorShutdownTimeoutInSeconds = 60L;
 
+    // emulator of a generated AVD is not waited for to leave the bridge, its AVD is deleted as soon as it exits
+    private boolean emulatorFastTeardown;
+
+    // container stop does not wait for the emulator to exit, it is torn down in the background
+    private boolean emulatorDeferredTeardown;
+
     private String home = System.getenv("ANDROID_HOME");
 
     private String javaHome = System.getenv("JAVA_HOME");
@@ -75,6 +84,62 @@ public class AndroidManagedContainerConfiguration implements ContainerConfigurat
     // Android 2.3.3 is the default
     private String apiLevel = "10";
 
+    private int emulatorOutputTailLines = 500;
+
+    private long emulatorOutputTailSize = 256L * 1024;
+
+    private String emulatorOutputLog;
+
+    private long emulatorOutputLogSize = 10L * 1024 * 1024;
+
+    private boolean emulatorOutputRedirect;
+
+    // virtual threads if available, platform threads otherwise
+    private String executorStrategy = "auto";
+
+    // outputs of read-only commands are trusted, so they are cached only on request and only in a directory of the user
+    private boolean commandCache = false;
+
+    private String commandCacheFile = System.getProperty("user.home") + System.getProperty("file.separator")
+        + ".arquillian-android" + System.getProperty("file.separator") + "command-cache";
+
+    // name of the boot snapshot, emulator is cold booted every time if not set
+    private String emulatorSnapshot;
+
+    // emulators are kept running between containers and leased from the pool
+    private boolean emulatorPool;
+
+    private long emulatorPoolIdleTimeoutInSeconds = 900L;
+
+    private String emulatorPoolDirectory = System.getProperty("java.io.tmpdir") + System.getProperty("file.separator")
+        + "arquillian-android-pool";
+
+    // lock files of emulator ports allocated by containers of all JVMs on this host
+    private String emulatorPortDirectory = System.getProperty("java.io.tmpdir") + System.getProperty("file.separator")
+        + "arquillian-android-ports";
+
+    // emulators are started only when the host has enough memory and processors for them
+    private boolean emulatorAdmission;
+
+    private long emulatorAdmissionTimeoutInSeconds = 600L;
+
+    private String emulatorAdmissionDirectory = System.getProperty("java.io.tmpdir")
+        + System.getProperty("file.separator") + "arquillian-android-admission";
+
+    // cores emulators are pinned to, "auto" pins every emulator to its own free cores
+    private String emulatorCpuAffinity;
+
+    // lock files of processor cores allocated by containers of all JVMs on this host
+    private String emulatorCoreDirectory = System.getProperty("java.io.tmpdir") + System.getProperty("file.separator")
+        + "arquillian-android-cores";
+
+    // scheduling priority of emulators, from -20 (the highest) to 19 (the lowest)
+    private Integer emulatorNice;
+
+    // timelines of emulator starts are written there, they are not written if it is empty
+    private String lifecycleTimingsDirectory = System.getProperty("java.io.tmpdir")
+        + System.getProperty("file.separator") + "arquillian-android-timings";
+
     public String getHome() {
         return home;
     }
@@ -123,6 +188,14 @@ public class AndroidManagedContainerConfiguration implements ContainerConfigurat
         this.emulatorOptions = emulatorOptions;
     }
 
+    public String getEmulatorProfile() {
+        return emulatorProfile;
+    }
+
+    public void setEmulatorProfile(String emulatorProfile) {
+        this.emulatorProfile = emulatorProfile;
+    }
+
     public boolean isSkip() {
         return skip;
     }
@@ -195,6 +268,22 @@ public class AndroidManagedContainerConfiguration implements ContainerConfigurat
         this.emulatorShutdownTimeoutInSeconds = emulatorShutdownTimeoutInSeconds;
     }
 
+    public boolean isEmulatorFastTeardown() {
+        return emulatorFastTeardown;
+    }
+
+    public void setEmulatorFastTeardown(boolean emulatorFastTeardown) {
+        this.emulatorFastTeardown = emulatorFastTeardown;
+    }
+
+    public boolean isEmulatorDeferredTeardown() {
+        return emulatorDeferredTeardown;
+    }
+
+    public void setEmulatorDeferredTeardown(boolean emulatorDeferredTeardown) {
+        this.emulatorDeferredTeardown = emulatorDeferredTeardown;
+    }
+
     public String getAbi() {
         return abi;
     }
@@ -247,6 +336,166 @@ public class AndroidManagedContainerConfiguration implements ContainerConfigurat
         this.droneGuestPort = droneGuestPort;
     }
 
+    public int getEmulatorOutputTailLines() {
+        return emulatorOutputTailLines;
+    }
+
+    public void setEmulatorOutputTailLines(int emulatorOutputTailLines) {
+        this.emulatorOutputTailLines = emulatorOutputTailLines;
+    }
+
+    public long getEmulatorOutputTailSize() {
+        return emulatorOutputTailSize;
+    }
+
+    public void setEmulatorOutputTailSize(long emulatorOutputTailSize) {
+        this.emulatorOutputTailSize = emulatorOutputTailSize;
+    }
+
+    public String getEmulatorOutputLog() {
+        return emulatorOutputLog;
+    }
+
+    public void setEmulatorOutputLog(String emulatorOutputLog) {
+        this.emulatorOutputLog = emulatorOutputLog;
+    }
+
+    public long getEmulatorOutputLogSize() {
+        return emulatorOutputLogSize;
+    }
+
+    public void setEmulatorOutputLogSize(long emulatorOutputLogSize) {
+        this.emulatorOutputLogSize = emulatorOutputLogSize;
+    }
+
+    public boolean isEmulatorOutputRedirect() {
+        return emulatorOutputRedirect;
+    }
+
+    public void setEmulatorOutputRedirect(boolean emulatorOutputRedirect) {
+        this.emulatorOutputRedirect = emulatorOutputRedirect;
+    }
+
+    public String getExecutorStrategy() {
+        return executorStrategy;
+    }
+
+    public void setExecutorStrategy(String executorStrategy) {
+        this.executorStrategy = executorStrategy;
+    }
+
+    public boolean isCommandCache() {
+        return commandCache;
+    }
+
+    public void setCommandCache(boolean commandCache) {
+        this.commandCache = commandCache;
+    }
+
+    public String getCommandCacheFile() {
+        return commandCacheFile;
+    }
+
+    public void setCommandCacheFile(String commandCacheFile) {
+        this.commandCacheFile = commandCacheFile;
+    }
+
+    public String getEmulatorSnapshot() {
+        return emulatorSnapshot;
+    }
+
+    public void setEmulatorSnapshot(String emulatorSnapshot) {
+        this.emulatorSnapshot = emulatorSnapshot;
+    }
+
+    public boolean isEmulatorPool() {
+        return emulatorPool;
+    }
+
+    public void setEmulatorPool(boolean emulatorPool) {
+        this.emulatorPool = emulatorPool;
+    }
+
+    public long getEmulatorPoolIdleTimeoutInSeconds() {
+        return emulatorPoolIdleTimeoutInSeconds;
+    }
+
+    public void setEmulatorPoolIdleTimeoutInSeconds(long emulatorPoolIdleTimeoutInSeconds) {
+        this.emulatorPoolIdleTimeoutInSeconds = emulatorPoolIdleTimeoutInSeconds;
+    }
+
+    public String getEmulatorPoolDirectory() {
+        return emulatorPoolDirectory;
+    }
+
+    public void setEmulatorPoolDirectory(String emulatorPoolDirectory) {
+        this.emulatorPoolDirectory = emulatorPoolDirectory;
+    }
+
+    public String getEmulatorPortDirectory() {
+        return emulatorPortDirectory;
+    }
+
+    public void setEmulatorPortDirectory(String emulatorPortDirectory) {
+        this.emulatorPortDirectory = emulatorPortDirectory;
+    }
+
+    public boolean isEmulatorAdmission() {
+        return emulatorAdmission;
+    }
+
+    public void setEmulatorAdmission(boolean emulatorAdmission) {
+        this.emulatorAdmission = emulatorAdmission;
+    }
+
+    public long getEmulatorAdmissionTimeoutInSeconds() {
+        return emulatorAdmissionTimeoutInSeconds;
+    }
+
+    public void setEmulatorAdmissionTimeoutInSeconds(long emulatorAdmissionTimeoutInSeconds) {
+        this.emulatorAdmissionTimeoutInSeconds = emulatorAdmissionTimeoutInSeconds;
+    }
+
+    public String getEmulatorAdmissionDirectory() {
+        return emulatorAdmissionDirectory;
+    }
+
+    public void setEmulatorAdmissionDirectory(String emulatorAdmissionDirectory) {
+        this.emulatorAdmissionDirectory = emulatorAdmissionDirectory;
+    }
+
+    public String getEmulatorCpuAffinity() {
+        return emulatorCpuAffinity;
+    }
+
+    public void setEmulatorCpuAffinity(String emulatorCpuAffinity) {
+        this.emulatorCpuAffinity = emulatorCpuAffinity;
+    }
+
+    public String getEmulatorCoreDirectory() {
+        return emulatorCoreDirectory;
+    }
+
+    public void setEmulatorCoreDirectory(String emulatorCoreDirectory) {
+        this.emulatorCoreDirectory = emulatorCoreDirectory;
+    }
+
+    public Integer getEmulatorNice() {
+        return emulatorNice;
+    }
+
+    public void setEmulatorNice(Integer emulatorNice) {
+        this.emulatorNice = emulatorNice;
+    }
+
+    public String getLifecycleTimingsDirectory() {
+        return lifecycleTimingsDirectory;
+    }
+
+    public void setLifecycleTimingsDirectory(String lifecycleTimingsDirectory) {
+        this.lifecycleTimingsDirectory = lifecycleTimingsDirectory;
+    }
+
     @Override
     public void validate() throws AndroidContainerConfigurationException {
         Validate.isReadableDirectory(home,
@@ -296,6 +545,35 @@ public class AndroidManagedContainerConfiguration implements ContainerConfigurat
             Validate.isAdbPortValid(adbPort);
         }
 
+        if (emulatorAdmission) {
+            Validate.notNullOrEmpty(emulatorAdmissionDirectory, "Directory of emulator admissions is empty string or null.");
+            if (emulatorAdmissionTimeoutInSeconds <= 0) {
+                throw new AndroidContainerConfigurationException(
+                    "Timeout of emulator admission has to be bigger then 0.");
+            }
+        }
+
+        if (emulatorProfile != null) {
+            EmulatorProfile.of(emulatorProfile).getOptions().merge(EmulatorOptions.parse(emulatorOptions));
+        }
+
+        if (emulatorCpuAffinity != null) {
+            Validate.isCpuAffinityValid(emulatorCpuAffinity);
+        }
+
+        if (emulatorNice != null && (emulatorNice < -20 || emulatorNice > 19)) {
+            throw new AndroidContainerConfigurationException(
+                "Nice level of emulators has to be in the range -20-19, it is " + emulatorNice + ".");
+        }
+
+        if (consolePort == null) {
+            Validate.notNullOrEmpty(emulatorPortDirectory, "Directory of emulator port locks is empty string or null.");
+        }
+
+        if ("auto".equals(emulatorCpuAffinity)) {
+            Validate.notNullOrEmpty(emulatorCoreDirectory, "Directory of processor core locks is empty string or null.");
+        }
+
         if (sdCard != null) {
             Validate.sdCardFileName(sdCard, "File name (or path) of SD card to use '" + sdCard
                 + "' is not valid. Check it is under existing and writable directory does have '.img' suffix.");
@@ -326,6 +604,48 @@ public class AndroidManagedContainerConfiguration implements ContainerConfigurat
             throw new AndroidContainerConfigurationException(
                 "Emulator shutdown timeout has to be bigger then 0.");
         }
+
+        if (emulatorOutputTailLines <= 0 || emulatorOutputTailSize <= 0) {
+            throw new AndroidContainerConfigurationException(
+                "Number of lines and size of the emulator output tail have to be bigger then 0.");
+        }
+
+        if (emulatorOutputLog != null) {
+            Validate.notNullOrEmpty(emulatorOutputLog, "File to log emulator output to is empty string.");
+            if (emulatorOutputLogSize <= 0) {
+                throw new AndroidContainerConfigurationException(
+                    "Maximal size of the emulator output log has to be bigger then 0.");
+            }
+        }
+
+        Validate.notNullOrEmpty(executorStrategy, "Executor strategy can not be empty string or null.");
+        try {
+            ExecutorStrategy.fromString(executorStrategy);
+        } catch (IllegalArgumentException e) {
+            throw new AndroidContainerConfigurationException("Executor strategy '" + executorStrategy
+                + "' is not valid, use one of 'auto', 'virtual' or 'platform'.");
+        }
+
+        if (commandCache) {
+            Validate.notNullOrEmpty(commandCacheFile, "File to store the command cache to is empty string or null.");
+        }
+
+        if (emulatorSnapshot != null && !emulatorSnapshot.matches("[\\w.-]+")) {
+            throw new AndroidContainerConfigurationException("Name of the emulator snapshot '" + emulatorSnapshot
+                + "' is not valid, use only letters, digits, '.', '_' and '-'.");
+        }
+
+        if (emulatorPool) {
+            Validate.notNullOrEmpty(emulatorPoolDirectory, "Directory of the emulator pool is empty string or null.");
+            if (emulatorPoolIdleTimeoutInSeconds <= 0) {
+                throw new AndroidContainerConfigurationException(
+                    "Idle timeout of pooled emulators has to be bigger then 0.");
+            }
+            if (emulatorSnapshot == null) {
+                throw new AndroidContainerConfigurationException(
+                    "Pooled emulators are reset by loading a snapshot, emulatorSnapshot has to be set.");
+            }
+        }
     }
 
     @Override
@@ -343,10 +663,27 @@ public class AndroidManagedContainerConfiguration implements ContainerConfigurat
         sb.append("abi\t\t\t:").append(this.abi).append("\n");
         sb.append("emuBoot\t\t\t:").append(this.emulatorBootupTimeoutInSeconds).append("\n");
         sb.append("emuShut\t\t\t:").append(this.emulatorShutdownTimeoutInSeconds).append("\n");
+        sb.append("fastTeardown\t\t:").append(this.emulatorFastTeardown).append("\n");
+        sb.append("deferredTeardown\t:").append(this.emulatorDeferredTeardown).append("\n");
         sb.append("emuOpts\t\t\t:").append(this.emulatorOptions).append("\n");
+        sb.append("emuProfile\t\t:").append(this.emulatorProfile).append("\n");
         sb.append("home\t\t\t:").append(this.home).append("\n");
         sb.append("consolePort\t\t:").append(this.consolePort).append("\n");
         sb.append("adbPort\t\t\t:").append(this.adbPort).append("\n");
+        sb.append("portDir\t\t\t:").append(this.emulatorPortDirectory).append("\n");
+        sb.append("emuTail\t\t\t:").append(this.emulatorOutputTailLines).append("\n");
+        sb.append("emuLog\t\t\t:").append(this.emulatorOutputLog).append("\n");
+        sb.append("emuRedirect\t\t:").append(this.emulatorOutputRedirect).append("\n");
+        sb.append("executor\t\t:").append(this.executorStrategy).append("\n");
+        sb.append("commandCache\t\t:").append(this.commandCache ? this.commandCacheFile : "disabled").append("\n");
+        sb.append("snapshot\t\t:").append(this.emulatorSnapshot).append("\n");
+        sb.append("admission\t\t:").append(this.emulatorAdmission ? this.emulatorAdmissionDirectory : "disabled")
+            .append("\n");
+        sb.append("cpuAffinity\t\t:").append(this.emulatorCpuAffinity).append("\n");
+        sb.append("coreDir\t\t\t:").append(this.emulatorCoreDirectory).append("\n");
+        sb.append("nice\t\t\t:").append(this.emulatorNice).append("\n");
+        sb.append("timings\t\t\t:").append(this.lifecycleTimingsDirectory).append("\n");
+        sb.append("pool\t\t\t:").append(this.emulatorPool ? this.emulatorPoolDirectory : "disabled").append("\n");
         return sb.toString();
     }
 
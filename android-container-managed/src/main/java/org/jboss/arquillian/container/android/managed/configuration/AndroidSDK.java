@@ -30,8 +30,10 @@ s * JBoss, Home of Professional Open Source
  */
 package org.jboss.arquillian.container.android.managed.configuration;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -87,6 +89,11 @@ public class AndroidSDK {
      */
     private static final String BUILD_TOOLS_FOLDER_NAME = "build-tools";
 
+    /**
+     * folder name of the SDK sub folder that contains system images
+     */
+    private static final String SYSTEM_IMAGES_FOLDER_NAME = "system-images";
+
     private static final class Platform implements Comparable<Platform> {
         final String name;
         final String apiLevel;
@@ -322,6 +329,67 @@ public class AndroidSDK {
         throw new RuntimeException("Could not find tool '" + tool + ".");
     }
 
+    /**
+     * Gets the directory the {@code android} tool stores definitions of AVDs to. It is determined the same way the tool does
+     * it, from ANDROID_AVD_HOME or ANDROID_SDK_HOME environment variables or the home directory of the user.
+     *
+     * @return directory with definitions of AVDs
+     */
+    public File getAvdHome() {
+        String avdHome = System.getenv("ANDROID_AVD_HOME");
+        if (avdHome != null && avdHome.length() > 0) {
+            return new File(avdHome);
+        }
+        String sdkHome = System.getenv("ANDROID_SDK_HOME");
+        File home = new File(sdkHome != null && sdkHome.length() > 0 ? sdkHome : System.getProperty("user.home"));
+        return new File(new File(home, ".android"), "avd");
+    }
+
+    /**
+     * Gets the directory an AVD is stored in. It is read from the definition of the AVD, AVDs created with a custom path
+     * are stored outside of the AVD home directory.
+     *
+     * @param avdName name of the AVD
+     * @return directory of the AVD
+     */
+    public File getAvdDirectory(String avdName) {
+        File definition = new File(getAvdHome(), avdName + ".ini");
+        if (definition.isFile()) {
+            // not read as properties, backslashes in Windows paths are not escaped there
+            BufferedReader reader = null;
+            try {
+                reader = new BufferedReader(new FileReader(definition));
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.startsWith("path=") && line.trim().length() > "path=".length()) {
+                        return new File(line.substring("path=".length()).trim());
+                    }
+                }
+            } catch (IOException e) {
+                logger.log(Level.FINE, "Unable to read definition of AVD " + avdName, e);
+            } finally {
+                if (reader != null) {
+                    try {
+                        reader.close();
+                    } catch (IOException e) {
+                        // ignore
+                    }
+                }
+            }
+        }
+        return new File(getAvdHome(), avdName + ".avd");
+    }
+
+    /**
+     * Gets directories the list of available AVDs depends on.
+     *
+     * @return definitions of AVDs and platforms and system images they are based on
+     */
+    public List<File> getAvdDependencies() {
+        return Arrays.asList(getAvdHome(), new File(sdkPath, PLATFORMS_FOLDER_NAME), new File(sdkPath,
+            SYSTEM_IMAGES_FOLDER_NAME));
+    }
+
     /**
      * Get the emulator path.
      *
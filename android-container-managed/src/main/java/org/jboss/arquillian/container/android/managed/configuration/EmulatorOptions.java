@@ -0,0 +1,230 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.android.managed.configuration;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Options of the emulator command line. An option is a name starting with a dash, optionally followed by a value, e.g.
+ * {@code -no-window} or {@code -gpu off}. Everything following {@code -qemu} is passed to QEMU as it is.
+ */
+public class EmulatorOptions {
+
+    private static final String QEMU = "-qemu";
+
+    // options which can be given more than once, e.g. -prop name=value
+    private static final Set<String> REPEATABLE = new HashSet<String>(Arrays.asList("-prop"));
+
+    // switches which turn off what the other option configures
+    private static final Map<String, String> OPPOSITES = new HashMap<String, String>();
+
+    static {
+        OPPOSITES.put("-no-audio", "-audio");
+        OPPOSITES.put("-noaudio", "-audio");
+        OPPOSITES.put("-no-accel", "-accel");
+        OPPOSITES.put("-no-window", "-window");
+    }
+
+    private final List<Option> options = new ArrayList<Option>();
+    private final List<String> qemu = new ArrayList<String>();
+
+    /**
+     * Parses options written in the simple string the same way as {@link Command#addAsString(String)} does.
+     *
+     * @param options the options, may be {@code null}
+     * @return parsed options
+     */
+    public static EmulatorOptions parse(String options) {
+        EmulatorOptions parsed = new EmulatorOptions();
+        List<String> tokens = new Command().addAsString(options).getAsList();
+        for (int i = 0; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            if (QEMU.equals(token)) {
+                parsed.qemu.addAll(tokens.subList(i, tokens.size()));
+                break;
+            }
+            if (i + 1 < tokens.size() && !tokens.get(i + 1).startsWith("-")) {
+                parsed.add(token, tokens.get(++i));
+            } else {
+                parsed.add(token);
+            }
+        }
+        return parsed;
+    }
+
+    /**
+     * Adds a switch, an option without a value.
+     *
+     * @param name name of the switch, e.g. {@code -no-window}
+     * @return instance of this {@code EmulatorOptions}
+     */
+    public EmulatorOptions add(String name) {
+        return add(name, null);
+    }
+
+    /**
+     * Adds an option.
+     *
+     * @param name name of the option, e.g. {@code -gpu}
+     * @param value value of the option, {@code null} for a switch
+     * @return instance of this {@code EmulatorOptions}
+     */
+    public EmulatorOptions add(String name, String value) {
+        options.add(new Option(name, value));
+        return this;
+    }
+
+    /**
+     * Checks whether an option is present.
+     *
+     * @param name name of the option
+     * @return {@code true} if the option is present
+     */
+    public boolean contains(String name) {
+        for (Option option : options) {
+            if (option.name.equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns value of an option.
+     *
+     * @param name name of the option
+     * @return value of the first option of the name or {@code null} if it is not present or it is a switch
+     */
+    public String get(String name) {
+        for (Option option : options) {
+            if (option.name.equals(name)) {
+                return option.value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Merges options with other options which follow them, e.g. options of a profile with options of the user. Options
+     * present in both are not repeated.
+     *
+     * @param other the other options
+     * @return new merged options
+     * @throws AndroidContainerConfigurationException if an option of {@code other} conflicts with an option of these
+     *         options, it has a different value or it is the opposite of it
+     */
+    public EmulatorOptions merge(EmulatorOptions other) throws AndroidContainerConfigurationException {
+        List<String> conflicts = new ArrayList<String>();
+        EmulatorOptions merged = new EmulatorOptions();
+        merged.options.addAll(options);
+        for (Option option : other.options) {
+            boolean present = false;
+            for (Option existing : options) {
+                if (existing.equals(option) && !REPEATABLE.contains(option.name)) {
+                    present = true;
+                } else if (existing.conflictsWith(option)) {
+                    conflicts.add(existing + " and " + option);
+                }
+            }
+            if (!present) {
+                merged.options.add(option);
+            }
+        }
+        if (!conflicts.isEmpty()) {
+            throw new AndroidContainerConfigurationException("Emulator options conflict: " + conflicts);
+        }
+        merged.qemu.addAll(qemu);
+        if (!other.qemu.isEmpty()) {
+            // arguments of both are passed to QEMU after a single -qemu
+            merged.qemu.addAll(qemu.isEmpty() ? other.qemu : other.qemu.subList(1, other.qemu.size()));
+        }
+        return merged;
+    }
+
+    /**
+     * Returns the options as tokens of the command line.
+     *
+     * @return the tokens
+     */
+    public List<String> getAsList() {
+        List<String> tokens = new ArrayList<String>();
+        for (Option option : options) {
+            tokens.add(option.name);
+            if (option.value != null) {
+                tokens.add(option.value);
+            }
+        }
+        tokens.addAll(qemu);
+        return Collections.unmodifiableList(tokens);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (String token : getAsList()) {
+            if (sb.length() != 0) {
+                sb.append(" ");
+            }
+            sb.append(token);
+        }
+        return sb.toString();
+    }
+
+    private static class Option {
+
+        private final String name;
+        private final String value;
+
+        Option(String name, String value) {
+            this.name = name;
+            this.value = value;
+        }
+
+        boolean conflictsWith(Option other) {
+            if (name.equals(other.name)) {
+                return !REPEATABLE.contains(name) && !equals(other);
+            }
+            return other.name.equals(OPPOSITES.get(name)) || name.equals(OPPOSITES.get(other.name));
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Option)) {
+                return false;
+            }
+            Option other = (Option) obj;
+            return name.equals(other.name) && (value == null ? other.value == null : value.equals(other.value));
+        }
+
+        @Override
+        public int hashCode() {
+            return name.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return value == null ? name : name + " " + value;
+        }
+    }
+}
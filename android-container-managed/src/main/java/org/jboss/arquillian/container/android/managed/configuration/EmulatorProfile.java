@@ -0,0 +1,86 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.android.managed.configuration;
+
+/**
+ * Named sets of emulator options tuned for a use of the emulator. Options of a profile are merged with
+ * {@code emulatorOptions} of the configuration, which must not conflict with them.
+ */
+public enum EmulatorProfile {
+
+    /**
+     * Emulator of a build server, it has no window, audio nor boot animation and it renders in software. Acceleration is
+     * left to the emulator, it uses it when the host supports it.
+     */
+    HEADLESS_CI("headless-ci") {
+        @Override
+        public EmulatorOptions getOptions() {
+            return new EmulatorOptions().add("-no-window").add("-no-audio").add("-no-boot-anim").add("-gpu", "off");
+        }
+    },
+
+    /**
+     * Emulator a developer watches and interacts with, it renders by the GPU of the host.
+     */
+    INTERACTIVE("interactive") {
+        @Override
+        public EmulatorOptions getOptions() {
+            return new EmulatorOptions().add("-gpu", "on");
+        }
+    };
+
+    private final String name;
+
+    private EmulatorProfile(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Returns options of the profile.
+     *
+     * @return new options of the profile
+     */
+    public abstract EmulatorOptions getOptions();
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the profile of a name.
+     *
+     * @param name name of the profile, e.g. {@code headless-ci}
+     * @return the profile
+     * @throws AndroidContainerConfigurationException if there is no profile of the name
+     */
+    public static EmulatorProfile of(String name) throws AndroidContainerConfigurationException {
+        StringBuilder names = new StringBuilder();
+        for (EmulatorProfile profile : values()) {
+            if (profile.name.equals(name)) {
+                return profile;
+            }
+            names.append(names.length() == 0 ? "" : ", ").append(profile.name);
+        }
+        throw new AndroidContainerConfigurationException("Emulator profile '" + name + "' does not exist, it has to be one of "
+            + names + ".");
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
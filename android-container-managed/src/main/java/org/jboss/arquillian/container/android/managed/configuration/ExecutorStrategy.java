@@ -0,0 +1,152 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.android.managed.configuration;
+
+import java.lang.reflect.Method;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Strategy of creating threads the {@code ProcessExecutor} pumps process output and waits for processes on.
+ *
+ * Virtual threads are available since Java 21 only, so they are accessed reflectively. When they are not available,
+ * platform threads are used instead.
+ */
+public enum ExecutorStrategy {
+
+    /**
+     * Virtual threads if the JVM supports them, platform threads otherwise.
+     */
+    AUTO,
+
+    /**
+     * Virtual threads, falls back to platform threads if the JVM does not support them.
+     */
+    VIRTUAL,
+
+    /**
+     * Pooled platform threads.
+     */
+    PLATFORM;
+
+    private static final Logger logger = Logger.getLogger(ExecutorStrategy.class.getName());
+
+    private static final AtomicInteger POOL_COUNTER = new AtomicInteger();
+
+    /**
+     * Parses the strategy from its case insensitive name.
+     *
+     * @param name name of the strategy
+     * @return the strategy
+     * @throws IllegalArgumentException if there is no such strategy
+     */
+    public static ExecutorStrategy fromString(String name) throws IllegalArgumentException {
+        if (name == null) {
+            throw new IllegalArgumentException("Executor strategy must not be null.");
+        }
+        return valueOf(name.trim().toUpperCase(Locale.ENGLISH));
+    }
+
+    /**
+     * Checks whether this strategy runs tasks on virtual threads in this JVM.
+     *
+     * @return true if tasks run on virtual threads, false otherwise
+     */
+    public boolean isVirtual() {
+        return this != PLATFORM && VirtualThreads.isSupported();
+    }
+
+    /**
+     * Creates an executor which runs every task on its own thread.
+     *
+     * @return executor service
+     */
+    public ExecutorService createService() {
+        if (isVirtual()) {
+            return VirtualThreads.newThreadPerTaskExecutor();
+        }
+        if (this == VIRTUAL) {
+            logger.log(Level.WARNING, "Virtual threads are not supported by this JVM, using platform threads instead.");
+        }
+        return Executors.newCachedThreadPool(new PlatformThreadFactory("process"));
+    }
+
+    /**
+     * Daemon threads named after the pool, so they do not prevent the JVM from exiting.
+     */
+    private static class PlatformThreadFactory implements ThreadFactory {
+
+        private final String prefix;
+        private final AtomicInteger counter = new AtomicInteger();
+
+        public PlatformThreadFactory(String name) {
+            this.prefix = "arquillian-android-" + name + "-" + POOL_COUNTER.incrementAndGet() + "-";
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    /**
+     * Reflective access to virtual threads.
+     */
+    private static class VirtualThreads {
+
+        private static final Method NEW_THREAD_PER_TASK_EXECUTOR;
+        private static final ThreadFactory FACTORY;
+
+        static {
+            Method newThreadPerTaskExecutor = null;
+            ThreadFactory factory = null;
+            try {
+                newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+                Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+                Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+                builder = builderClass.getMethod("name", String.class, long.class).invoke(builder,
+                    "arquillian-android-virtual-", 0L);
+                factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            } catch (Exception e) {
+                // virtual threads are not available in this JVM
+                newThreadPerTaskExecutor = null;
+                factory = null;
+            }
+            NEW_THREAD_PER_TASK_EXECUTOR = newThreadPerTaskExecutor;
+            FACTORY = factory;
+        }
+
+        public static boolean isSupported() {
+            return FACTORY != null;
+        }
+
+        public static ExecutorService newThreadPerTaskExecutor() {
+            try {
+                return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, FACTORY);
+            } catch (Exception e) {
+                throw new IllegalStateException("Unable to create virtual thread executor", e);
+            }
+        }
+    }
+}
@@ -36,7 +36,7 @@ public class Validate {
     /**
      * Maximal number of console port.
      */
-    public static final long CONSOLE_PORT_MAX = 5584;
+    public static final long CONSOLE_PORT_MAX = 5682;
 
     /**
      * Minimal number of adb port.
@@ -46,7 +46,7 @@ public class Validate {
     /**
      * Maximal number of adb port.
      */
-    public static final long ADB_PORT_MAX = 5585;
+    public static final long ADB_PORT_MAX = 5683;
 
     /**
      * Checks if some object is null or not.
@@ -264,6 +264,24 @@ public class Validate {
         }
     }
 
+    /**
+     * Checks if CPU affinity of emulators is valid.
+     *
+     * CPU affinity has to be either {@code auto} or a list of cores and ranges of cores accepted by {@code taskset -c},
+     * e.g. {@code 2-3,6}.
+     *
+     * @param cpuAffinity CPU affinity to check validity of
+     * @throws AndroidContainerConfigurationException if CPU affinity is null, empty or not valid
+     */
+    public static void isCpuAffinityValid(final String cpuAffinity) throws AndroidContainerConfigurationException {
+        notNullOrEmpty(cpuAffinity, "CPU affinity to validate is null or empty.");
+
+        if (!"auto".equals(cpuAffinity) && !cpuAffinity.matches("\\d+(-\\d+)?(,\\d+(-\\d+)?)*")) {
+            throw new AndroidContainerConfigurationException("CPU affinity '" + cpuAffinity
+                + "' is neither 'auto' nor a list of cores, e.g. '2-3,6'.");
+        }
+    }
+
     /**
      * Checks if console port is in valid range.
      *
@@ -18,12 +18,14 @@
 package org.jboss.arquillian.container.android.managed.impl;
 
 import java.io.File;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 import org.jboss.arquillian.android.spi.event.AndroidBridgeInitialized;
 import org.jboss.arquillian.android.spi.event.AndroidBridgeTerminated;
 import org.jboss.arquillian.android.spi.event.AndroidContainerStart;
-import org.jboss.arquillian.android.spi.event.AndroidEmulatorShuttedDown;
+import org.jboss.arquillian.android.spi.event.AndroidContainerStop;
+import org.jboss.arquillian.android.spi.event.AndroidLifecycleTimings;
 import org.jboss.arquillian.container.android.api.AndroidBridge;
 import org.jboss.arquillian.container.android.api.AndroidExecutionException;
 import org.jboss.arquillian.container.android.managed.configuration.AndroidManagedContainerConfiguration;
@@ -41,7 +43,7 @@ import org.jboss.arquillian.core.api.annotation.Observes;
  * Observes:
  * <ul>
  * <li>{@link AndroidContainerStart}</li>
- * <li>{@link AndroidEmulatorShuttedDown}</li>
+ * <li>{@link AndroidContainerStop}</li>
  * <li>{@link AndroidBridgeTerminated}</li>
  * </ul>
  *
@@ -49,6 +51,7 @@ import org.jboss.arquillian.core.api.annotation.Observes;
  * <br>
  * <ul>
  * <li>{@link AndroidBridge}</li>
+ * <li>{@link LifecycleTimeline}</li>
  * </ul>
  *
  * Fires: <br>
@@ -70,12 +73,19 @@ public class AndroidBridgeConnector {
     @ContainerScoped
     private InstanceProducer<AndroidBridge> androidBridge;
 
+    @Inject
+    @ContainerScoped
+    private InstanceProducer<LifecycleTimeline> lifecycleTimeline;
+
     @Inject
     private Instance<AndroidSDK> androidSDK;
 
     @Inject
     private Instance<AndroidManagedContainerConfiguration> configuration;
 
+    @Inject
+    private Instance<ProcessExecutor> executor;
+
     @Inject
     private Event<AndroidBridgeInitialized> adbInitialized;
 
@@ -83,7 +93,8 @@ public class AndroidBridgeConnector {
     private Event<AndroidBridgeTerminated> adbTerminated;
 
     /**
-     * Initializes Android Debug Bridge and fires {@link AndroidBridgeInitialized} event.
+     * Initializes Android Debug Bridge and fires {@link AndroidBridgeInitialized} event carrying the connection time. The
+     * connection is the first phase of the lifecycle timeline of the container.
      *
      * @param event
      * @throws AndroidExecutionException
@@ -91,28 +102,36 @@ public class AndroidBridgeConnector {
     public void initAndroidDebugBridge(@Observes AndroidContainerStart event) throws AndroidExecutionException {
         logger.info("Initializing Android Debug Bridge.");
 
-        long start = System.currentTimeMillis();
+        // every start of the container gets a new timeline
+        lifecycleTimeline.set(new LifecycleTimeline());
+        long start = System.nanoTime();
 
         AndroidBridge bridge = new AndroidBridgeImpl(new File(androidSDK.get().getAdbPath()), configuration.get()
-            .isForceNewBridge());
+            .isForceNewBridge(), executor.get());
         bridge.connect();
-        long delta = System.currentTimeMillis() - start;
+        long delta = lifecycleTimeline.get().record(AndroidLifecycleTimings.BRIDGE_CONNECTION, start) - start;
 
-        logger.info("Android Debug Bridge was initialized in " + delta + "ms.");
+        logger.info("Android Debug Bridge was initialized in " + TimeUnit.NANOSECONDS.toMillis(delta) + "ms.");
 
         androidBridge.set(bridge);
-        adbInitialized.fire(new AndroidBridgeInitialized());
+        adbInitialized.fire(new AndroidBridgeInitialized(delta));
     }
 
     /**
-     * Destroys Android Debug Bridge and fires {@link AndroidBridgeTerminated} event.
+     * Releases Android Debug Bridge of the container and fires {@link AndroidBridgeTerminated} event. The bridge is
+     * released after the device of the container is shut down, it is terminated once no container uses it.
      *
      * @param event
      * @throws AndroidExecutionException
      */
-    public void terminateAndroidDebugBridge(@Observes AndroidEmulatorShuttedDown event) throws AndroidExecutionException {
+    public void terminateAndroidDebugBridge(@Observes(precedence = -100) AndroidContainerStop event)
+        throws AndroidExecutionException {
+        AndroidBridge bridge = androidBridge.get();
+        if (bridge == null) {
+            return;
+        }
         logger.info("Terminating Android Debug Bridge.");
-        androidBridge.get().disconnect();
+        bridge.disconnect();
         adbTerminated.fire(new AndroidBridgeTerminated());
     }
 
@@ -32,7 +32,8 @@ import com.android.ddmlib.IDevice;
 
 /**
  * Implementation of the {@link AndroidBridge} by which we can connect or disconnect to the bridge and query
- * {@link AndroidDebugBridge} for attached devices.
+ * {@link AndroidDebugBridge} for attached devices. The bridge is shared by all the containers and it can be recreated by
+ * any of them, so it is looked up by {@link AndroidDebugBridgeManager} on every use.
  *
  * @author <a href="mailto:kpiwko@redhat.com">Karel Piwko</a>
  * @author <a href="mailto:smikloso@redhat.com">Stefan Miklosovic</a>
@@ -41,56 +42,53 @@ public class AndroidBridgeImpl implements AndroidBridge {
 
     private static final Logger logger = Logger.getLogger(AndroidBridgeImpl.class.getName());
 
-    private AndroidDebugBridge delegate;
-
-    private static final long ADB_TIMEOUT_MS = 60L * 1000;
-
     private File adbLocation;
 
     private boolean forceNewBridge;
 
-    AndroidBridgeImpl(File adbLocation, boolean forceNewBridge) throws IllegalArgumentException {
+    private ProcessExecutor executor;
+
+    private boolean connected;
+
+    private boolean released;
+
+    AndroidBridgeImpl(File adbLocation, boolean forceNewBridge, ProcessExecutor executor) throws IllegalArgumentException {
         Validate.isReadable(adbLocation, "ADB location does not represent a readable file: " + adbLocation);
         this.adbLocation = adbLocation;
         this.forceNewBridge = forceNewBridge;
+        this.executor = executor;
     }
 
     @Override
     public void connect() throws AndroidExecutionException {
+        if (connected && !released) {
+            return;
+        }
         logger.info("Connecting to the Android Debug Bridge at " + adbLocation.getAbsolutePath() + " forceNewBridge = "
             + forceNewBridge);
-        this.delegate = AndroidDebugBridge.getBridge();
-        if (delegate == null) {
-            AndroidDebugBridge.init(false);
-            this.delegate = AndroidDebugBridge.createBridge(adbLocation.getAbsolutePath(), forceNewBridge);
-            waitUntilConnected();
-            waitForInitialDeviceList();
-        }
+        AndroidDebugBridgeManager.getInstance().acquire(adbLocation, forceNewBridge, executor);
+        this.connected = true;
+        this.released = false;
     }
 
     @Override
     public boolean isConnected() {
-        Validate.notNull(delegate, "Android debug bridge must be set. Please call connect() method before execution");
-        return delegate.isConnected();
+        return delegate().isConnected();
     }
 
     @Override
     public void disconnect() throws AndroidExecutionException {
-        Validate.notNull(delegate, "Android debug bridge must be set. Please call connect() method before execution");
+        if (!connected) {
+            throw new IllegalStateException(
+                "Android debug bridge must be set. Please call connect() method before execution");
+        }
 
         logger.info("Disconnecting Android Debug Bridge at " + adbLocation.getAbsolutePath());
 
-        if (isConnected()) {
-            logger.fine("\t Android Debug Bridge is connected.");
-            if (!hasDevices()) {
-                logger.fine("Android Debug Bridge does't have devices. Going to disconnect it.");
-                AndroidDebugBridge.disconnectBridge();
-                AndroidDebugBridge.terminate();
-            } else {
-                logger.fine("Android Debug Bridge has devices.");
-                logger.info("There are still some devices on the Android Debug Bridge." +
-                    " Bridge will not be disconnected until none are connected.");
-            }
+        // the bridge is shared by all the containers, it is terminated once the last of them releases it
+        if (!released) {
+            released = true;
+            AndroidDebugBridgeManager.getInstance().release();
         } else {
             logger.info("Android Debug Bridge is already disconnected.");
         }
@@ -98,9 +96,7 @@ public class AndroidBridgeImpl implements AndroidBridge {
 
     @Override
     public List<AndroidDevice> getDevices() {
-        Validate.notNull(delegate, "Android debug bridge must be set. Please call connect() method before execution");
-
-        IDevice[] idevices = delegate.getDevices();
+        IDevice[] idevices = delegate().getDevices();
 
         List<AndroidDevice> devices = new ArrayList<AndroidDevice>(idevices.length);
         for (IDevice d : idevices) {
@@ -112,8 +108,6 @@ public class AndroidBridgeImpl implements AndroidBridge {
 
     @Override
     public List<AndroidDevice> getEmulators() {
-        Validate.notNull(delegate, "Android debug bridge must be set. Please call connect() method before execution");
-
         List<AndroidDevice> emulators = new ArrayList<AndroidDevice>();
 
         for (AndroidDevice device : getDevices()) {
@@ -127,50 +121,12 @@ public class AndroidBridgeImpl implements AndroidBridge {
 
     @Override
     public boolean hasDevices() {
-        Validate.notNull(delegate, "Android debug bridge must be set. Please call connect() method before execution");
-        return delegate.getDevices().length != 0;
-    }
-
-    /**
-     * Run a wait loop until adb is connected or trials run out. This method seems to work more reliably then using a listener.
-     *
-     * @param adb
-     */
-    private void waitUntilConnected() {
-        int trials = 10;
-        while (trials > 0) {
-            try {
-                Thread.sleep(50);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-            if (isConnected()) {
-                break;
-            }
-            trials--;
-        }
+        return delegate().getDevices().length != 0;
     }
 
-    /**
-     * Wait for the Android Debug Bridge to return an initial device list.
-     *
-     * @param adb
-     */
-    private void waitForInitialDeviceList() {
-        if (!delegate.hasInitialDeviceList()) {
-            logger.info("Waiting for initial device list from the Android Debug Bridge");
-            long limitTime = System.currentTimeMillis() + ADB_TIMEOUT_MS;
-            while (!delegate.hasInitialDeviceList() && (System.currentTimeMillis() < limitTime)) {
-                try {
-                    Thread.sleep(1000);
-                } catch (InterruptedException e) {
-                    throw new RuntimeException(
-                        "Interrupted while waiting for initial device list from Android Debug Bridge");
-                }
-            }
-            if (!delegate.hasInitialDeviceList()) {
-                logger.severe("Did not receive initial device list from the Android Debug Bridge.");
-            }
-        }
+    private AndroidDebugBridgeManager.Bridge delegate() {
+        AndroidDebugBridgeManager.Bridge delegate = connected ? AndroidDebugBridgeManager.getInstance().getBridge() : null;
+        Validate.notNull(delegate, "Android debug bridge must be set. Please call connect() method before execution");
+        return delegate;
     }
 }
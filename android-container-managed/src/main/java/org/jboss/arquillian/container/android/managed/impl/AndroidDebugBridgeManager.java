@@ -0,0 +1,456 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.android.managed.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.jboss.arquillian.container.android.api.AndroidExecutionException;
+
+import com.android.ddmlib.AndroidDebugBridge;
+import com.android.ddmlib.IDevice;
+
+/**
+ * Shares the Android Debug Bridge among all the containers of the JVM. ddmlib keeps a single bridge per JVM, so it is
+ * created by the first container which acquires it and it is terminated once the last container releases it.
+ *
+ * An adb server which is already running, e.g. one started by another JVM, is reused when it answers and its version is
+ * the version of the adb binary, even if a new bridge is forced. Otherwise a forced bridge restarts the server. The same
+ * check decides whether a bridge which lost its connection to the server is recreated or whether it is given time to
+ * reconnect, so containers never hold a bridge which was stopped by another container.
+ */
+public class AndroidDebugBridgeManager {
+
+    private static final Logger logger = Logger.getLogger(AndroidDebugBridgeManager.class.getName());
+
+    /**
+     * Port the adb server listens on unless it is changed by the {@code ANDROID_ADB_SERVER_PORT} environment variable.
+     */
+    public static final int DEFAULT_ADB_SERVER_PORT = 5037;
+
+    /**
+     * Version of the adb server returned when no server listens on its port.
+     */
+    static final int NOT_RUNNING = -1;
+
+    /**
+     * Version of the adb server returned when the server does not answer as an adb server.
+     */
+    static final int NOT_RESPONDING = 0;
+
+    private static final int SERVER_TIMEOUT_MS = 2000;
+
+    private static final long ADB_TIMEOUT_MS = 60L * 1000;
+
+    private static final long DEVICE_LIST_POLL_MS = 20L;
+
+    private static final Pattern ADB_VERSION = Pattern.compile("Android Debug Bridge version \\d+\\.\\d+\\.(\\d+)");
+
+    private static AndroidDebugBridgeManager instance;
+
+    private final InetSocketAddress server;
+
+    private final BridgeFactory factory;
+
+    private Bridge bridge;
+
+    private int references;
+
+    AndroidDebugBridgeManager(InetSocketAddress server) {
+        this(server, new DdmlibBridgeFactory());
+    }
+
+    AndroidDebugBridgeManager(InetSocketAddress server, BridgeFactory factory) {
+        this.server = server;
+        this.factory = factory;
+    }
+
+    /**
+     * Returns the manager of this JVM.
+     *
+     * @return the manager
+     */
+    public static synchronized AndroidDebugBridgeManager getInstance() {
+        if (instance == null) {
+            instance = new AndroidDebugBridgeManager(new InetSocketAddress("127.0.0.1", adbServerPort()));
+        }
+        return instance;
+    }
+
+    /**
+     * Acquires the bridge, it is created unless a bridge exists already. A bridge which is not connected is recreated only
+     * if a new bridge is forced and the adb server can not be reused, it is given time to reconnect otherwise.
+     *
+     * @param adbLocation the adb binary
+     * @param forceNewBridge restart the adb server unless it answers and its version is the version of the binary
+     * @param executor executor of adb commands
+     * @throws AndroidExecutionException if the bridge can not be created, the version of the adb binary can not be found
+     *         out or the thread is interrupted while it waits for the bridge to connect
+     */
+    public synchronized void acquire(File adbLocation, boolean forceNewBridge, ProcessExecutor executor)
+        throws AndroidExecutionException {
+        Bridge current = factory.getBridge();
+        if (current != null && current.isConnected()) {
+            logger.log(Level.FINE, "Reusing connected Android Debug Bridge, it is used by {0} other containers",
+                references);
+            bridge = current;
+        } else if (current != null) {
+            if (forceNewBridge && !isServerReusable(adbLocation, executor)) {
+                // stopping the current bridge restarts the adb server
+                logger.info("Android Debug Bridge is not connected, it is going to be recreated");
+                create(adbLocation, true);
+            } else {
+                // the bridge reconnects by itself, containers which hold it keep working
+                logger.info("Android Debug Bridge is not connected, waiting for it to reconnect");
+                bridge = current;
+                awaitConnection(adbLocation);
+            }
+        } else {
+            if (forceNewBridge && !isServerReusable(adbLocation, executor)) {
+                killServer(adbLocation, executor);
+            }
+            create(adbLocation, false);
+        }
+        references++;
+    }
+
+    /**
+     * Returns the bridge acquired by the containers. The bridge is looked up on every use, it may have been recreated
+     * since it was acquired.
+     *
+     * @return the bridge or {@code null} if it has not been acquired
+     */
+    synchronized Bridge getBridge() {
+        return bridge;
+    }
+
+    /**
+     * Releases the bridge acquired by a container. The last release terminates the bridge unless there are devices
+     * connected to it, e.g. pooled emulators, those keep the bridge for containers started later.
+     */
+    public synchronized void release() {
+        if (references == 0) {
+            logger.warning("Android Debug Bridge was released more times than it was acquired");
+            return;
+        }
+        references--;
+        if (references != 0) {
+            logger.log(Level.FINE, "Android Debug Bridge is still used by {0} containers", references);
+            return;
+        }
+
+        if (bridge != null && bridge.isConnected() && bridge.getDevices().length != 0) {
+            logger.info("There are still some devices on the Android Debug Bridge."
+                + " Bridge will not be disconnected until none are connected.");
+            return;
+        }
+        logger.fine("Android Debug Bridge is not used by any container. Going to disconnect it.");
+        factory.terminate();
+        bridge = null;
+    }
+
+    private void create(File adbLocation, boolean stopCurrent) throws AndroidExecutionException {
+        try {
+            bridge = factory.createBridge(adbLocation, stopCurrent);
+            if (bridge == null) {
+                throw new AndroidExecutionException("Unable to create Android Debug Bridge of {0}", adbLocation);
+            }
+            awaitInitialDeviceList();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            // the bridge is not used by any container yet, it would not be terminated otherwise
+            if (references == 0) {
+                factory.terminate();
+                bridge = null;
+            }
+            throw new AndroidExecutionException(e, "Interrupted while connecting to Android Debug Bridge of {0}",
+                adbLocation);
+        }
+    }
+
+    private void awaitConnection(File adbLocation) throws AndroidExecutionException {
+        try {
+            awaitInitialDeviceList();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AndroidExecutionException(e, "Interrupted while connecting to Android Debug Bridge of {0}",
+                adbLocation);
+        }
+    }
+
+    synchronized int getReferences() {
+        return references;
+    }
+
+    private boolean isServerReusable(File adbLocation, ProcessExecutor executor) throws AndroidExecutionException {
+        int serverVersion = serverVersion(server, SERVER_TIMEOUT_MS);
+        if (serverVersion == NOT_RUNNING) {
+            return true;
+        }
+        if (serverVersion == NOT_RESPONDING) {
+            logger.log(Level.INFO, "adb server at {0} does not respond, it is going to be restarted", server);
+            return false;
+        }
+
+        int binaryVersion = binaryVersion(adbLocation, executor);
+        if (serverVersion != binaryVersion) {
+            logger.log(Level.INFO, "adb server at {0} is of version {1}, adb binary is of version {2}, server is going "
+                + "to be restarted", new Object[] { server, serverVersion, binaryVersion });
+            return false;
+        }
+        logger.log(Level.INFO, "Reusing adb server at {0} of version {1}", new Object[] { server, serverVersion });
+        return true;
+    }
+
+    private static int binaryVersion(File adbLocation, ProcessExecutor executor) throws AndroidExecutionException {
+        try {
+            // version of the binary changes only when the binary does
+            return parseBinaryVersion(executor.executeCached(Collections.singleton(adbLocation),
+                adbLocation.getAbsolutePath(), "version"));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AndroidExecutionException(e, "Interrupted while getting version of {0}", adbLocation);
+        } catch (ExecutionException e) {
+            throw new AndroidExecutionException(e, "Unable to get version of {0}", adbLocation);
+        }
+    }
+
+    private static void killServer(File adbLocation, ProcessExecutor executor) throws AndroidExecutionException {
+        try {
+            executor.execute(adbLocation.getAbsolutePath(), "kill-server");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AndroidExecutionException(e, "Interrupted while stopping adb server");
+        } catch (ExecutionException e) {
+            throw new AndroidExecutionException(e, "Unable to stop adb server");
+        }
+    }
+
+    /**
+     * Parses output of {@code adb version}, e.g. {@code Android Debug Bridge version 1.0.31}.
+     *
+     * @param output the output
+     * @return the version as the server reports it, e.g. {@code 31}, or {@code -1} if the output does not contain it
+     */
+    static int parseBinaryVersion(List<String> output) {
+        for (String line : output) {
+            Matcher matcher = ADB_VERSION.matcher(line);
+            if (matcher.find()) {
+                return Integer.parseInt(matcher.group(1));
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Asks the adb server for its version.
+     *
+     * @param server address of the server
+     * @param timeoutMs timeout of the connection and of the answer
+     * @return the version, {@link #NOT_RUNNING} if no server listens on the address or {@link #NOT_RESPONDING} if the
+     *         server does not answer as an adb server
+     */
+    static int serverVersion(InetSocketAddress server, int timeoutMs) {
+        Socket socket = new Socket();
+        try {
+            socket.connect(server, timeoutMs);
+            socket.setSoTimeout(timeoutMs);
+            OutputStream out = socket.getOutputStream();
+            // request is prefixed by its length in hexadecimal digits
+            out.write("000chost:version".getBytes("US-ASCII"));
+            out.flush();
+
+            // OKAY, length of the version and the version, all of them 4 characters long
+            String reply = read(socket.getInputStream(), 12);
+            if (reply == null || !reply.startsWith("OKAY")) {
+                return NOT_RESPONDING;
+            }
+            return Integer.parseInt(reply.substring(8), 16);
+        } catch (ConnectException e) {
+            return NOT_RUNNING;
+        } catch (NumberFormatException e) {
+            return NOT_RESPONDING;
+        } catch (IOException e) {
+            logger.log(Level.FINE, "Unable to get version of adb server at " + server, e);
+            return NOT_RESPONDING;
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    private static String read(InputStream in, int length) throws IOException {
+        byte[] buffer = new byte[length];
+        int read = 0;
+        while (read < length) {
+            int count = in.read(buffer, read, length - read);
+            if (count == -1) {
+                return null;
+            }
+            read += count;
+        }
+        return new String(buffer, "US-ASCII");
+    }
+
+    private static int adbServerPort() {
+        String port = System.getenv("ANDROID_ADB_SERVER_PORT");
+        if (port != null) {
+            try {
+                return Integer.parseInt(port.trim());
+            } catch (NumberFormatException e) {
+                logger.log(Level.WARNING, "Ignoring invalid ANDROID_ADB_SERVER_PORT {0}", port);
+            }
+        }
+        return DEFAULT_ADB_SERVER_PORT;
+    }
+
+    private void awaitInitialDeviceList() throws InterruptedException {
+        logger.fine("Waiting for initial device list from the Android Debug Bridge");
+        if (!awaitInitialDeviceList(bridge, ADB_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+            logger.severe("Did not receive initial device list from the Android Debug Bridge.");
+        }
+    }
+
+    /**
+     * Polls the bridge until it is connected to the adb server and it has received the initial device list.
+     *
+     * ddmlib offers no signal to wait for, it marks the initial device list as received only after it has notified device
+     * listeners of the devices on it and an empty list is not notified at all. The bridge is therefore checked every
+     * {@value #DEVICE_LIST_POLL_MS} ms until the timeout elapses.
+     *
+     * @param bridge the bridge
+     * @param timeout the timeout
+     * @param unit unit of the timeout
+     * @return {@code true} if the bridge is connected, {@code false} if the timeout elapsed
+     * @throws InterruptedException if the polling thread is interrupted
+     */
+    static boolean awaitInitialDeviceList(Bridge bridge, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!bridge.isConnected() || !bridge.hasInitialDeviceList()) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.sleep(Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(DEVICE_LIST_POLL_MS)));
+        }
+        return true;
+    }
+
+    /**
+     * Bridge to the adb server as the containers use it.
+     */
+    interface Bridge {
+
+        boolean isConnected();
+
+        boolean hasInitialDeviceList();
+
+        IDevice[] getDevices();
+    }
+
+    /**
+     * Creates and terminates the bridge of the JVM.
+     */
+    interface BridgeFactory {
+
+        /**
+         * @return the bridge of the JVM or {@code null} if there is none
+         */
+        Bridge getBridge();
+
+        /**
+         * Creates the bridge of the JVM.
+         *
+         * @param adbLocation the adb binary
+         * @param stopCurrent stop the current bridge, which restarts the adb server
+         * @return the bridge or {@code null} if it can not be created
+         */
+        Bridge createBridge(File adbLocation, boolean stopCurrent);
+
+        /**
+         * Disconnects the bridge of the JVM and terminates the library.
+         */
+        void terminate();
+    }
+
+    /**
+     * Bridge of ddmlib, which keeps a single bridge per JVM.
+     */
+    private static class DdmlibBridgeFactory implements BridgeFactory {
+
+        @Override
+        public Bridge getBridge() {
+            AndroidDebugBridge current = AndroidDebugBridge.getBridge();
+            return current == null ? null : new DdmlibBridge(current);
+        }
+
+        @Override
+        public Bridge createBridge(File adbLocation, boolean stopCurrent) {
+            if (AndroidDebugBridge.getBridge() == null) {
+                AndroidDebugBridge.init(false);
+            }
+            AndroidDebugBridge created = AndroidDebugBridge.createBridge(adbLocation.getAbsolutePath(), stopCurrent);
+            return created == null ? null : new DdmlibBridge(created);
+        }
+
+        @Override
+        public void terminate() {
+            AndroidDebugBridge.disconnectBridge();
+            AndroidDebugBridge.terminate();
+        }
+    }
+
+    private static class DdmlibBridge implements Bridge {
+
+        private final AndroidDebugBridge delegate;
+
+        DdmlibBridge(AndroidDebugBridge delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public boolean isConnected() {
+            return delegate.isConnected();
+        }
+
+        @Override
+        public boolean hasInitialDeviceList() {
+            return delegate.hasInitialDeviceList();
+        }
+
+        @Override
+        public IDevice[] getDevices() {
+            return delegate.getDevices();
+        }
+    }
+}
@@ -16,10 +16,15 @@
  */
 package org.jboss.arquillian.container.android.managed.impl;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -50,6 +55,8 @@ import org.jboss.arquillian.core.api.annotation.Observes;
  *
  * <br>
  * <br>
+ * 0. If emulators are pooled, an idle emulator of the pool is leased. It has to run the AVD of the specified name, or a
+ * generated AVD of the same API level and ABI if no name was specified. <br>
  * 1. If console port was specified but avd name was not, we try to connect to running emulator which listens to specified port.
  * If we fails to connect, {@link AndroidExecutionException} is thrown. <br>
  * 2. If avd name was specified but console port was not, we try to connect to the first running emulator of such avd name. <br>
@@ -69,6 +76,8 @@ import org.jboss.arquillian.core.api.annotation.Observes;
  * Creates:
  * <ul>
  * <li>{@link AndroidDevice}</li>
+ * <li>{@link PooledEmulator} - when an emulator was leased from the pool</li>
+ * <li>{@link LifecycleTimeline} - when an emulator is going to be started and the bridge connector did not create it</li>
  * </ul>
  *
  * Fires:
@@ -90,6 +99,14 @@ public class AndroidDeviceSelectorImpl implements AndroidDeviceSelector {
     @ContainerScoped
     private InstanceProducer<AndroidDevice> androidDevice;
 
+    @Inject
+    @ContainerScoped
+    private InstanceProducer<PooledEmulator> pooledEmulator;
+
+    @Inject
+    @ContainerScoped
+    private InstanceProducer<LifecycleTimeline> lifecycleTimeline;
+
     @Inject
     private Instance<AndroidBridge> androidBridge;
 
@@ -128,6 +145,16 @@ public class AndroidDeviceSelectorImpl implements AndroidDeviceSelector {
             }
         }
 
+        if (configuration.get().isEmulatorPool()) {
+            device = leasePooledEmulator();
+            if (device != null) {
+                setDronePorts(device);
+                androidDevice.set(device);
+                androidDeviceReady.fire(new AndroidDeviceReady(device));
+                return;
+            }
+        }
+
         if (isConnectingToVirtualDevice()) {
             device = getVirtualDevice();
             if (device != null) {
@@ -138,6 +165,11 @@ public class AndroidDeviceSelectorImpl implements AndroidDeviceSelector {
             }
         }
 
+        // phases of the emulator start follow the connection to the bridge on the timeline
+        if (lifecycleTimeline.get() == null) {
+            lifecycleTimeline.set(new LifecycleTimeline());
+        }
+
         if (configuration.get().getAvdName() == null) {
             String generatedAvdName = idGenerator.get().getIdentifier(IdentifierType.AVD.getClass());
             configuration.get().setAvdName(generatedAvdName);
@@ -217,7 +249,7 @@ public class AndroidDeviceSelectorImpl implements AndroidDeviceSelector {
         Validate.notNullOrEmpty(consolePort, "Console port to get emulator of is a null object or an empty string.");
         Validate.notNullOrEmpty(avdName, "AVD name to get emulator of is a null object or an empty string.");
 
-        List<AndroidDevice> devices = androidBridge.get().getEmulators();
+        List<AndroidDevice> devices = getEmulators();
 
         if (devices == null || devices.size() == 0) {
             throw new AndroidExecutionException("There are no emulators on the Android bridge.");
@@ -235,7 +267,7 @@ public class AndroidDeviceSelectorImpl implements AndroidDeviceSelector {
     private AndroidDevice getVirtualDeviceByConsolePort(String consolePort) throws AndroidExecutionException {
         Validate.notNullOrEmpty(consolePort, "Console port to get emulator of is a null object or an empty string.");
 
-        List<AndroidDevice> devices = androidBridge.get().getEmulators();
+        List<AndroidDevice> devices = getEmulators();
 
         if (devices == null || devices.size() == 0) {
             throw new AndroidExecutionException("There are no emulators on the Android bridge.");
@@ -254,7 +286,7 @@ public class AndroidDeviceSelectorImpl implements AndroidDeviceSelector {
     private AndroidDevice getVirtualDeviceByAvdName(String avdName) throws AndroidExecutionException {
         Validate.notNullOrEmpty(avdName, "AVD name to get emulator of is a null object or an empty string");
 
-        List<AndroidDevice> devices = androidBridge.get().getEmulators();
+        List<AndroidDevice> devices = getEmulators();
 
         if (devices == null || devices.size() == 0) {
             throw new AndroidExecutionException("There are no emulators on the Android bridge.");
@@ -270,6 +302,56 @@ public class AndroidDeviceSelectorImpl implements AndroidDeviceSelector {
         throw new AndroidExecutionException("No running emulator of AVD name " + avdName + ".");
     }
 
+    /**
+     * Leases an idle emulator of the pool. Emulators which are idle for too long are evicted first.
+     *
+     * @return leased emulator or {@code null} if there is no matching one
+     */
+    private AndroidDevice leasePooledEmulator() {
+        AndroidManagedContainerConfiguration configuration = this.configuration.get();
+        EmulatorPool pool = new EmulatorPool(new File(configuration.getEmulatorPoolDirectory()));
+        pool.evictIdle(TimeUnit.SECONDS.toMillis(configuration.getEmulatorPoolIdleTimeoutInSeconds()), executor.get(),
+            androidSDK.get());
+
+        Map<String, AndroidDevice> running = new HashMap<String, AndroidDevice>();
+        for (AndroidDevice device : androidBridge.get().getEmulators()) {
+            running.put(device.getSerialNumber(), device);
+        }
+
+        PooledEmulator leased = pool.lease(configuration.getAvdName(), configuration.getApiLevel(),
+            configuration.getAbi(), running.keySet());
+        if (leased == null) {
+            return null;
+        }
+
+        // the container works with the AVD of the leased emulator from now on, including a generated one
+        configuration.setAvdName(leased.getAvdName());
+        configuration.setAvdGenerated(leased.isGenerated());
+        pooledEmulator.set(leased);
+        return running.get(leased.getSerialNumber());
+    }
+
+    /**
+     * Gets running emulators, except of the pooled ones when emulators are pooled. These are available only by a lease.
+     *
+     * @return running emulators
+     */
+    private List<AndroidDevice> getEmulators() {
+        List<AndroidDevice> emulators = androidBridge.get().getEmulators();
+        if (emulators == null || !configuration.get().isEmulatorPool()) {
+            return emulators;
+        }
+
+        EmulatorPool pool = new EmulatorPool(new File(configuration.get().getEmulatorPoolDirectory()));
+        List<AndroidDevice> available = new ArrayList<AndroidDevice>();
+        for (AndroidDevice emulator : emulators) {
+            if (!pool.contains(emulator.getSerialNumber())) {
+                available.add(emulator);
+            }
+        }
+        return available;
+    }
+
     private AndroidDevice getPhysicalDevice() throws AndroidExecutionException {
 
         String serialId = configuration.get().getSerialId();
@@ -305,7 +387,8 @@ public class AndroidDeviceSelectorImpl implements AndroidDeviceSelector {
         List<String> output;
 
         try {
-            output = executor.execute(androidSDK.get().getAndroidPath(), "list", "avd");
+            AndroidSDK sdk = androidSDK.get();
+            output = executor.executeCached(sdk.getAvdDependencies(), sdk.getAndroidPath(), "list", "avd");
         } catch (InterruptedException e) {
             throw new AndroidExecutionException("Unable to get list of available AVDs", e);
         } catch (ExecutionException e) {
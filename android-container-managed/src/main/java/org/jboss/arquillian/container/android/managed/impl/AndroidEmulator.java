@@ -16,6 +16,12 @@
  */
 package org.jboss.arquillian.container.android.managed.impl;
 
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
 /**
  * An Android emulator process.
  *
@@ -24,12 +30,43 @@ package org.jboss.arquillian.container.android.managed.impl;
  */
 public class AndroidEmulator {
 
+    private static final Logger logger = Logger.getLogger(AndroidEmulator.class.getName());
+
     private Process process;
 
+    private ProcessOutputTail output;
+
+    private ProcessLogScanner log;
+
+    private EmulatorCrashWatchdog watchdog;
+
+    private EmulatorPortAllocator.EmulatorPorts ports;
+
+    private EmulatorAdmission.Ticket admission;
+
+    private EmulatorCoreAllocator.Cores cores;
+
     public AndroidEmulator(Process process) {
         this.process = process;
     }
 
+    public AndroidEmulator(Process process, ProcessOutputTail output) {
+        this.process = process;
+        this.output = output;
+    }
+
+    /**
+     * Creates an emulator which output is redirected to a log file.
+     *
+     * @param process emulator process
+     * @param output tail the log is scanned into
+     * @param log scanner of the log file the emulator writes its output to
+     */
+    public AndroidEmulator(Process process, ProcessOutputTail output, ProcessLogScanner log) {
+        this(process, output);
+        this.log = log;
+    }
+
     public Process getProcess() {
         return process;
     }
@@ -37,4 +74,95 @@ public class AndroidEmulator {
     public void setProcess(Process process) {
         this.process = process;
     }
+
+    /**
+     * Returns the last lines the emulator process has written to its output.
+     *
+     * @return tail of the emulator output, the oldest line first
+     */
+    public List<String> getOutputTail() {
+        if (output == null) {
+            return Collections.emptyList();
+        }
+        if (log != null) {
+            try {
+                log.scan(output);
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Unable to read emulator output from " + log.getFile(), e);
+            }
+        }
+        return output.getLines();
+    }
+
+    public ProcessOutputTail getOutput() {
+        return output;
+    }
+
+    /**
+     * Returns the watchdog which detects a crash of the emulator while it boots.
+     *
+     * @return the watchdog or {@code null} if the emulator is not watched
+     */
+    public EmulatorCrashWatchdog getWatchdog() {
+        return watchdog;
+    }
+
+    public void setWatchdog(EmulatorCrashWatchdog watchdog) {
+        this.watchdog = watchdog;
+    }
+
+    /**
+     * Returns ports allocated for the emulator.
+     *
+     * @return the ports or {@code null} if the ports were configured
+     */
+    public EmulatorPortAllocator.EmulatorPorts getPorts() {
+        return ports;
+    }
+
+    public void setPorts(EmulatorPortAllocator.EmulatorPorts ports) {
+        this.ports = ports;
+    }
+
+    /**
+     * Returns admission of the emulator to the host.
+     *
+     * @return the admission or {@code null} if emulators are not admitted
+     */
+    public EmulatorAdmission.Ticket getAdmission() {
+        return admission;
+    }
+
+    public void setAdmission(EmulatorAdmission.Ticket admission) {
+        this.admission = admission;
+    }
+
+    /**
+     * Returns processor cores the emulator is pinned to.
+     *
+     * @return the cores or {@code null} if the cores were not allocated
+     */
+    public EmulatorCoreAllocator.Cores getCores() {
+        return cores;
+    }
+
+    public void setCores(EmulatorCoreAllocator.Cores cores) {
+        this.cores = cores;
+    }
+
+    /**
+     * Releases ports, admission and processor cores the emulator held on the host. Releasing released resources has no
+     * effect.
+     */
+    public void releaseHostResources() {
+        if (ports != null) {
+            ports.release();
+        }
+        if (admission != null) {
+            admission.release();
+        }
+        if (cores != null) {
+            cores.release();
+        }
+    }
 }
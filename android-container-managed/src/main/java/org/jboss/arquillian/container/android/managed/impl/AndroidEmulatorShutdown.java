@@ -30,11 +30,7 @@
  */
 package org.jboss.arquillian.container.android.managed.impl;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
-import java.net.Socket;
+import java.io.File;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
@@ -47,17 +43,16 @@ import org.jboss.arquillian.android.spi.event.AndroidVirtualDeviceDelete;
 import org.jboss.arquillian.container.android.api.AndroidDevice;
 import org.jboss.arquillian.container.android.api.AndroidExecutionException;
 import org.jboss.arquillian.container.android.managed.configuration.AndroidManagedContainerConfiguration;
+import org.jboss.arquillian.container.android.managed.configuration.AndroidSDK;
 import org.jboss.arquillian.core.api.Event;
 import org.jboss.arquillian.core.api.Instance;
 import org.jboss.arquillian.core.api.annotation.Inject;
 import org.jboss.arquillian.core.api.annotation.Observes;
 
-import com.android.ddmlib.AndroidDebugBridge;
-import com.android.ddmlib.AndroidDebugBridge.IDeviceChangeListener;
 import com.android.ddmlib.IDevice;
 
 /**
- * Brings Android Emulator down. <br>
+ * Brings Android Emulator down. When emulators are pooled, the emulator is reset and returned to the pool instead. <br>
  * <br>
  * Observes:
  * <ul>
@@ -89,6 +84,12 @@ public class AndroidEmulatorShutdown {
     @Inject
     private Instance<ProcessExecutor> executor;
 
+    @Inject
+    private Instance<AndroidSDK> androidSDK;
+
+    @Inject
+    private Instance<PooledEmulator> pooledEmulator;
+
     @Inject
     private Event<AndroidEmulatorShuttedDown> androidEmulatorShuttedDown;
 
@@ -100,52 +101,136 @@ public class AndroidEmulatorShutdown {
         AndroidEmulator emulator = androidEmulator.get();
         AndroidDevice device = androidDevice.get();
         AndroidManagedContainerConfiguration configuration = this.configuration.get();
+        boolean deferred = false;
 
-        if (emulator != null && device.isEmulator()) {
-            final ProcessExecutor executor = this.executor.get();
-            final Process p = emulator.getProcess();
-            CountDownWatch countdown = new CountDownWatch(configuration.getEmulatorShutdownTimeoutInSeconds(),
-                TimeUnit.SECONDS);
-            logger.info("Waiting " + countdown.timeout() + " seconds for emulator " + device.getAvdName()
-                + " to be disconnected and shutdown.");
-            try {
-                final DeviceDisconnectDiscovery listener = new DeviceDisconnectDiscovery(device);
-                AndroidDebugBridge.addDeviceChangeListener(listener);
-                stopEmulator(p, executor, device, countdown);
-                waitUntilShutDownIsComplete(device, listener, executor, countdown);
-                AndroidDebugBridge.removeDeviceChangeListener(listener);
-
-                if (configuration.isAVDGenerated()) {
-                    androidVirtualDeviceDelete.fire(new AndroidVirtualDeviceDelete());
+        try {
+            if (configuration.isEmulatorPool() && device != null && device.isEmulator()
+                && (emulator != null || pooledEmulator.get() != null)) {
+                if (returnToPool(emulator, device, configuration)) {
+                    return;
                 }
+            }
 
-                androidEmulatorShuttedDown.fire(new AndroidEmulatorShuttedDown(device));
-            } finally {
-                executor.removeShutdownHook(p);
+            if (emulator != null && device.isEmulator() && configuration.isEmulatorDeferredTeardown()) {
+                deferTeardown(emulator, device, configuration);
+                deferred = true;
+                return;
+            }
+
+            if (emulator != null && device.isEmulator()) {
+                final ProcessExecutor executor = this.executor.get();
+                final Process p = emulator.getProcess();
+                CountDownWatch countdown = new CountDownWatch(configuration.getEmulatorShutdownTimeoutInSeconds(),
+                    TimeUnit.SECONDS);
+                logger.info("Waiting " + countdown.timeout() + " seconds for emulator " + device.getAvdName()
+                    + " to be disconnected and shutdown.");
+                // registered before the emulator is stopped, so the disconnection is not missed
+                final ProcessFuture<IDevice> disconnected = DeviceDiscoveryHub.getInstance().await(
+                    device.getSerialNumber(), DeviceDiscoveryHub.DeviceState.DISCONNECTED);
+                try {
+                    if (configuration.isAVDGenerated() && configuration.isEmulatorFastTeardown()) {
+                        // the AVD is thrown away, it does not matter whether the bridge has noticed the emulator is gone
+                        tearDownEmulator(p, executor, device, countdown);
+                    } else {
+                        stopEmulator(p, executor, device, countdown);
+                        waitUntilShutDownIsComplete(device, disconnected, countdown);
+
+                        if (configuration.isAVDGenerated()) {
+                            androidVirtualDeviceDelete.fire(new AndroidVirtualDeviceDelete());
+                        }
+                    }
+
+                    androidEmulatorShuttedDown.fire(new AndroidEmulatorShuttedDown(device));
+                } finally {
+                    disconnected.cancel(false);
+                    executor.removeShutdownHook(p);
+                }
+            }
+        } finally {
+            // ports of a pooled emulator are not needed either, a running emulator is detected when ports are allocated
+            // its admission and cores are handed over to the pool, which holds them until the emulator is evicted
+            // host resources of a deferred emulator are released by the reaper once the emulator exits
+            if (emulator != null && !deferred) {
+                emulator.releaseHostResources();
             }
         }
     }
 
+    /**
+     * Resets the emulator and returns it to the pool instead of stopping it. An emulator leased from the pool which can not
+     * be reset is disposed.
+     *
+     * @return {@code true} if the emulator was handled by the pool, {@code false} if it has to be stopped
+     */
+    private boolean returnToPool(AndroidEmulator emulator, AndroidDevice device,
+        AndroidManagedContainerConfiguration configuration) {
+
+        ProcessExecutor executor = this.executor.get();
+        AndroidSDK sdk = androidSDK.get();
+        EmulatorPool pool = new EmulatorPool(new File(configuration.getEmulatorPoolDirectory()));
+
+        PooledEmulator pooled = pooledEmulator.get();
+        if (pooled == null) {
+            pooled = new PooledEmulator(device.getSerialNumber(), configuration.getAvdName(), configuration.getApiLevel(),
+                configuration.getAbi(), configuration.isAVDGenerated());
+        }
+
+        if (!resetEmulator(device, configuration)) {
+            logger.warning("Unable to reset emulator " + device.getSerialNumber() + ", it is not returned to the pool.");
+            if (emulator == null) {
+                pool.dispose(pooled, executor, sdk);
+                return true;
+            }
+            return false;
+        }
+
+        if (emulator != null) {
+            // the emulator has to outlive this JVM
+            executor.removeShutdownHook(emulator.getProcess());
+            pooled.setAdmission(emulator.getAdmission());
+            emulator.setAdmission(null);
+            pooled.setCores(emulator.getCores());
+            emulator.setCores(null);
+        }
+        pool.release(pooled);
+        pool.evictIdle(TimeUnit.SECONDS.toMillis(configuration.getEmulatorPoolIdleTimeoutInSeconds()), executor, sdk);
+        return true;
+    }
+
+    /**
+     * Brings the emulator to a clean state by restoring its boot snapshot, so nothing the tests changed, e.g. data of
+     * applications or settings, leaks to the next container which leases it.
+     *
+     * @return {@code true} if the emulator was reset
+     */
+    private boolean resetEmulator(AndroidDevice device, AndroidManagedContainerConfiguration configuration) {
+        String serialNumber = device.getSerialNumber();
+        try {
+            EmulatorConsole.forSerialNumber(serialNumber).execute("avd snapshot load "
+                + configuration.getEmulatorSnapshot(), configuration.getEmulatorShutdownTimeoutInSeconds(),
+                TimeUnit.SECONDS);
+            return true;
+        } catch (AndroidExecutionException e) {
+            logger.warning("Reset of emulator " + serialNumber + " failed: " + e.getMessage());
+            return false;
+        }
+    }
+
     /**
      * Brings Android device down.
      *
      * @param device {@link AndroidDevice} to shut down
      * @param listener
-     * @param executor
      * @param countdown
      * @throws AndroidExecutionException
      */
-    private void waitUntilShutDownIsComplete(final AndroidDevice device, final DeviceDisconnectDiscovery listener,
-        ProcessExecutor executor, CountDownWatch countdown) throws AndroidExecutionException {
+    private void waitUntilShutDownIsComplete(final AndroidDevice device, final ProcessFuture<IDevice> disconnected,
+        CountDownWatch countdown) throws AndroidExecutionException {
 
         try {
             // wait until device is disconnected from bridge
-            boolean isOffline = executor.scheduleUntilTrue(new Callable<Boolean>() {
-                @Override
-                public Boolean call() throws Exception {
-                    return listener.isOffline();
-                }
-            }, countdown.timeLeft(), countdown.getTimeUnit().convert(1, TimeUnit.SECONDS), countdown.getTimeUnit());
+            boolean isOffline = SignalledCondition.completionOf(disconnected).await(countdown.timeLeft(),
+                countdown.getTimeUnit());
 
             if (isOffline == false) {
                 throw new AndroidExecutionException("Unable to disconnect AVD device {0} in given timeout {1} seconds",
@@ -162,6 +247,43 @@ public class AndroidEmulatorShutdown {
 
     }
 
+    /**
+     * Stops an emulator of a generated AVD and deletes the AVD and the SD card while the bridge is still being notified the
+     * emulator is gone. The AVD and the SD card are deleted at the same time as soon as the emulator process exits, the
+     * emulator keeps their files open until then.
+     */
+    private void tearDownEmulator(Process p, ProcessExecutor executor, AndroidDevice device, CountDownWatch countdown)
+        throws AndroidExecutionException {
+
+        long started = System.nanoTime();
+        if (EmulatorTeardown.kill(p, executor, device.getSerialNumber(), countdown)) {
+            androidVirtualDeviceDelete.fire(new AndroidVirtualDeviceDelete());
+        } else {
+            logger.warning("Emulator " + device.getSerialNumber() + " did not exit, AVD " + device.getAvdName()
+                + " it uses is not deleted.");
+        }
+        logger.info("Emulator " + device.getSerialNumber() + " was torn down in "
+            + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) + " ms.");
+    }
+
+    /**
+     * Hands the teardown of the emulator to {@link EmulatorReaper}, the container does not wait for it.
+     */
+    private void deferTeardown(AndroidEmulator emulator, AndroidDevice device,
+        AndroidManagedContainerConfiguration configuration) {
+
+        String avdName = configuration.isAVDGenerated() ? configuration.getAvdName() : null;
+        String sdCard = configuration.isAVDGenerated() && configuration.getGenerateSDCard() ? configuration.getSdCard()
+            : null;
+        EmulatorTeardown teardown = new EmulatorTeardown(emulator, device.getSerialNumber(), executor.get(),
+            androidSDK.get(), avdName, sdCard, configuration.getEmulatorShutdownTimeoutInSeconds());
+        logger.info("Teardown of emulator " + device.getSerialNumber() + " was deferred, " + teardown.getLeftovers()
+            + " will be cleaned up in the background.");
+        // the reaper waits for the emulator to exit and for the AVD to be deleted, one minute is added for the latter
+        EmulatorReaper.getInstance().defer(teardown, configuration.getEmulatorShutdownTimeoutInSeconds() + 60L,
+            TimeUnit.SECONDS);
+    }
+
     /**
      * This method contains the code required to stop an emulator.
      *
@@ -179,8 +301,8 @@ public class AndroidEmulatorShutdown {
             logger.info("Stopping emulator " + device.getSerialNumber() + " via port " + devicePort + ".");
 
             try {
-                Boolean stopped = executor.submit(sendEmulatorCommand(devicePort, "kill")).get(countdown.timeLeft(),
-                    countdown.getTimeUnit());
+                // the console replies before it exits, a rejected or lost kill fails loudly
+                EmulatorConsole.forPort(devicePort).execute("kill", countdown.timeLeft(), countdown.getTimeUnit());
 
                 // wait to retrieve finished process of emulator
                 int retval = executor.submit(new Callable<Integer>() {
@@ -190,7 +312,15 @@ public class AndroidEmulatorShutdown {
                     }
                 }).get(5, TimeUnit.SECONDS);
 
-                return stopped && retval == 0;
+                return retval == 0;
+            } catch (AndroidExecutionException e) {
+                p.destroy();
+                if (e.getCause() instanceof TimeoutException) {
+                    logger.warning("Emulator console did not reply to kill, emulator process was forcibly destroyed, "
+                        + countdown.timeLeft() + " seconds remaining to dispose the device");
+                    return false;
+                }
+                throw e;
             } catch (TimeoutException e) {
                 p.destroy();
                 logger.warning("Emulator process was forcibly destroyed, " + countdown.timeLeft()
@@ -226,82 +356,4 @@ public class AndroidEmulatorShutdown {
         // If the port is not available then return -1
         return -1;
     }
-
-    /**
-     * Sends a user command to the running emulator via its telnet interface.
-     *
-     * @param port The emulator's telnet port.
-     * @param command The command to execute on the emulator's telnet interface.
-     * @return Whether sending the command succeeded.
-     */
-    private Callable<Boolean> sendEmulatorCommand(final int port, final String command) {
-        return new Callable<Boolean>() {
-            @Override
-            public Boolean call() throws IOException {
-                Socket socket = null;
-                BufferedReader in = null;
-                PrintWriter out = null;
-
-                try {
-                    socket = new Socket("127.0.0.1", port);
-                    out = new PrintWriter(socket.getOutputStream(), true);
-                    in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-
-                    String telnetOutputString = null;
-
-                    while ((telnetOutputString = in.readLine()) != null) {
-                        if (telnetOutputString.equals("OK")) {
-                            break;
-                        }
-                    }
-
-                    out.write(command);
-                    out.write("\n");
-                    out.flush();
-                } finally {
-                    try {
-                        out.close();
-                        in.close();
-                        socket.close();
-                    } catch (Exception e) {
-                        // ignore
-                    }
-                }
-
-                return true;
-            }
-
-        };
-    }
-
-    private static class DeviceDisconnectDiscovery implements IDeviceChangeListener {
-
-        private boolean offline;
-
-        private final AndroidDevice connectedDevice;
-
-        public DeviceDisconnectDiscovery(AndroidDevice connectedDevice) {
-            this.connectedDevice = connectedDevice;
-        }
-
-        @Override
-        public void deviceChanged(IDevice device, int changeMask) {
-        }
-
-        @Override
-        public void deviceDisconnected(IDevice device) {
-            if (device.getAvdName().equals(connectedDevice.getAvdName())) {
-                this.offline = true;
-            }
-            logger.fine("Discovered an emulator device id=" + device.getSerialNumber() + " disconnected from ADB bus");
-        }
-
-        public boolean isOffline() {
-            return offline;
-        }
-
-        @Override
-        public void deviceConnected(IDevice device) {
-        }
-    }
 }
@@ -16,22 +16,27 @@
  */
 package org.jboss.arquillian.container.android.managed.impl;
 
-import java.util.Collections;
+import java.io.File;
+import java.io.IOException;
 import java.util.List;
-import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.jboss.arquillian.android.spi.event.AndroidDeviceReady;
+import org.jboss.arquillian.android.spi.event.AndroidLifecycleTimings;
 import org.jboss.arquillian.android.spi.event.AndroidVirtualDeviceAvailable;
 import org.jboss.arquillian.container.android.api.AndroidBridge;
 import org.jboss.arquillian.container.android.api.AndroidDevice;
 import org.jboss.arquillian.container.android.api.AndroidExecutionException;
+import org.jboss.arquillian.container.android.managed.configuration.AndroidContainerConfigurationException;
 import org.jboss.arquillian.container.android.managed.configuration.AndroidManagedContainerConfiguration;
 import org.jboss.arquillian.container.android.managed.configuration.AndroidSDK;
 import org.jboss.arquillian.container.android.managed.configuration.Command;
+import org.jboss.arquillian.container.android.managed.configuration.EmulatorOptions;
+import org.jboss.arquillian.container.android.managed.configuration.EmulatorProfile;
 import org.jboss.arquillian.container.spi.context.annotation.ContainerScoped;
 import org.jboss.arquillian.core.api.Event;
 import org.jboss.arquillian.core.api.Instance;
@@ -39,8 +44,6 @@ import org.jboss.arquillian.core.api.InstanceProducer;
 import org.jboss.arquillian.core.api.annotation.Inject;
 import org.jboss.arquillian.core.api.annotation.Observes;
 
-import com.android.ddmlib.AndroidDebugBridge;
-import com.android.ddmlib.AndroidDebugBridge.IDeviceChangeListener;
 import com.android.ddmlib.IDevice;
 
 /**
@@ -55,10 +58,12 @@ import com.android.ddmlib.IDevice;
  * <ul>
  * <li>{@link AndroidEmulator}</li>
  * <li>{@link AndroidDevice}</li>
+ * <li>{@link LifecycleTimeline} - unless it was created by the device selector</li>
  * </ul>
  *
  * Fires:
  * <ul>
+ * <li>{@link AndroidLifecycleTimings}</li>
  * <li>{@link AndroidDeviceReady}</li>
  * </ul>
  *
@@ -78,6 +83,10 @@ public class AndroidEmulatorStartup {
     @ContainerScoped
     private InstanceProducer<AndroidDevice> androidDevice;
 
+    @Inject
+    @ContainerScoped
+    private InstanceProducer<LifecycleTimeline> lifecycleTimeline;
+
     @Inject
     private Instance<AndroidBridge> androidBridge;
 
@@ -93,6 +102,9 @@ public class AndroidEmulatorStartup {
     @Inject
     private Event<AndroidDeviceReady> androidDeviceReady;
 
+    @Inject
+    private Event<AndroidLifecycleTimings> androidLifecycleTimings;
+
     public void createAndroidEmulator(@Observes AndroidVirtualDeviceAvailable event) throws AndroidExecutionException {
         if (!androidBridge.get().isConnected()) {
             throw new IllegalStateException("Android debug bridge must be connected in order to spawn the emulator");
@@ -100,41 +112,297 @@ public class AndroidEmulatorStartup {
 
         AndroidManagedContainerConfiguration configuration = this.configuration.get();
         AndroidDevice emulator = null;
+        LifecycleTimeline timeline = getTimeline();
+        // boot times of emulators started with different profiles are compared by timelines
+        timeline.setProfile(configuration.getEmulatorProfile());
+        // time the emulator waits for capacity of the host is not a part of the boot timeout
+        EmulatorAdmission.Ticket admission = admit(configuration, timeline);
 
         CountDownWatch countdown = new CountDownWatch(configuration.getEmulatorBootupTimeoutInSeconds(), TimeUnit.SECONDS);
         logger.log(Level.INFO, "Waiting {0} seconds for emulator {1} to be started and connected.", new Object[] {
             countdown.timeout(), configuration.getAvdName() });
 
         ProcessExecutor emulatorProcessExecutor = this.executor.get();
-        DeviceConnectDiscovery deviceDiscovery = new DeviceConnectDiscovery();
-        AndroidDebugBridge.addDeviceChangeListener(deviceDiscovery);
-
-        Process emulatorProcess = startEmulator(emulatorProcessExecutor);
+        // the emulator is started at known ports, so it is not confused with emulators of other containers
+        DeviceDiscoveryHub deviceDiscovery = DeviceDiscoveryHub.getInstance();
+        EmulatorPortAllocator.EmulatorPorts ports = null;
+        EmulatorCoreAllocator.Cores cores = null;
+        try {
+            ports = allocatePorts(configuration);
+            cores = allocateCores(configuration);
+        } catch (RuntimeException e) {
+            release(admission, ports, cores);
+            throw e;
+        }
+        int consolePort = ports != null ? ports.getConsolePort() : Integer.parseInt(configuration.getConsolePort());
+        ProcessFuture<IDevice> connected = deviceDiscovery.awaitConnected(consolePort);
+        ProcessFuture<IDevice> online = deviceDiscovery.awaitOnline(consolePort);
 
-        androidEmulator.set(new AndroidEmulator(emulatorProcess));
+        EmulatorSnapshot snapshot = createSnapshot(configuration);
+        long bootStarted = System.nanoTime();
+        AndroidEmulator emulatorInstance;
+        try {
+            emulatorInstance = startEmulator(emulatorProcessExecutor, snapshot, consolePort, ports, cores);
+        } catch (RuntimeException e) {
+            connected.cancel(false);
+            online.cancel(false);
+            release(admission, ports, cores);
+            throw e;
+        }
+        long spawned = timeline.record(AndroidLifecycleTimings.PROCESS_SPAWN, bootStarted);
+        // ports, admission and cores are released when the emulator is stopped
+        emulatorInstance.setPorts(ports);
+        emulatorInstance.setAdmission(admission);
+        emulatorInstance.setCores(cores);
+        androidEmulator.set(emulatorInstance);
 
         logger.log(Level.INFO, "Emulator process started, {0} seconds remaining to start the device {1}", new Object[] {
             countdown.timeLeft(), configuration.getAvdName() });
 
-        waitUntilBootUpIsComplete(deviceDiscovery, emulatorProcessExecutor, countdown);
+        IDevice device;
+        try {
+            device = waitUntilBootUpIsComplete(connected, online, emulatorProcessExecutor, emulatorInstance.getWatchdog(),
+                countdown, timeline, spawned);
+        } catch (RuntimeException e) {
+            logger.log(Level.SEVERE, "Emulator {0} failed to boot, last output of the emulator process:\n{1}", new Object[] {
+                configuration.getAvdName(), emulatorInstance.getOutputTail() });
+            connected.cancel(false);
+            online.cancel(false);
+            if (snapshot != null && snapshot.isUsable()) {
+                // a broken snapshot would fail every following boot, it is saved again by the next cold boot
+                snapshot.invalidate();
+            }
+            throw e;
+        } finally {
+            // the emulator is expected to exit once it is stopped
+            emulatorInstance.getWatchdog().disarm();
+        }
+
+        if (snapshot != null) {
+            snapshot.recordBoot(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - bootStarted));
+        }
+
+        long unlockStarted = System.nanoTime();
+        unlockEmulator(device.getSerialNumber(), emulatorProcessExecutor);
+        timeline.record(AndroidLifecycleTimings.UNLOCK, unlockStarted);
 
-        unlockEmulator(deviceDiscovery, emulatorProcessExecutor);
+        if (snapshot != null && !snapshot.isUsable()) {
+            saveSnapshot(device.getSerialNumber(), snapshot);
+        }
 
-        emulator = deviceDiscovery.getDiscoveredDevice();
+        long dronePortSetupStarted = System.nanoTime();
+        emulator = new AndroidDeviceImpl(device);
         setDronePorts(emulator);
+        timeline.record(AndroidLifecycleTimings.DRONE_PORT_SETUP, dronePortSetupStarted);
 
-        AndroidDebugBridge.removeDeviceChangeListener(deviceDiscovery);
+        publishTimeline(timeline, configuration);
 
         androidDevice.set(emulator);
         androidDeviceReady.fire(new AndroidDeviceReady(emulator));
     }
 
+    private LifecycleTimeline getTimeline() {
+        // the timeline is started by the bridge connector, unless the emulator is started on its own
+        if (lifecycleTimeline.get() == null) {
+            lifecycleTimeline.set(new LifecycleTimeline());
+        }
+        return lifecycleTimeline.get();
+    }
+
+    private void publishTimeline(LifecycleTimeline timeline, AndroidManagedContainerConfiguration configuration) {
+        logger.log(Level.INFO, "Emulator {0} started with profile {1}: {2}", new Object[] { configuration.getAvdName(),
+            configuration.getEmulatorProfile(), timeline });
+        String directory = configuration.getLifecycleTimingsDirectory();
+        if (directory != null && directory.length() != 0) {
+            try {
+                File file = timeline.write(new File(directory), configuration.getAvdName());
+                logger.log(Level.FINE, "Timeline of emulator {0} was written to {1}", new Object[] {
+                    configuration.getAvdName(), file });
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Unable to write timeline of emulator " + configuration.getAvdName(), e);
+            }
+        }
+        androidLifecycleTimings.fire(new AndroidLifecycleTimings(configuration.getAvdName(),
+            configuration.getEmulatorProfile(), timeline.getDurations()));
+    }
+
     private void setDronePorts(AndroidDevice device) {
         device.setDroneHostPort(configuration.get().getDroneHostPort());
         device.setDroneGuestPort(configuration.get().getDroneGuestPort());
     }
 
-    private Process startEmulator(ProcessExecutor executor) throws AndroidExecutionException {
+    private EmulatorAdmission.Ticket admit(AndroidManagedContainerConfiguration configuration, LifecycleTimeline timeline)
+        throws AndroidExecutionException {
+        if (!configuration.isEmulatorAdmission()) {
+            return null;
+        }
+
+        EmulatorAdmission.Footprint footprint = EmulatorAdmission.Footprint.of(androidSDK.get().getAvdDirectory(
+            configuration.getAvdName()));
+        long queued = System.nanoTime();
+        try {
+            EmulatorAdmission.Ticket ticket = new EmulatorAdmission(new File(configuration.getEmulatorAdmissionDirectory()))
+                .admit(footprint, configuration.getEmulatorAdmissionTimeoutInSeconds(), TimeUnit.SECONDS);
+            timeline.record(AndroidLifecycleTimings.ADMISSION_QUEUE, queued);
+            logger.log(Level.INFO, "Emulator {0} of {1} was admitted after {2} ms in the queue", new Object[] {
+                configuration.getAvdName(), footprint, ticket.getQueueTime(TimeUnit.MILLISECONDS) });
+            return ticket;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AndroidExecutionException(e, "Emulator {0} was interrupted while waiting for capacity of the host",
+                configuration.getAvdName());
+        } catch (TimeoutException e) {
+            throw new AndroidExecutionException(e, "Emulator {0} was not started, {1}. Please increase the admission "
+                + "timeout or run less containers at once.", configuration.getAvdName(), e.getMessage());
+        } catch (IOException e) {
+            throw new AndroidExecutionException(e, "Unable to admit emulator {0}", configuration.getAvdName());
+        }
+    }
+
+    private void release(EmulatorAdmission.Ticket admission, EmulatorPortAllocator.EmulatorPorts ports,
+        EmulatorCoreAllocator.Cores cores) {
+        if (admission != null) {
+            admission.release();
+        }
+        if (ports != null) {
+            ports.release();
+        }
+        if (cores != null) {
+            cores.release();
+        }
+    }
+
+    private EmulatorPortAllocator.EmulatorPorts allocatePorts(AndroidManagedContainerConfiguration configuration)
+        throws AndroidExecutionException {
+        if (configuration.getConsolePort() != null) {
+            return null;
+        }
+        EmulatorPortAllocator.EmulatorPorts ports = new EmulatorPortAllocator(new File(
+            configuration.getEmulatorPortDirectory())).allocate();
+        logger.log(Level.INFO, "Emulator {0} will use ports {1}", new Object[] { configuration.getAvdName(), ports });
+        return ports;
+    }
+
+    private EmulatorCoreAllocator.Cores allocateCores(AndroidManagedContainerConfiguration configuration)
+        throws AndroidExecutionException {
+        if (!"auto".equals(configuration.getEmulatorCpuAffinity()) || !isLinux()) {
+            return null;
+        }
+        int count = EmulatorAdmission.Footprint.of(androidSDK.get().getAvdDirectory(configuration.getAvdName()))
+            .getCores();
+        EmulatorCoreAllocator.Cores cores = new EmulatorCoreAllocator(new File(configuration.getEmulatorCoreDirectory()))
+            .allocate(count);
+        if (cores == null) {
+            logger.log(Level.WARNING, "There are not {0} free processor cores, emulator {1} will not be pinned",
+                new Object[] { count, configuration.getAvdName() });
+        } else {
+            logger.log(Level.INFO, "Emulator {0} will be pinned to processor cores {1}", new Object[] {
+                configuration.getAvdName(), cores });
+        }
+        return cores;
+    }
+
+    /**
+     * Prepends {@code nice} and {@code taskset} to the command, both of them exec the emulator, so the spawned process is
+     * still the emulator.
+     */
+    private Command schedule(Command command, AndroidManagedContainerConfiguration configuration,
+        EmulatorCoreAllocator.Cores cores) {
+        String affinity = cores != null ? cores.toString() : configuration.getEmulatorCpuAffinity();
+        if ("auto".equals(affinity)) {
+            affinity = null;
+        }
+        if (affinity == null && configuration.getEmulatorNice() == null) {
+            return command;
+        }
+        if (!isLinux()) {
+            logger.log(Level.WARNING, "CPU affinity and nice level of emulators are supported on Linux only, they are "
+                + "ignored on {0}", System.getProperty("os.name"));
+            return command;
+        }
+
+        Command scheduled = new Command();
+        if (configuration.getEmulatorNice() != null) {
+            scheduled.add("nice").add("-n").add(String.valueOf(configuration.getEmulatorNice()));
+        }
+        if (affinity != null) {
+            scheduled.add("taskset").add("-c").add(affinity);
+        }
+        scheduled.add(command.getAsList());
+        return scheduled;
+    }
+
+    private static boolean isLinux() {
+        return System.getProperty("os.name", "").toLowerCase().contains("linux");
+    }
+
+    private EmulatorOptions getEmulatorOptions(AndroidManagedContainerConfiguration configuration)
+        throws AndroidExecutionException {
+        EmulatorOptions options = EmulatorOptions.parse(configuration.getEmulatorOptions());
+        if (configuration.getEmulatorProfile() == null) {
+            return options;
+        }
+        try {
+            return EmulatorProfile.of(configuration.getEmulatorProfile()).getOptions().merge(options);
+        } catch (AndroidContainerConfigurationException e) {
+            throw new AndroidExecutionException(e, "Unable to use emulator profile {0} with options {1}",
+                configuration.getEmulatorProfile(), configuration.getEmulatorOptions());
+        }
+    }
+
+    private File getEmulatorOutputLog(AndroidManagedContainerConfiguration configuration) {
+        if (configuration.getEmulatorOutputLog() != null) {
+            return new File(configuration.getEmulatorOutputLog());
+        }
+        return new File(System.getProperty("java.io.tmpdir"), configuration.getAvdName() + "-emulator.log");
+    }
+
+    private ProcessOutputTail createEmulatorOutput(AndroidManagedContainerConfiguration configuration)
+        throws AndroidExecutionException {
+
+        if (configuration.getEmulatorOutputLog() == null) {
+            return new ProcessOutputTail(configuration.getEmulatorOutputTailLines(),
+                configuration.getEmulatorOutputTailSize());
+        }
+
+        try {
+            return new ProcessOutputTail(configuration.getEmulatorOutputTailLines(),
+                configuration.getEmulatorOutputTailSize(), new File(configuration.getEmulatorOutputLog()),
+                configuration.getEmulatorOutputLogSize());
+        } catch (IOException e) {
+            throw new AndroidExecutionException(e, "Unable to open emulator output log {0}",
+                configuration.getEmulatorOutputLog());
+        }
+    }
+
+    private EmulatorSnapshot createSnapshot(AndroidManagedContainerConfiguration configuration) {
+        if (configuration.getEmulatorSnapshot() == null) {
+            return null;
+        }
+
+        AndroidSDK sdk = this.androidSDK.get();
+        EmulatorSnapshot snapshot = new EmulatorSnapshot(configuration.getEmulatorSnapshot(),
+            sdk.getAvdDirectory(configuration.getAvdName()), new File(configuration.getHome()), new File(
+                sdk.getEmulatorPath()));
+        logger.log(Level.INFO, snapshot.isUsable() ? "Emulator {0} will be booted from snapshot {1}"
+            : "Emulator {0} will be cold booted in order to save snapshot {1}", new Object[] { configuration.getAvdName(),
+            snapshot.getName() });
+        return snapshot;
+    }
+
+    private void saveSnapshot(String serialNumber, EmulatorSnapshot snapshot) {
+        try {
+            EmulatorConsole.forSerialNumber(serialNumber).execute("avd snapshot save " + snapshot.getName(),
+                configuration.get().getEmulatorBootupTimeoutInSeconds(), TimeUnit.SECONDS);
+            snapshot.saved();
+        } catch (AndroidExecutionException e) {
+            logger.log(Level.WARNING, "Unable to save snapshot {0} of emulator {1}: {2}", new Object[] {
+                snapshot.getName(), serialNumber, e.getMessage() });
+        }
+    }
+
+    private AndroidEmulator startEmulator(ProcessExecutor executor, EmulatorSnapshot snapshot, int consolePort,
+        EmulatorPortAllocator.EmulatorPorts ports, EmulatorCoreAllocator.Cores cores) throws AndroidExecutionException {
 
         AndroidSDK sdk = this.androidSDK.get();
         AndroidManagedContainerConfiguration configuration = this.configuration.get();
@@ -149,18 +417,51 @@ public class AndroidEmulatorStartup {
             command.add(configuration.getSdCard());
         }
 
-        if (configuration.getConsolePort() != null && configuration.getAdbPort() != null) {
-            command.add("-ports").addAsString(configuration.getConsolePort() + "," + configuration.getAdbPort());
-        } else if (configuration.getConsolePort() != null) {
-            command.add("-port").add(configuration.getConsolePort());
+        if (ports != null) {
+            command.add("-ports").addAsString(ports.toString());
+        } else if (configuration.getAdbPort() != null) {
+            command.add("-ports").addAsString(consolePort + "," + configuration.getAdbPort());
+        } else {
+            command.add("-port").addAsString(String.valueOf(consolePort));
         }
 
-        command.addAsString(configuration.getEmulatorOptions());
+        if (snapshot != null) {
+            command.add(snapshot.getEmulatorOptions());
+        }
+
+        command.add(getEmulatorOptions(configuration).getAsList());
+        command = schedule(command, configuration, cores);
 
         logger.log(Level.INFO, "emulator command -> {0}", command);
         // execute emulator
         try {
-            return executor.spawn(command.getAsList());
+            // an emulator writing to a pipe of the JVM would not survive the end of the JVM, so a pooled one never does
+            if (configuration.isEmulatorOutputRedirect() || configuration.isEmulatorPool()) {
+                File log = getEmulatorOutputLog(configuration);
+                ProcessOutputTail output = new ProcessOutputTail(configuration.getEmulatorOutputTailLines(),
+                    configuration.getEmulatorOutputTailSize());
+                ProcessLogScanner scanner = new ProcessLogScanner(sdk.getEmulatorPath(), log);
+                EmulatorCrashWatchdog watchdog = new EmulatorCrashWatchdog(configuration.getAvdName(), output);
+
+                Process process = executor.spawn(log, command.getAsList());
+                logger.log(Level.INFO, "Output of the emulator is redirected to {0}", log);
+                watchdog.watch(scanner);
+                watchdog.watch(executor, process);
+
+                AndroidEmulator emulator = new AndroidEmulator(process, output, scanner);
+                emulator.setWatchdog(watchdog);
+                return emulator;
+            }
+
+            ProcessOutputTail output = createEmulatorOutput(configuration);
+            // output is checked for fatal errors before it gets to the tail
+            EmulatorCrashWatchdog watchdog = new EmulatorCrashWatchdog(configuration.getAvdName(), output);
+            Process process = executor.spawn(watchdog, command.getAsList());
+            watchdog.watch(executor, process);
+
+            AndroidEmulator emulator = new AndroidEmulator(process, output);
+            emulator.setWatchdog(watchdog);
+            return emulator;
         } catch (InterruptedException e) {
             throw new AndroidExecutionException(e, "Unable to start emulator for {0} with options {1}",
                 configuration.getAvdName(),
@@ -173,32 +474,32 @@ public class AndroidEmulatorStartup {
 
     }
 
-    private void unlockEmulator(final DeviceConnectDiscovery deviceDiscovery, final ProcessExecutor executor) {
+    private void unlockEmulator(final String serialNumber, final ProcessExecutor executor) {
 
         final String adbPath = androidSDK.get().getAdbPath();
-        final AndroidDevice connectedDevice = deviceDiscovery.getDiscoveredDevice();
-        final String serialNumber = connectedDevice.getSerialNumber();
         try {
-            executor.execute(Collections.<String, String> emptyMap(), adbPath,
-                "-s", serialNumber, "shell", "input", "keyevent", "82");
-            executor.execute(Collections.<String, String> emptyMap(), adbPath,
-                "-s", serialNumber, "shell", "input", "keyevent", "4");
+            // menu key unlocks the screen, back key closes whatever was opened by it
+            executor.executeAsync(adbPath, "-s", serialNumber, "shell", "input", "keyevent", "82")
+                .thenCompose(new ProcessFuture.Step<List<String>, ProcessFuture<List<String>>>() {
+                    @Override
+                    public ProcessFuture<List<String>> apply(List<String> result) {
+                        return executor.executeAsync(adbPath, "-s", serialNumber, "shell", "input", "keyevent", "4");
+                    }
+                }).get();
         } catch (final Exception ignore) {
             // intentionally left empty
         }
     }
 
-    private void waitUntilBootUpIsComplete(final DeviceConnectDiscovery deviceDiscovery, final ProcessExecutor executor,
-        final CountDownWatch countdown)
-        throws AndroidExecutionException {
+    private IDevice waitUntilBootUpIsComplete(final ProcessFuture<IDevice> connected, final ProcessFuture<IDevice> online,
+        final ProcessExecutor executor, final EmulatorCrashWatchdog watchdog, final CountDownWatch countdown,
+        final LifecycleTimeline timeline, final long spawned) throws AndroidExecutionException {
 
         try {
-            boolean isOnline = executor.scheduleUntilTrue(new Callable<Boolean>() {
-                @Override
-                public Boolean call() throws Exception {
-                    return deviceDiscovery.isOnline();
-                }
-            }, countdown.timeLeft(), countdown.getTimeUnit().convert(1, TimeUnit.SECONDS), countdown.getTimeUnit());
+            // the hub completes the futures as soon as the device is connected to ADB and brought online
+            boolean isOnline = awaitDevice(connected, watchdog, countdown);
+            long attached = isOnline ? timeline.record(AndroidLifecycleTimings.ADB_ATTACH, spawned) : 0L;
+            isOnline = isOnline && awaitDevice(online, watchdog, countdown);
 
             if (isOnline == false) {
                 throw new IllegalStateException(
@@ -206,32 +507,17 @@ public class AndroidEmulatorStartup {
                         + countdown.timeout()
                         + " seconds to Android Debug Bridge. Please increase the time limit in order to get emulator connected.");
             }
+            long broughtOnline = timeline.record(AndroidLifecycleTimings.ONLINE, attached);
 
             // device is connected to ADB
-            final AndroidDevice connectedDevice = deviceDiscovery.getDiscoveredDevice();
+            final IDevice connectedDevice = online.get();
 
             logger.log(Level.INFO, "Serial number: " + connectedDevice.getSerialNumber());
 
-            final String adbPath = androidSDK.get().getAdbPath();
-            logger.log(Level.INFO, "adbPath: " + adbPath);
-            final String serialNumber = connectedDevice.getSerialNumber();
-            logger.log(Level.INFO, "serial number: " + serialNumber);
-
-            isOnline = executor.scheduleUntilTrue(new Callable<Boolean>() {
-                @Override
-                public Boolean call() throws Exception {
-                    // check properties of underlying process
-                    List<String> props = executor.execute(Collections.<String, String> emptyMap(), adbPath,
-                        "-s", serialNumber, "shell", "getprop");
-                    for (String line : props) {
-                        if (line.contains("[ro.runtime.firstboot]")) {
-                            // boot is completed
-                            return true;
-                        }
-                    }
-                    return false;
-                }
-            }, countdown.timeLeft(), countdown.getTimeUnit().convert(1, TimeUnit.SECONDS), countdown.getTimeUnit());
+            // a single shell session on the device reports the completion as soon as the boot properties are set
+            BootCompletionDetector bootCompletion = new BootCompletionDetector(connectedDevice, executor);
+            watchdog.guard(bootCompletion.getCondition());
+            isOnline = bootCompletion.await(countdown.timeLeft(), countdown.getTimeUnit());
 
             if (logger.isLoggable(Level.INFO)) {
                 logger.log(Level.INFO, "Android emulator {0} was started within {1} seconds", new Object[] {
@@ -242,46 +528,25 @@ public class AndroidEmulatorStartup {
                 throw new AndroidExecutionException("Emulator device hasn't started properly in " + countdown.timeout()
                     + " seconds. Please increase the time limit in order to get emulator booted.");
             }
+            timeline.record(AndroidLifecycleTimings.BOOT_COMPLETE, broughtOnline);
+            return connectedDevice;
         } catch (InterruptedException e) {
             throw new AndroidExecutionException(e, "Emulator device startup failed.");
         } catch (ExecutionException e) {
+            if (e.getCause() instanceof AndroidExecutionException) {
+                // the emulator crashed, the failure describes why
+                throw (AndroidExecutionException) e.getCause();
+            }
             logger.log(Level.INFO, e.getCause().toString());
             throw new AndroidExecutionException(e, "Emulator device startup failed.");
         }
     }
 
-    private class DeviceConnectDiscovery implements IDeviceChangeListener {
-
-        private IDevice discoveredDevice;
-
-        private boolean online;
-
-        @Override
-        public void deviceChanged(IDevice device, int changeMask) {
-            if (discoveredDevice.equals(device) && (changeMask & IDevice.CHANGE_STATE) == 1) {
-                if (device.isOnline()) {
-                    this.online = true;
-                }
-            }
-        }
-
-        @Override
-        public void deviceConnected(IDevice device) {
-            this.discoveredDevice = device;
-            logger.log(Level.FINE, "Discovered an emulator device id={0} connected to ADB bus",
-                device.getSerialNumber());
-        }
-
-        @Override
-        public void deviceDisconnected(IDevice device) {
-        }
-
-        public AndroidDevice getDiscoveredDevice() {
-            return new AndroidDeviceImpl(discoveredDevice);
-        }
-
-        public boolean isOnline() {
-            return online;
-        }
+    private boolean awaitDevice(ProcessFuture<IDevice> device, EmulatorCrashWatchdog watchdog, CountDownWatch countdown)
+        throws InterruptedException, ExecutionException {
+        SignalledCondition condition = SignalledCondition.completionOf(device);
+        // a crash of the emulator aborts the waiting right away
+        watchdog.guard(condition);
+        return condition.await(countdown.timeLeft(), countdown.getTimeUnit());
     }
 }
@@ -18,11 +18,10 @@
 package org.jboss.arquillian.container.android.managed.impl;
 
 import java.io.File;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.jboss.arquillian.android.spi.event.AndroidLifecycleTimings;
 import org.jboss.arquillian.android.spi.event.AndroidSDCardCreate;
 import org.jboss.arquillian.android.spi.event.AndroidSDCardCreated;
 import org.jboss.arquillian.android.spi.event.AndroidSDCardDelete;
@@ -74,6 +73,9 @@ public class AndroidSDCardManagerImpl implements AndroidSDCardManager {
     @Inject
     private Instance<ProcessExecutor> executor;
 
+    @Inject
+    private Instance<LifecycleTimeline> lifecycleTimeline;
+
     @Inject
     private Event<AndroidSDCardCreated> androidSDCardCreated;
 
@@ -88,6 +90,7 @@ public class AndroidSDCardManagerImpl implements AndroidSDCardManager {
     public void createSDCard(@Observes AndroidSDCardCreate event) throws AndroidExecutionException {
 
         AndroidManagedContainerConfiguration configuration = this.configuration.get();
+        long started = System.nanoTime();
 
         AndroidSDCard sdCard = new AndroidSDCard();
         sdCard.setFileName(configuration.getSdCard());
@@ -111,6 +114,7 @@ public class AndroidSDCardManagerImpl implements AndroidSDCardManager {
                 sdCard.setFileName(sdCardName);
                 configuration.setSdCard(sdCardName);
                 createSDCard(sdCard);
+                recordCreation(started);
                 androidSDCardCreated.fire(new AndroidSDCardCreated());
             } else {
                 if (new File(sdCard.getFileName()).exists()) {
@@ -118,6 +122,7 @@ public class AndroidSDCardManagerImpl implements AndroidSDCardManager {
                     sdCard.setGenerated(false);
                 } else {
                     createSDCard(sdCard);
+                    recordCreation(started);
                     androidSDCardCreated.fire(new AndroidSDCardCreated());
                 }
             }
@@ -157,7 +162,7 @@ public class AndroidSDCardManagerImpl implements AndroidSDCardManager {
         AndroidSDCard androidSDCard = (AndroidSDCard) sdCard;
 
         ProcessExecutor executor = this.executor.get();
-        Process sdCardProcess = constructCreateSdCardProcess(executor, sdCard);
+        ProcessFuture<Process> sdCardProcess = constructCreateSdCardProcess(executor, sdCard);
         if (createSDCard(sdCardProcess, executor) == 0) {
             logger.log(Level.INFO, "Android SD card labelled {0} located at {1} with size of {2} was created.",
                 new Object[] { androidSDCard.getLabel(), androidSDCard.getFileName(), androidSDCard.getSize() });
@@ -184,23 +189,22 @@ public class AndroidSDCardManagerImpl implements AndroidSDCardManager {
         }
     }
 
-    private int createSDCard(final Process sdCardProcess, final ProcessExecutor executor) throws AndroidExecutionException {
-        try {
-            int created = executor.submit(new Callable<Integer>() {
-
-                @Override
-                public Integer call() throws Exception {
-                    return sdCardProcess.waitFor();
-                }
-            }).get();
+    private void recordCreation(long started) {
+        if (lifecycleTimeline.get() != null) {
+            lifecycleTimeline.get().record(AndroidLifecycleTimings.SD_CARD_CREATION, started);
+        }
+    }
 
-            return created;
+    private int createSDCard(ProcessFuture<Process> sdCardProcess, ProcessExecutor executor)
+        throws AndroidExecutionException {
+        try {
+            return executor.onExit(sdCardProcess).get();
         } catch (Exception ex) {
             throw new AndroidExecutionException(ex);
         }
     }
 
-    private Process constructCreateSdCardProcess(ProcessExecutor executor, SDCard sdCard) throws AndroidExecutionException {
+    private ProcessFuture<Process> constructCreateSdCardProcess(ProcessExecutor executor, SDCard sdCard) {
 
         AndroidSDCard androidSDCard = (AndroidSDCard) sdCard;
 
@@ -211,12 +215,6 @@ public class AndroidSDCardManagerImpl implements AndroidSDCardManager {
             .add(androidSDCard.getSize())
             .add(androidSDCard.getFileName());
 
-        try {
-            return executor.spawn(command.getAsList());
-        } catch (InterruptedException e) {
-            throw new AndroidExecutionException();
-        } catch (ExecutionException e) {
-            throw new AndroidExecutionException();
-        }
+        return executor.spawnAsync(command.getAsList().toArray(new String[0]));
     }
 }
@@ -22,11 +22,11 @@
 package org.jboss.arquillian.container.android.managed.impl;
 
 import java.io.File;
-import java.util.HashMap;
-import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
+import org.jboss.arquillian.android.spi.event.AndroidLifecycleTimings;
 import org.jboss.arquillian.android.spi.event.AndroidSDCardCreate;
 import org.jboss.arquillian.android.spi.event.AndroidSDCardDelete;
 import org.jboss.arquillian.android.spi.event.AndroidVirtualDeviceAvailable;
@@ -76,6 +76,9 @@ public class AndroidVirtualDeviceManager {
     @Inject
     private Instance<ProcessExecutor> executor;
 
+    @Inject
+    private Instance<LifecycleTimeline> lifecycleTimeline;
+
     @Inject
     private Event<AndroidVirtualDeviceAvailable> androidVirtualDeviceAvailable;
 
@@ -92,10 +95,17 @@ public class AndroidVirtualDeviceManager {
 
         AndroidManagedContainerConfiguration configuration = this.configuration.get();
 
+        ProcessExecutor executor = this.executor.get();
+        ProcessFuture<Integer> deleted = executor.onExit(constructDeleteProcess(executor, androidSDK.get(),
+            configuration.getAvdName()));
+
+        // SD card does not depend on the AVD, it is deleted while the AVD is being deleted
+        androidSDCardDelete.fire(new AndroidSDCardDelete());
+
         try {
-            ProcessExecutor executor = this.executor.get();
-            Process android = constructDeleteProcess(executor, androidSDK.get(), configuration.getAvdName());
-            if (deleteAVD(android, executor) == 0) {
+            int exitCode = deleteAVD(deleted);
+            executor.invalidateCachedResults();
+            if (exitCode == 0) {
                 logger.info("Android Virtual Device " + configuration.getAvdName() + " deleted.");
             } else {
                 logger.info("Unable to delete Android Virtual Device " + configuration.getAvdName() + ".");
@@ -104,11 +114,9 @@ public class AndroidVirtualDeviceManager {
             logger.info("Unable to delete AVD - " + ex.getMessage());
         }
 
-        androidSDCardDelete.fire(new AndroidSDCardDelete());
         androidVirtualDeviceDeleted.fire(new AndroidVirtualDeviceDeleted(configuration.getAvdName()));
     }
 
-    @SuppressWarnings("serial")
     public void createAndroidVirtualDevice(@Observes AndroidVirtualDeviceCreate event) throws AndroidExecutionException {
         Validate.notNulls(new Object[] { configuration.get(), androidSDK.get() },
             "container configuration injection or Android SDK injection is null");
@@ -120,6 +128,7 @@ public class AndroidVirtualDeviceManager {
         Validate.notNullOrEmpty(configuration.getSdSize(), "Memory SD card size must be defined");
 
         ProcessExecutor executor = this.executor.get();
+        long started = System.nanoTime();
 
         try {
             Command command = new Command();
@@ -137,12 +146,17 @@ public class AndroidVirtualDeviceManager {
 
             logger.info("Creating new avd " + command);
             String[] argsArrays = new String[command.size()];
-            executor.execute(new HashMap<String, String>() {
-                {
-                    put("Do you wish to create a custom hardware profile [no]", "no" + System.getProperty("line.separator"));
-                }
-            }, command.getAsList().toArray(argsArrays));
+            try {
+                executor.execute(createAvdScript(configuration.getEmulatorBootupTimeoutInSeconds(), TimeUnit.SECONDS),
+                    command.getAsList().toArray(argsArrays));
+            } finally {
+                executor.invalidateCachedResults();
+            }
 
+            // the emulator is started by the event, it is not a part of the creation
+            if (lifecycleTimeline.get() != null) {
+                lifecycleTimeline.get().record(AndroidLifecycleTimings.AVD_CREATION, started);
+            }
             androidVirtualDeviceAvailable.fire(new AndroidVirtualDeviceAvailable(configuration.getAvdName()));
         } catch (InterruptedException e) {
             throw new AndroidExecutionException("Unable to create a new AVD Device", e);
@@ -151,32 +165,38 @@ public class AndroidVirtualDeviceManager {
         }
     }
 
-    private Process constructDeleteProcess(ProcessExecutor executor, AndroidSDK androidSDK, String avdName)
-        throws AndroidExecutionException {
+    /**
+     * Creates script of the creation of an AVD. android tool asks about the hardware profile only for some system images
+     * and it fails right away on an invalid target. A prompt which is not recognized, e.g. because its wording changed,
+     * would block the tool forever, so the whole creation is bounded by the timeout.
+     *
+     * @param timeout time the creation may take
+     * @param unit unit of the timeout
+     * @return the script
+     */
+    static ProcessScript createAvdScript(long timeout, TimeUnit unit) {
+        long total = unit.toNanos(timeout);
+        // the prompt comes right after the start or not at all, the rest of the timeout is left for the creation itself
+        long prompt = Math.min(total / 2, TimeUnit.MILLISECONDS.toNanos(ProcessScript.DEFAULT_STEP_TIMEOUT));
+        return new ProcessScript()
+            .failOn("^Error: ")
+            .expectOptionally("(?i)Do you wish to create a custom hardware profile\\s*\\[no\\]",
+                "no" + System.getProperty("line.separator"))
+            .within(prompt, TimeUnit.NANOSECONDS)
+            .completionTimeout(total - prompt, TimeUnit.NANOSECONDS);
+    }
+
+    private ProcessFuture<Process> constructDeleteProcess(ProcessExecutor executor, AndroidSDK androidSDK, String avdName) {
 
         Command command = new Command();
         command.add(androidSDK.getAndroidPath()).add("delete").add("avd").add("-n").add(avdName);
 
-        try {
-            return executor.spawn(command.getAsList());
-        } catch (InterruptedException e) {
-            throw new AndroidExecutionException(e, "Unable to delete AVD {0}.", avdName);
-        } catch (ExecutionException e) {
-            throw new AndroidExecutionException(e, "Unable to delete AVD {0}.", avdName);
-        }
+        return executor.spawnAsync(command.getAsList().toArray(new String[0]));
     }
 
-    private int deleteAVD(final Process android, final ProcessExecutor executor) throws AndroidExecutionException {
+    private int deleteAVD(ProcessFuture<Integer> deleted) throws AndroidExecutionException {
         try {
-            int deleted = executor.submit(new Callable<Integer>() {
-
-                @Override
-                public Integer call() throws Exception {
-                    return android.waitFor();
-                }
-            }).get();
-
-            return deleted;
+            return deleted.get();
         } catch (Exception ex) {
             throw new AndroidExecutionException(ex);
         }
@@ -0,0 +1,197 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.android.managed.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.android.ddmlib.IDevice;
+import com.android.ddmlib.MultiLineReceiver;
+
+/**
+ * Detects that a device finished booting.
+ *
+ * A single shell session runs a loop on the device which watches boot related properties and prints them whenever they
+ * change, so the completion is reported as soon as {@code sys.boot_completed} or {@code dev.bootcomplete} is set, without
+ * spawning any process on the host. System images older than API level {@value #BOOT_COMPLETED_API_LEVEL} set neither
+ * of them, {@code ro.runtime.firstboot} is watched instead there. Changes of the properties are reported as boot progress
+ * milestones. If the session ends before the boot is completed, e.g. because the device went offline for a moment, a new
+ * one is started.
+ */
+public class BootCompletionDetector {
+
+    private static final Logger logger = Logger.getLogger(BootCompletionDetector.class.getName());
+
+    static final String COMPLETED = "BOOT_COMPLETED";
+
+    /**
+     * API level of the first system images which set {@code sys.boot_completed} and {@code dev.bootcomplete}.
+     */
+    static final int BOOT_COMPLETED_API_LEVEL = 9;
+
+    // ro.runtime.firstboot is set long before the boot is completed, it is checked only on older system images which do
+    // not set any other property
+    static final String WATCH_SCRIPT = "v=$(getprop ro.build.version.sdk); o=; "
+        + "if [ -n \"$v\" ] && [ \"$v\" -lt " + BOOT_COMPLETED_API_LEVEL + " ]; then o=1; fi; p=; while :; do "
+        + "a=$(getprop init.svc.bootanim); b=$(getprop sys.boot_completed); d=$(getprop dev.bootcomplete); "
+        + "f=; if [ -n \"$o\" ]; then f=$(getprop ro.runtime.firstboot); fi; "
+        + "s=\"bootanim=$a sys.boot_completed=$b dev.bootcomplete=$d\"; "
+        + "if [ \"$s\" != \"$p\" ]; then echo \"$s\"; p=$s; fi; "
+        + "if [ \"$b\" = 1 -o \"$d\" = 1 -o -n \"$f\" ]; then echo " + COMPLETED + "; break; fi; "
+        + "sleep 0.1 2>/dev/null || sleep 1; done";
+
+    // a session is restarted after it ended, there is no reason to check more often
+    private static final long MIN_RESTART_DELAY = 100L;
+
+    private final IDevice device;
+    private final ProcessExecutor executor;
+    private final long started = System.nanoTime();
+
+    private final List<String> milestones = new ArrayList<String>();
+    private volatile boolean completed;
+    private volatile boolean cancelled;
+
+    private final SignalledCondition condition;
+    private ProcessFuture<Void> session;
+
+    /**
+     *
+     * @param device the booting device
+     * @param executor executor the shell session is run by
+     */
+    public BootCompletionDetector(IDevice device, ProcessExecutor executor) {
+        this.device = device;
+        this.executor = executor;
+        this.condition = new SignalledCondition(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                if (completed) {
+                    return true;
+                }
+                if (session.isDone()) {
+                    logSessionEnd();
+                    startSession();
+                }
+                return false;
+            }
+        }, MIN_RESTART_DELAY, SignalledCondition.DEFAULT_MAX_DELAY);
+    }
+
+    /**
+     * Waits until the device finishes booting.
+     *
+     * @param timeout timeout
+     * @param unit unit of the timeout
+     * @return {@code true} if the device booted, {@code false} if the timeout elapsed
+     * @throws InterruptedException if the waiting thread was interrupted
+     * @throws ExecutionException if the boot could not be watched
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException {
+        startSession();
+        try {
+            return condition.await(timeout, unit);
+        } finally {
+            // ddmlib checks the flag while it waits for the output and closes the session
+            cancelled = true;
+        }
+    }
+
+    /**
+     * Returns condition which holds when the boot is completed. Aborting it, e.g. because the emulator crashed, fails
+     * {@link #await(long, TimeUnit)} right away.
+     *
+     * @return the condition
+     */
+    public SignalledCondition getCondition() {
+        return condition;
+    }
+
+    /**
+     * Returns boot progress milestones reported so far.
+     *
+     * @return milestones with milliseconds elapsed since the detector was created
+     */
+    public List<String> getMilestones() {
+        synchronized (milestones) {
+            return Collections.unmodifiableList(new ArrayList<String>(milestones));
+        }
+    }
+
+    private void startSession() {
+        session = executor.start(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                device.executeShellCommand(WATCH_SCRIPT, new BootProgressReceiver(), 0);
+                return null;
+            }
+        });
+        session.addListener(new Runnable() {
+            @Override
+            public void run() {
+                condition.signal();
+            }
+        });
+    }
+
+    private void logSessionEnd() {
+        try {
+            session.get();
+            logger.log(Level.FINE, "Boot watching session of {0} ended before the boot was completed",
+                device.getSerialNumber());
+        } catch (Exception e) {
+            logger.log(Level.FINE, "Boot watching session of " + device.getSerialNumber() + " failed", e);
+        }
+    }
+
+    private void milestone(String line) {
+        String milestone = line + " after " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) + " ms";
+        synchronized (milestones) {
+            milestones.add(milestone);
+        }
+        logger.log(Level.INFO, "Boot progress of {0}: {1}", new Object[] { device.getSerialNumber(), milestone });
+    }
+
+    private class BootProgressReceiver extends MultiLineReceiver {
+
+        @Override
+        public void processNewLines(String[] lines) {
+            for (String line : lines) {
+                String trimmed = line.trim();
+                if (trimmed.length() == 0) {
+                    continue;
+                }
+                if (COMPLETED.equals(trimmed)) {
+                    completed = true;
+                } else {
+                    milestone(trimmed);
+                }
+            }
+            condition.signal();
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled || completed;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.android.managed.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.android.ddmlib.AndroidDebugBridge;
+import com.android.ddmlib.AndroidDebugBridge.IDeviceChangeListener;
+import com.android.ddmlib.IDevice;
+
+/**
+ * Tracks states of all devices connected to the Android Debug Bridge, so several containers can wait for their devices at
+ * the same time.
+ *
+ * A single hub is registered to the bridge per JVM. It keeps a state of every device by its serial number and completes
+ * futures of containers waiting for a device to get to a state. Emulators are identified by their console port, an emulator
+ * listening on console port 5554 has serial number emulator-5554.
+ */
+public class DeviceDiscoveryHub implements IDeviceChangeListener {
+
+    private static final Logger logger = Logger.getLogger(DeviceDiscoveryHub.class.getName());
+
+    private static final String EMULATOR_SERIAL_PREFIX = "emulator-";
+
+    /**
+     * State of a device.
+     */
+    public enum DeviceState {
+        /**
+         * Device is connected to the bridge, but it can not be used yet, e.g. an emulator which is booting.
+         */
+        CONNECTED,
+        /**
+         * Device is online.
+         */
+        ONLINE,
+        /**
+         * Device went offline after it was online.
+         */
+        OFFLINE,
+        /**
+         * Device was disconnected from the bridge or it was never connected.
+         */
+        DISCONNECTED
+    }
+
+    private static DeviceDiscoveryHub instance;
+
+    // listeners of futures are run by the thread which completes them, they only signal waiting threads
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private final Map<String, IDevice> devices = new HashMap<String, IDevice>();
+    private final Map<String, DeviceState> states = new HashMap<String, DeviceState>();
+    private final List<Waiter> waiters = new ArrayList<Waiter>();
+
+    DeviceDiscoveryHub() {
+    }
+
+    /**
+     * Returns the hub of this JVM, it is registered to the bridge when it is used for the first time.
+     *
+     * @return the hub
+     */
+    public static synchronized DeviceDiscoveryHub getInstance() {
+        if (instance == null) {
+            instance = new DeviceDiscoveryHub();
+            AndroidDebugBridge.addDeviceChangeListener(instance);
+            // devices which connected before the hub was registered
+            AndroidDebugBridge bridge = AndroidDebugBridge.getBridge();
+            if (bridge != null) {
+                for (IDevice device : bridge.getDevices()) {
+                    instance.deviceConnected(device);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Returns serial number of an emulator.
+     *
+     * @param consolePort console port of the emulator
+     * @return serial number
+     */
+    public static String emulatorSerialNumber(int consolePort) {
+        return EMULATOR_SERIAL_PREFIX + consolePort;
+    }
+
+    /**
+     * Waits until the emulator listening on the console port is online.
+     *
+     * @param consolePort console port of the emulator
+     * @return future of the device, it should be cancelled when it is not awaited anymore
+     */
+    public ProcessFuture<IDevice> awaitOnline(int consolePort) {
+        return await(emulatorSerialNumber(consolePort), DeviceState.ONLINE);
+    }
+
+    /**
+     * Waits until the emulator listening on the console port connects to the bridge, in any state.
+     *
+     * @param consolePort console port of the emulator
+     * @return future of the device, it should be cancelled when it is not awaited anymore
+     */
+    public synchronized ProcessFuture<IDevice> awaitConnected(int consolePort) {
+        String serialNumber = emulatorSerialNumber(consolePort);
+        ProcessFuture<IDevice> future = new ProcessFuture<IDevice>(DIRECT);
+        if (getState(serialNumber) != DeviceState.DISCONNECTED) {
+            future.complete(devices.get(serialNumber));
+        } else {
+            // any state but disconnected
+            waiters.add(new Waiter(serialNumber, null, future));
+        }
+        return future;
+    }
+
+    /**
+     * Waits until a device is in a state.
+     *
+     * @param serialNumber serial number of the device
+     * @param state the state
+     * @return future of the device, it should be cancelled when it is not awaited anymore
+     */
+    public synchronized ProcessFuture<IDevice> await(String serialNumber, DeviceState state) {
+        ProcessFuture<IDevice> future = new ProcessFuture<IDevice>(DIRECT);
+        if (getState(serialNumber) == state) {
+            future.complete(devices.get(serialNumber));
+        } else {
+            waiters.add(new Waiter(serialNumber, state, future));
+        }
+        return future;
+    }
+
+    /**
+     * Returns state of a device.
+     *
+     * @param serialNumber serial number of the device
+     * @return state of the device, {@link DeviceState#DISCONNECTED} if the device was never connected
+     */
+    public synchronized DeviceState getState(String serialNumber) {
+        DeviceState state = states.get(serialNumber);
+        return state == null ? DeviceState.DISCONNECTED : state;
+    }
+
+    /**
+     * Returns a connected device.
+     *
+     * @param serialNumber serial number of the device
+     * @return the device or {@code null} if it is not connected
+     */
+    public synchronized IDevice getDevice(String serialNumber) {
+        return devices.get(serialNumber);
+    }
+
+    @Override
+    public void deviceConnected(IDevice device) {
+        transition(device, device.isOnline() ? DeviceState.ONLINE : DeviceState.CONNECTED);
+    }
+
+    @Override
+    public void deviceChanged(IDevice device, int changeMask) {
+        if ((changeMask & IDevice.CHANGE_STATE) != 0) {
+            transition(device, device.isOnline() ? DeviceState.ONLINE : DeviceState.OFFLINE);
+        }
+    }
+
+    @Override
+    public void deviceDisconnected(IDevice device) {
+        transition(device, DeviceState.DISCONNECTED);
+    }
+
+    private void transition(IDevice device, DeviceState next) {
+        String serialNumber = device.getSerialNumber();
+        List<Waiter> satisfied = new ArrayList<Waiter>();
+        synchronized (this) {
+            DeviceState previous = getState(serialNumber);
+            if (next == DeviceState.DISCONNECTED) {
+                devices.remove(serialNumber);
+                states.remove(serialNumber);
+            } else {
+                devices.put(serialNumber, device);
+                states.put(serialNumber, next);
+            }
+            if (previous != next) {
+                logger.log(Level.FINE, "Device {0} changed its state from {1} to {2}", new Object[] { serialNumber,
+                    previous, next });
+            }
+
+            for (Iterator<Waiter> iterator = waiters.iterator(); iterator.hasNext();) {
+                Waiter waiter = iterator.next();
+                if (waiter.future.isDone()) {
+                    // the waiting container gave up
+                    iterator.remove();
+                } else if (waiter.serialNumber.equals(serialNumber) && waiter.isSatisfiedBy(next)) {
+                    iterator.remove();
+                    satisfied.add(waiter);
+                }
+            }
+        }
+        // futures are completed outside of the lock, their listeners might call the hub
+        for (Waiter waiter : satisfied) {
+            waiter.future.complete(device);
+        }
+    }
+
+    private static class Waiter {
+
+        private final String serialNumber;
+        private final DeviceState state;
+        private final ProcessFuture<IDevice> future;
+
+        Waiter(String serialNumber, DeviceState state, ProcessFuture<IDevice> future) {
+            this.serialNumber = serialNumber;
+            this.state = state;
+            this.future = future;
+        }
+
+        boolean isSatisfiedBy(DeviceState next) {
+            return state == null ? next != DeviceState.DISCONNECTED : state == next;
+        }
+    }
+}
@@ -0,0 +1,373 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.android.managed.impl;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Admits emulators to be started only when the host has enough memory and processors for them, so emulators started by
+ * several containers at once do not slow each other down until their boots time out.
+ *
+ * Every admitted emulator holds a ticket, a locked file in a directory shared by all the JVMs of the host, with memory and
+ * processors the emulator needs. An emulator is admitted if memory and processors of all the tickets including its own do
+ * not exceed capacity of the host, and if the host has enough free memory right now. An emulator is always admitted if there
+ * are no other tickets, so an emulator bigger than the host is not queued forever. Tickets of JVMs which exited are not
+ * locked anymore and they are ignored.
+ */
+public class EmulatorAdmission {
+
+    private static final Logger logger = Logger.getLogger(EmulatorAdmission.class.getName());
+
+    static final String TICKET_SUFFIX = ".ticket";
+
+    private static final String LOCK_FILE = "admission.lock";
+
+    // memory left to the host and to the JVMs of the containers
+    private static final long HOST_RESERVE_MEGABYTES = 1024L;
+
+    // memory of the emulator process on top of the memory of the device
+    private static final long EMULATOR_OVERHEAD_MEGABYTES = 256L;
+
+    private static final long DEFAULT_RAM_MEGABYTES = 512L;
+
+    private static final long POLL_MILLIS = 1000L;
+
+    private static final Pattern MEMINFO_LINE = Pattern.compile("^(\\w+):\\s+(\\d+)\\s*kB");
+
+    private static final Pattern RAM_SIZE = Pattern.compile("(?i)^(\\d+)\\s*([mg]b?)?$");
+
+    // a file locked by this JVM must not be opened again, closing it would release the lock on some systems
+    private static final Map<File, Footprint> HELD_TICKETS = new HashMap<File, Footprint>();
+
+    private final File directory;
+    private final File meminfo;
+    private final int processors;
+
+    /**
+     *
+     * @param directory directory of tickets, it is created if it does not exist
+     */
+    public EmulatorAdmission(File directory) {
+        this(directory, new File("/proc/meminfo"), Runtime.getRuntime().availableProcessors());
+    }
+
+    EmulatorAdmission(File directory, File meminfo, int processors) {
+        this.directory = directory;
+        this.meminfo = meminfo;
+        this.processors = processors;
+    }
+
+    /**
+     * Waits until the emulator can be started.
+     *
+     * @param footprint memory and processors the emulator needs
+     * @param timeout maximal time to wait
+     * @param unit unit of the timeout
+     * @return ticket of the emulator, it has to be released once the emulator is stopped
+     * @throws InterruptedException if the waiting was interrupted
+     * @throws TimeoutException if the host did not have capacity for the emulator in time
+     * @throws IOException if the tickets can not be written
+     */
+    public Ticket admit(Footprint footprint, long timeout, TimeUnit unit) throws InterruptedException, TimeoutException,
+        IOException {
+
+        if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+            throw new IOException("Unable to create directory " + directory);
+        }
+
+        long queued = System.nanoTime();
+        long deadline = queued + unit.toNanos(timeout);
+        boolean reported = false;
+        while (true) {
+            Ticket ticket = tryAdmit(footprint, queued);
+            if (ticket != null) {
+                return ticket;
+            }
+            if (!reported) {
+                logger.log(Level.INFO, "Host does not have capacity for another emulator of {0}, waiting until some of the "
+                    + "running emulators stop", footprint);
+                reported = true;
+            }
+            long left = deadline - System.nanoTime();
+            if (left <= 0) {
+                throw new TimeoutException("Host did not have capacity for an emulator of " + footprint + " in "
+                    + unit.toSeconds(timeout) + " seconds");
+            }
+            Thread.sleep(Math.min(POLL_MILLIS, TimeUnit.NANOSECONDS.toMillis(left) + 1));
+        }
+    }
+
+    private Ticket tryAdmit(Footprint footprint, long queued) throws IOException {
+        synchronized (HELD_TICKETS) {
+            return tryAdmitLocked(footprint, queued);
+        }
+    }
+
+    private Ticket tryAdmitLocked(Footprint footprint, long queued) throws IOException {
+        // tickets are checked and written by a single JVM at a time
+        RandomAccessFile lockFile = new RandomAccessFile(new File(directory, LOCK_FILE), "rw");
+        try {
+            lockFile.getChannel().lock();
+
+            long ramMegabytes = 0L;
+            int cores = 0;
+            int running = 0;
+            File[] tickets = directory.listFiles();
+            if (tickets != null) {
+                for (File ticket : tickets) {
+                    if (!ticket.getName().endsWith(TICKET_SUFFIX)) {
+                        continue;
+                    }
+                    Footprint admitted = HELD_TICKETS.get(ticket.getAbsoluteFile());
+                    if (admitted == null && isHeld(ticket)) {
+                        admitted = Footprint.parse(ticket);
+                    }
+                    if (admitted != null) {
+                        ramMegabytes += admitted.getRamMegabytes();
+                        cores += admitted.getCores();
+                        running++;
+                    }
+                }
+            }
+
+            if (running != 0 && !hasCapacity(footprint, ramMegabytes, cores)) {
+                return null;
+            }
+
+            Ticket ticket = Ticket.create(new File(directory, UUID.randomUUID() + TICKET_SUFFIX).getAbsoluteFile(),
+                footprint, System.nanoTime() - queued);
+            HELD_TICKETS.put(ticket.file, footprint);
+            logger.log(Level.FINE, "Emulator of {0} admitted, {1} emulators are running on the host", new Object[] {
+                footprint, running + 1 });
+            return ticket;
+        } finally {
+            // closing the file releases the lock
+            lockFile.close();
+        }
+    }
+
+    private boolean hasCapacity(Footprint footprint, long admittedRamMegabytes, int admittedCores) {
+        if (admittedCores + footprint.getCores() > processors) {
+            return false;
+        }
+        Map<String, Long> memory = readMeminfo();
+        Long total = memory.get("MemTotal");
+        if (total == null) {
+            // memory of the host is not known, e.g. on other systems than Linux
+            return true;
+        }
+        if (admittedRamMegabytes + footprint.getRamMegabytes() > total / 1024 - HOST_RESERVE_MEGABYTES) {
+            return false;
+        }
+        Long available = memory.get("MemAvailable");
+        return available == null || footprint.getRamMegabytes() <= available / 1024 - HOST_RESERVE_MEGABYTES;
+    }
+
+    private Map<String, Long> readMeminfo() {
+        Map<String, Long> memory = new HashMap<String, Long>();
+        if (!meminfo.isFile()) {
+            return memory;
+        }
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(meminfo));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Matcher matcher = MEMINFO_LINE.matcher(line);
+                if (matcher.find()) {
+                    memory.put(matcher.group(1), Long.parseLong(matcher.group(2)));
+                }
+            }
+        } catch (IOException e) {
+            logger.log(Level.FINE, "Unable to read " + meminfo, e);
+        } finally {
+            close(reader);
+        }
+        return memory;
+    }
+
+    // checks a ticket of another JVM
+    private static boolean isHeld(File ticket) {
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(ticket, "rw");
+            FileLock lock = file.getChannel().tryLock();
+            if (lock == null) {
+                return true;
+            }
+            // the JVM which held the ticket exited without releasing it
+            lock.release();
+            file.close();
+            file = null;
+            ticket.delete();
+            return false;
+        } catch (OverlappingFileLockException e) {
+            return true;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            close(file);
+        }
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    /**
+     * Memory and processors an emulator needs.
+     */
+    public static class Footprint {
+
+        private final long ramMegabytes;
+        private final int cores;
+
+        public Footprint(long ramMegabytes, int cores) {
+            this.ramMegabytes = ramMegabytes;
+            this.cores = cores;
+        }
+
+        /**
+         * Estimates footprint of an emulator of an AVD from hw.ram.size and hw.cpu.ncore of its config.ini.
+         *
+         * @param avdDirectory directory of the AVD
+         * @return the footprint
+         */
+        public static Footprint of(File avdDirectory) {
+            return parse(new File(avdDirectory, "config.ini"));
+        }
+
+        static Footprint parse(File file) {
+            Map<String, String> configuration = EmulatorSnapshot.readConfiguration(file);
+            long ramMegabytes = DEFAULT_RAM_MEGABYTES;
+            String ramSize = configuration.get("hw.ram.size");
+            Matcher matcher = ramSize == null ? null : RAM_SIZE.matcher(ramSize);
+            if (matcher != null && matcher.matches()) {
+                ramMegabytes = Long.parseLong(matcher.group(1));
+                if (matcher.group(2) != null && Character.toLowerCase(matcher.group(2).charAt(0)) == 'g') {
+                    ramMegabytes *= 1024;
+                }
+            }
+            int cores = 1;
+            try {
+                cores = Math.max(1, Integer.parseInt(configuration.get("hw.cpu.ncore")));
+            } catch (NumberFormatException e) {
+                // single core emulator
+            }
+            return new Footprint(ramMegabytes + EMULATOR_OVERHEAD_MEGABYTES, cores);
+        }
+
+        /**
+         * @return memory in megabytes, including memory of the emulator process
+         */
+        public long getRamMegabytes() {
+            return ramMegabytes;
+        }
+
+        public int getCores() {
+            return cores;
+        }
+
+        @Override
+        public String toString() {
+            return ramMegabytes + " MB and " + cores + (cores == 1 ? " core" : " cores");
+        }
+    }
+
+    /**
+     * Admission of an emulator, it is held until it is released or the JVM exits.
+     */
+    public static class Ticket {
+
+        private final File file;
+        private final RandomAccessFile ticketFile;
+        private final FileLock lock;
+        private final long queueTime;
+
+        private Ticket(File file, RandomAccessFile ticketFile, FileLock lock, long queueTime) {
+            this.file = file;
+            this.ticketFile = ticketFile;
+            this.lock = lock;
+            this.queueTime = queueTime;
+        }
+
+        static Ticket create(File file, Footprint footprint, long queueTime) throws IOException {
+            RandomAccessFile ticketFile = new RandomAccessFile(file, "rw");
+            try {
+                // written in the format of config.ini, so it is parsed as a footprint
+                ticketFile.writeBytes("hw.ram.size=" + (footprint.getRamMegabytes() - EMULATOR_OVERHEAD_MEGABYTES) + "\n"
+                    + "hw.cpu.ncore=" + footprint.getCores() + "\n");
+                return new Ticket(file, ticketFile, ticketFile.getChannel().lock(), queueTime);
+            } catch (IOException e) {
+                close(ticketFile);
+                file.delete();
+                throw e;
+            }
+        }
+
+        /**
+         * Returns time the emulator was waiting for the admission.
+         *
+         * @param unit unit of the time
+         * @return the time
+         */
+        public long getQueueTime(TimeUnit unit) {
+            return unit.convert(queueTime, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Releases the ticket, so other emulators can be admitted. Releasing a released ticket has no effect.
+         */
+        public void release() {
+            // tickets are not checked by this JVM while the ticket is being released
+            synchronized (HELD_TICKETS) {
+                if (lock.isValid()) {
+                    try {
+                        lock.release();
+                    } catch (IOException e) {
+                        logger.log(Level.FINE, "Unable to release admission " + file, e);
+                    }
+                    file.delete();
+                }
+                close(ticketFile);
+                HELD_TICKETS.remove(file);
+            }
+        }
+    }
+}
@@ -0,0 +1,516 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.android.managed.impl;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.jboss.arquillian.container.android.api.AndroidExecutionException;
+
+/**
+ * Client of the console of an emulator, the telnet interface at the console port, e.g. {@code kill} or
+ * {@code avd snapshot save}.
+ *
+ * There is a single connection per console port, commands are pipelined through it, i.e. a command is sent without waiting
+ * for the reply to the previous one. The console replies to every command by {@code OK}, or by {@code KO} followed by the
+ * reason of a failure. The connection is authenticated by the token in {@value #AUTH_TOKEN_FILE} in the user home if the
+ * console requires it.
+ *
+ * All the connections are served by a single thread, so a command never blocks a thread until the caller waits for its
+ * result.
+ */
+public class EmulatorConsole {
+
+    private static final Logger logger = Logger.getLogger(EmulatorConsole.class.getName());
+
+    /**
+     * File in the user home the console auth token is read from.
+     */
+    public static final String AUTH_TOKEN_FILE = ".emulator_console_auth_token";
+
+    private static final String SERIAL_NUMBER_PREFIX = "emulator-";
+
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    private static final Map<Integer, EmulatorConsole> CONSOLES = new HashMap<Integer, EmulatorConsole>();
+
+    // listeners of futures are run by the thread which completes them, they only signal waiting threads
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private final InetSocketAddress address;
+    private final File authToken;
+
+    // accessed by the dispatcher thread only
+    private Connection connection;
+
+    /**
+     * Returns the console of the emulator at a console port, its connection is reused by all the commands for the port.
+     *
+     * @param consolePort the console port
+     * @return the console
+     */
+    public static synchronized EmulatorConsole forPort(int consolePort) {
+        EmulatorConsole console = CONSOLES.get(consolePort);
+        if (console == null) {
+            console = new EmulatorConsole(new InetSocketAddress("127.0.0.1", consolePort), new File(
+                System.getProperty("user.home"), AUTH_TOKEN_FILE));
+            CONSOLES.put(consolePort, console);
+        }
+        return console;
+    }
+
+    /**
+     * Returns the console of an emulator.
+     *
+     * @param serialNumber serial number of the emulator, e.g. {@code emulator-5554}
+     * @return the console
+     * @throws AndroidExecutionException if the device is not an emulator
+     */
+    public static EmulatorConsole forSerialNumber(String serialNumber) throws AndroidExecutionException {
+        if (serialNumber != null && serialNumber.startsWith(SERIAL_NUMBER_PREFIX)) {
+            try {
+                return forPort(Integer.parseInt(serialNumber.substring(SERIAL_NUMBER_PREFIX.length())));
+            } catch (NumberFormatException e) {
+                // not an emulator
+            }
+        }
+        throw new AndroidExecutionException("Device {0} is not an emulator, it does not have a console", serialNumber);
+    }
+
+    EmulatorConsole(InetSocketAddress address, File authToken) {
+        this.address = address;
+        this.authToken = authToken;
+    }
+
+    /**
+     * Sends a command to the console.
+     *
+     * @param command the command, e.g. {@code avd snapshot save boot}
+     * @param timeout time to wait for the reply
+     * @param unit unit of {@code timeout}
+     * @return future of lines the console replied before {@code OK}, it fails by {@link AndroidExecutionException} if the
+     *         console replied {@code KO}, by {@link TimeoutException} if it did not reply in time or by
+     *         {@link IOException} if the connection failed
+     */
+    public ProcessFuture<List<String>> send(String command, long timeout, TimeUnit unit) {
+        final Request request = new Request(command, System.nanoTime() + unit.toNanos(timeout));
+        Dispatcher.getInstance().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (connection == null) {
+                        connection = new Connection(EmulatorConsole.this);
+                    }
+                    connection.enqueue(request);
+                } catch (IOException e) {
+                    request.future.fail(e);
+                }
+            }
+        });
+        return request.future;
+    }
+
+    /**
+     * Sends a command to the console and waits for the reply.
+     *
+     * @param command the command
+     * @param timeout time to wait for the reply
+     * @param unit unit of {@code timeout}
+     * @return lines the console replied before {@code OK}
+     * @throws AndroidExecutionException if the console replied {@code KO}, did not reply in time or the connection failed
+     */
+    public List<String> execute(String command, long timeout, TimeUnit unit) throws AndroidExecutionException {
+        try {
+            return send(command, timeout, unit).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AndroidExecutionException(e, "Interrupted while waiting for reply of emulator console {0,number,#} to {1}",
+                address.getPort(), command);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof AndroidExecutionException) {
+                throw (AndroidExecutionException) e.getCause();
+            }
+            throw new AndroidExecutionException(e.getCause(), "Command {0} of emulator console {1,number,#} failed: {2}", command,
+                address.getPort(), e.getCause().getMessage());
+        }
+    }
+
+    /**
+     * Closes the connection to the console, commands which were not replied to fail. The next command opens a new one.
+     */
+    public void close() {
+        Dispatcher.getInstance().execute(new Runnable() {
+            @Override
+            public void run() {
+                if (connection != null) {
+                    connection.close(new IOException("Connection to emulator console " + address.getPort()
+                        + " was closed"));
+                }
+            }
+        });
+    }
+
+    @Override
+    public String toString() {
+        return "emulator console " + address.getPort();
+    }
+
+    private String readAuthToken() throws IOException {
+        if (!authToken.isFile()) {
+            throw new IOException("Emulator console " + address.getPort() + " requires authentication, but there is no "
+                + authToken);
+        }
+        BufferedReader reader = new BufferedReader(new FileReader(authToken));
+        try {
+            String token = reader.readLine();
+            return token == null ? "" : token.trim();
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * A command waiting for the reply.
+     */
+    private static class Request {
+
+        private final String command;
+        private final long deadline;
+        private final ProcessFuture<List<String>> future = new ProcessFuture<List<String>>(DIRECT);
+
+        Request(String command, long deadline) {
+            this.command = command;
+            this.deadline = deadline;
+        }
+    }
+
+    /**
+     * Connection to the console. The console greets by a banner ended by {@code OK}, commands are sent once the banner was
+     * read and the connection was authenticated.
+     */
+    private static class Connection {
+
+        private final EmulatorConsole console;
+        private final SocketChannel channel;
+        private final SelectionKey key;
+
+        // requests sent once the connection is ready
+        private final Queue<Request> queued = new LinkedList<Request>();
+        // requests sent and waiting for the reply, in the order they were sent in
+        private final Queue<Request> sent = new LinkedList<Request>();
+        private final Queue<ByteBuffer> output = new LinkedList<ByteBuffer>();
+
+        private final ByteBuffer input = ByteBuffer.allocate(4096);
+        private final StringBuilder line = new StringBuilder();
+        private final List<String> reply = new ArrayList<String>();
+
+        private final Request banner = new Request(null, Long.MAX_VALUE);
+        private Request authentication;
+        private boolean ready;
+
+        Connection(EmulatorConsole console) throws IOException {
+            this.console = console;
+            this.channel = SocketChannel.open();
+            try {
+                channel.configureBlocking(false);
+                boolean connected = channel.connect(console.address);
+                key = channel.register(Dispatcher.getInstance().selector, connected ? SelectionKey.OP_READ
+                    : SelectionKey.OP_CONNECT, this);
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+            sent.add(banner);
+        }
+
+        void enqueue(Request request) {
+            if (ready) {
+                write(request);
+            } else {
+                queued.add(request);
+            }
+        }
+
+        void connect() throws IOException {
+            channel.finishConnect();
+            key.interestOps(output.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+
+        void read() throws IOException {
+            input.clear();
+            int read = channel.read(input);
+            if (read == -1) {
+                close(new IOException("Emulator console " + console.address.getPort() + " closed the connection"));
+                return;
+            }
+            input.flip();
+            String text = CHARSET.decode(input).toString();
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c == '\n') {
+                    line(line.toString().trim());
+                    line.setLength(0);
+                } else if (c != '\r') {
+                    line.append(c);
+                }
+            }
+        }
+
+        void flush() throws IOException {
+            while (!output.isEmpty()) {
+                ByteBuffer buffer = output.peek();
+                channel.write(buffer);
+                if (buffer.hasRemaining()) {
+                    return;
+                }
+                output.remove();
+            }
+            key.interestOps(SelectionKey.OP_READ);
+        }
+
+        long getDeadline() {
+            long deadline = Long.MAX_VALUE;
+            for (Request request : queued) {
+                deadline = Math.min(deadline, request.deadline);
+            }
+            for (Request request : sent) {
+                deadline = Math.min(deadline, request.deadline);
+            }
+            return deadline;
+        }
+
+        void expire(long now) {
+            List<Request> requests = new ArrayList<Request>(sent);
+            requests.addAll(queued);
+            for (Request request : requests) {
+                // replies to requests sent after the expired one could not be told apart, so the connection is closed
+                if (request.deadline - now <= 0L) {
+                    close(new TimeoutException("Emulator console " + console.address.getPort() + " did not reply to "
+                        + request.command + " in time"));
+                    return;
+                }
+            }
+        }
+
+        void close(Throwable cause) {
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // ignore
+            }
+            if (console.connection == this) {
+                console.connection = null;
+            }
+            List<Request> failed = new ArrayList<Request>(sent);
+            failed.addAll(queued);
+            sent.clear();
+            queued.clear();
+            for (Request request : failed) {
+                request.future.fail(cause);
+            }
+        }
+
+        private void write(Request request) {
+            sent.add(request);
+            output.add(CHARSET.encode(request.command + "\n"));
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+
+        private void line(String text) {
+            boolean ok = text.equals("OK") || text.startsWith("OK:");
+            boolean ko = text.startsWith("KO");
+            if (!ok && !ko) {
+                reply.add(text);
+                return;
+            }
+
+            List<String> lines = new ArrayList<String>(reply);
+            reply.clear();
+            Request request = sent.poll();
+            if (request == null) {
+                logger.log(Level.FINE, "Unexpected reply {0} of {1}", new Object[] { text, console });
+            } else if (request == banner) {
+                greeted(lines);
+            } else if (request == authentication) {
+                authenticated(text, ko);
+            } else if (ko) {
+                request.future.fail(new AndroidExecutionException("Emulator console {0,number,#} rejected {1}: {2}",
+                    console.address.getPort(), request.command, text));
+            } else {
+                request.future.complete(lines);
+            }
+        }
+
+        private void greeted(List<String> lines) {
+            for (String text : lines) {
+                if (text.contains("Authentication required")) {
+                    try {
+                        authentication = new Request("auth " + console.readAuthToken(), Long.MAX_VALUE);
+                    } catch (IOException e) {
+                        close(e);
+                        return;
+                    }
+                    write(authentication);
+                    return;
+                }
+            }
+            ready();
+        }
+
+        private void authenticated(String text, boolean ko) {
+            if (ko) {
+                close(new IOException("Authentication to emulator console " + console.address.getPort() + " failed: "
+                    + text));
+            } else {
+                ready();
+            }
+        }
+
+        private void ready() {
+            ready = true;
+            while (!queued.isEmpty()) {
+                write(queued.poll());
+            }
+        }
+    }
+
+    /**
+     * Thread serving the connections of all the consoles.
+     */
+    private static class Dispatcher implements Runnable {
+
+        private static Dispatcher instance;
+
+        private final Selector selector;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+
+        private Dispatcher(Selector selector) {
+            this.selector = selector;
+        }
+
+        static synchronized Dispatcher getInstance() {
+            if (instance == null) {
+                try {
+                    instance = new Dispatcher(Selector.open());
+                } catch (IOException e) {
+                    throw new AndroidExecutionException(e, "Unable to open selector of emulator consoles");
+                }
+                Thread thread = new Thread(instance, "emulator-console");
+                thread.setDaemon(true);
+                thread.start();
+            }
+            return instance;
+        }
+
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    selector.select(timeout());
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, "Selector of emulator consoles failed", e);
+                }
+
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        logger.log(Level.WARNING, "Task of emulator consoles failed", e);
+                    }
+                }
+
+                Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+                while (selected.hasNext()) {
+                    SelectionKey key = selected.next();
+                    selected.remove();
+                    Connection connection = (Connection) key.attachment();
+                    try {
+                        if (key.isValid() && key.isConnectable()) {
+                            connection.connect();
+                        }
+                        if (key.isValid() && key.isReadable()) {
+                            connection.read();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.flush();
+                        }
+                    } catch (IOException e) {
+                        connection.close(e);
+                    } catch (RuntimeException e) {
+                        logger.log(Level.WARNING, "Connection to " + connection.console + " failed", e);
+                        connection.close(e);
+                    }
+                }
+
+                long now = System.nanoTime();
+                for (SelectionKey key : new ArrayList<SelectionKey>(selector.keys())) {
+                    if (key.isValid()) {
+                        ((Connection) key.attachment()).expire(now);
+                    }
+                }
+            }
+        }
+
+        // milliseconds until the nearest deadline, 0 blocks until a connection or a task is ready
+        private long timeout() {
+            long deadline = Long.MAX_VALUE;
+            for (SelectionKey key : selector.keys()) {
+                if (key.isValid()) {
+                    deadline = Math.min(deadline, ((Connection) key.attachment()).getDeadline());
+                }
+            }
+            if (deadline == Long.MAX_VALUE) {
+                return 0L;
+            }
+            return Math.max(1L, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()) + 1L);
+        }
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.android.managed.impl;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.jboss.arquillian.container.android.api.AndroidExecutionException;
+
+/**
+ * Allocates processor cores emulators are pinned to, so emulators running at the same time on a single host, even when
+ * started by containers of different JVMs, do not share cores.
+ *
+ * A core is allocated by locking its file in a directory shared by all the JVMs. Only cores this process may run on are
+ * allocated, as listed by {@code Cpus_allowed_list} of {@code /proc/self/status}, e.g. when the build runs in a container
+ * or is pinned by {@code taskset} itself. Cores are allocated from the last one down, the first core is left to the host
+ * and adb unless there is a single core.
+ */
+public class EmulatorCoreAllocator {
+
+    private static final Logger logger = Logger.getLogger(EmulatorCoreAllocator.class.getName());
+
+    private static final File STATUS = new File("/proc/self/status");
+
+    private final File directory;
+    private final List<Integer> allowed;
+
+    /**
+     *
+     * @param directory directory of lock files, it is created if it does not exist
+     */
+    public EmulatorCoreAllocator(File directory) {
+        this(directory, allowedCores(STATUS));
+    }
+
+    /**
+     *
+     * @param directory directory of lock files, it is created if it does not exist
+     * @param allowed cores which can be allocated
+     */
+    EmulatorCoreAllocator(File directory, List<Integer> allowed) {
+        this.directory = directory;
+        List<Integer> sorted = new ArrayList<Integer>(new TreeSet<Integer>(allowed));
+        this.allowed = Collections.unmodifiableList(sorted);
+    }
+
+    /**
+     * Allocates free cores.
+     *
+     * @param count number of cores
+     * @return allocated cores, they have to be released once the emulator is stopped, or {@code null} if there are not
+     *         enough free cores
+     * @throws AndroidExecutionException if the lock files can not be created
+     */
+    public Cores allocate(int count) throws AndroidExecutionException {
+        if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+            throw new AndroidExecutionException("Unable to create directory {0} for locks of processor cores", directory);
+        }
+
+        int lowest = allowed.size() > 1 ? 1 : 0;
+        List<Integer> cores = new ArrayList<Integer>();
+        List<HostLock> locks = new ArrayList<HostLock>();
+        for (int i = allowed.size() - 1; i >= lowest && cores.size() < count; i--) {
+            int core = allowed.get(i);
+            HostLock lock = HostLock.tryLock(new File(directory, "cpu-" + core + ".lock"));
+            if (lock != null) {
+                cores.add(core);
+                locks.add(lock);
+            }
+        }
+
+        Cores allocated = new Cores(cores, locks);
+        if (cores.size() < count) {
+            allocated.release();
+            logger.log(Level.FINE, "There are not {0} free processor cores of {1}", new Object[] { count, allowed });
+            return null;
+        }
+        logger.log(Level.FINE, "Allocated processor cores {0}", allocated);
+        return allocated;
+    }
+
+    /**
+     * Reads cores this process may run on.
+     *
+     * @param status status of the process, {@code /proc/self/status}
+     * @return the cores, or all the available processors counted from 0 if the status is not readable
+     */
+    static List<Integer> allowedCores(File status) {
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(status));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("Cpus_allowed_list:")) {
+                    return parseCoreList(line.substring(line.indexOf(':') + 1));
+                }
+            }
+        } catch (IOException e) {
+            logger.log(Level.FINE, "Unable to read cores allowed by " + status, e);
+        } catch (IllegalArgumentException e) {
+            logger.log(Level.FINE, "Unable to parse cores allowed by " + status, e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+
+        List<Integer> cores = new ArrayList<Integer>();
+        for (int core = 0; core < Runtime.getRuntime().availableProcessors(); core++) {
+            cores.add(core);
+        }
+        return cores;
+    }
+
+    /**
+     * Parses a list of cores in the format of {@code Cpus_allowed_list} and {@code taskset -c}, e.g. {@code 0-3,6}.
+     *
+     * @param list the list
+     * @return the cores
+     * @throws IllegalArgumentException if the list is malformed
+     */
+    static List<Integer> parseCoreList(String list) throws IllegalArgumentException {
+        List<Integer> cores = new ArrayList<Integer>();
+        for (String range : list.trim().split(",")) {
+            int dash = range.indexOf('-');
+            int first = Integer.parseInt(dash < 0 ? range.trim() : range.substring(0, dash).trim());
+            int last = dash < 0 ? first : Integer.parseInt(range.substring(dash + 1).trim());
+            if (first > last) {
+                throw new IllegalArgumentException("Malformed range of cores " + range);
+            }
+            for (int core = first; core <= last; core++) {
+                cores.add(core);
+            }
+        }
+        return cores;
+    }
+
+    /**
+     * Processor cores of an emulator, allocated until they are released.
+     */
+    public static class Cores {
+
+        private final List<Integer> cores;
+        private final List<HostLock> locks;
+
+        Cores(List<Integer> cores, List<HostLock> locks) {
+            List<Integer> sorted = new ArrayList<Integer>(cores);
+            Collections.sort(sorted);
+            this.cores = Collections.unmodifiableList(sorted);
+            this.locks = locks;
+        }
+
+        public List<Integer> getCores() {
+            return cores;
+        }
+
+        /**
+         * Releases the cores, so they can be allocated again. Releasing released cores has no effect.
+         */
+        public void release() {
+            for (HostLock lock : locks) {
+                lock.release();
+            }
+        }
+
+        /**
+         * Returns the cores as a list accepted by {@code taskset -c}, e.g. {@code 2,3}.
+         */
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            for (Integer core : cores) {
+                if (sb.length() != 0) {
+                    sb.append(",");
+                }
+                sb.append(core);
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.android.managed.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+import org.jboss.arquillian.container.android.api.AndroidExecutionException;
+
+/**
+ * Detects that an emulator crashed while it is booting, so waiting for the boot fails right away instead of after the
+ * whole boot timeout.
+ *
+ * The emulator is considered crashed when its process exits or when it writes a line matching any of the fatal output
+ * patterns, e.g. because the AVD does not exist, hardware acceleration is not available or a port is already in use.
+ * Conditions guarded by the watchdog are aborted with the captured error then.
+ */
+public class EmulatorCrashWatchdog implements ProcessOutputPump.LineHandler, Closeable {
+
+    private static final Logger logger = Logger.getLogger(EmulatorCrashWatchdog.class.getName());
+
+    /**
+     * Patterns of the emulator output which are reported by the emulator right before it gives up.
+     */
+    public static final List<Pattern> FATAL_OUTPUT = Collections.unmodifiableList(Arrays.asList(
+        Pattern.compile("PANIC: "),
+        Pattern.compile("^(emulator: )?ERROR: "),
+        Pattern.compile("^FATAL\\b"),
+        Pattern.compile("(?i)(could not|failed to) initiali[sz]e (kvm|hax)"),
+        Pattern.compile("(?i)address already in use")));
+
+    private final Object id;
+    private final ProcessOutputPump.LineHandler output;
+    private final List<Pattern> fatalOutput;
+
+    private final List<SignalledCondition> guarded = new CopyOnWriteArrayList<SignalledCondition>();
+    private volatile ProcessLogScanner log;
+    private volatile AndroidExecutionException failure;
+    private volatile boolean disarmed;
+
+    /**
+     * Creates a watchdog checking the output for {@link #FATAL_OUTPUT}.
+     *
+     * @param id identification of the emulator used in messages
+     * @param output handler the output is passed to after it was checked
+     */
+    public EmulatorCrashWatchdog(Object id, ProcessOutputPump.LineHandler output) {
+        this(id, output, FATAL_OUTPUT);
+    }
+
+    /**
+     *
+     * @param id identification of the emulator used in messages
+     * @param output handler the output is passed to after it was checked
+     * @param fatalOutput patterns of the output which mean the emulator crashed
+     */
+    public EmulatorCrashWatchdog(Object id, ProcessOutputPump.LineHandler output, List<Pattern> fatalOutput) {
+        this.id = id;
+        this.output = output;
+        this.fatalOutput = fatalOutput;
+    }
+
+    @Override
+    public void handle(String line) {
+        output.handle(line);
+        if (disarmed || failure != null) {
+            return;
+        }
+        for (Pattern pattern : fatalOutput) {
+            if (pattern.matcher(line).find()) {
+                crashed(new AndroidExecutionException("Emulator {0} failed with: {1}", id, line.trim()));
+                return;
+            }
+        }
+    }
+
+    /**
+     * Closes the handler the output is passed to, if it is closeable.
+     */
+    @Override
+    public void close() throws IOException {
+        if (output instanceof Closeable) {
+            ((Closeable) output).close();
+        }
+    }
+
+    /**
+     * Watches exit of the emulator process.
+     *
+     * @param executor executor the process is watched by
+     * @param process the emulator process
+     */
+    public void watch(ProcessExecutor executor, Process process) {
+        final ProcessFuture<Integer> exit = executor.onExit(process);
+        exit.addListener(new Runnable() {
+            @Override
+            public void run() {
+                ProcessLogScanner log = EmulatorCrashWatchdog.this.log;
+                if (log != null) {
+                    // the last output usually says why the emulator exited
+                    scan(log);
+                }
+                try {
+                    crashed(new AndroidExecutionException("Emulator {0} exited with code {1} before it booted", id,
+                        String.valueOf(exit.get())));
+                } catch (Exception e) {
+                    logger.log(Level.FINE, "Unable to watch exit of emulator " + id, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Watches a log file the output of the emulator is redirected to. The log is scanned by threads awaiting guarded
+     * conditions, right before they check them, and once the emulator exits.
+     *
+     * @param log scanner of the log
+     */
+    public void watch(ProcessLogScanner log) {
+        this.log = log;
+    }
+
+    /**
+     * Aborts {@code condition} as soon as the emulator crashes, or right away if it already crashed.
+     *
+     * @param condition condition waiting for the emulator
+     */
+    public void guard(SignalledCondition condition) {
+        guarded.add(condition);
+        condition.beforeCheck(new Runnable() {
+            @Override
+            public void run() {
+                ProcessLogScanner log = EmulatorCrashWatchdog.this.log;
+                if (log != null && !disarmed && failure == null) {
+                    scan(log);
+                }
+            }
+        });
+        AndroidExecutionException failure = this.failure;
+        if (failure != null) {
+            condition.abort(failure);
+        }
+    }
+
+    /**
+     * Stops watching the emulator, e.g. once it booted and its exit is expected later on.
+     */
+    public void disarm() {
+        disarmed = true;
+    }
+
+    /**
+     * Returns the reason of the crash.
+     *
+     * @return the failure or {@code null} if the emulator did not crash
+     */
+    public AndroidExecutionException getFailure() {
+        return failure;
+    }
+
+    private void scan(ProcessLogScanner log) {
+        try {
+            log.scan(this);
+        } catch (IOException e) {
+            logger.log(Level.FINE, "Unable to scan emulator output in " + log.getFile(), e);
+        }
+    }
+
+    private void crashed(AndroidExecutionException e) {
+        synchronized (this) {
+            if (disarmed || failure != null) {
+                return;
+            }
+            failure = e;
+        }
+        logger.log(Level.SEVERE, e.getMessage());
+        for (SignalledCondition condition : guarded) {
+            condition.abort(e);
+        }
+    }
+}
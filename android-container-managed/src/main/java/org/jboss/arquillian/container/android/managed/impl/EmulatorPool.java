@@ -0,0 +1,336 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.android.managed.impl;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.jboss.arquillian.container.android.managed.configuration.AndroidSDK;
+
+/**
+ * Pool of warm emulators shared by containers, even by containers running in different JVMs, e.g. in consecutive modules
+ * of a build.
+ *
+ * The pool is a directory with a file per emulator. The name of the file is the serial number of the emulator and its
+ * extension is the state of the emulator, {@code .idle} or {@code .leased}. Emulators are leased and evicted by renaming
+ * their file, which is atomic, so an emulator is never leased by two containers.
+ *
+ * The lessee holds {@link HostLock} of the {@code .lock} file of the emulator, which records its process, as long as the
+ * emulator is leased. A lease whose lock is not held any more was left by a JVM which is gone, the emulator is reclaimed
+ * and becomes idle again.
+ *
+ * Host resources of an emulator, e.g. its admission, are held as long as the emulator runs. The resources of emulators
+ * returned to the pool by this JVM are kept by the pool until the emulators are leased, evicted or removed.
+ */
+public class EmulatorPool {
+
+    private static final Logger logger = Logger.getLogger(EmulatorPool.class.getName());
+
+    static final String IDLE = ".idle";
+    static final String LEASED = ".leased";
+    static final String EVICTED = ".evicted";
+    static final String LOCK = ".lock";
+
+    // the console replies to kill right before the emulator exits
+    private static final long KILL_TIMEOUT_SECONDS = 10L;
+
+    // emulators returned to pools by this JVM which hold host resources, by their file without a state
+    private static final Map<File, PooledEmulator> HELD = new HashMap<File, PooledEmulator>();
+
+    private final File directory;
+
+    /**
+     *
+     * @param directory directory of the pool, it is created once an emulator is returned to the pool
+     */
+    public EmulatorPool(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Leases an idle emulator.
+     *
+     * @param avdName name of the AVD or {@code null} if it is generated
+     * @param apiLevel API level of the AVD
+     * @param abi ABI of the AVD or {@code null} for the default one
+     * @param running serial numbers of running emulators
+     * @return leased emulator or {@code null} if there is no matching idle emulator
+     */
+    public PooledEmulator lease(String avdName, String apiLevel, String abi, Collection<String> running) {
+        reclaimStaleLeases();
+        for (File idle : list(IDLE)) {
+            PooledEmulator emulator = read(idle);
+            // an emulator killed outside of the pool is not leased, it is removed once it is evicted
+            if (emulator == null || !running.contains(emulator.getSerialNumber())
+                || !emulator.matches(avdName, apiLevel, abi)) {
+                continue;
+            }
+            // the lease is locked before it is visible, so it is never taken for a stale one
+            HostLock lease = HostLock.tryLock(file(emulator, LOCK));
+            if (lease == null) {
+                continue;
+            }
+            if (idle.renameTo(file(emulator, LEASED))) {
+                emulator.setLease(lease);
+                emulator.takeHostResources(unhold(emulator.getSerialNumber()));
+                logger.log(Level.INFO, "Leased emulator {0} from the pool", emulator);
+                return emulator;
+            }
+            lease.release();
+        }
+        return null;
+    }
+
+    /**
+     * Returns an emulator to the pool, it becomes idle.
+     *
+     * @param emulator the emulator
+     */
+    public void release(PooledEmulator emulator) {
+        // written aside, so there is no lease of the emulator which is not locked
+        File returned = new File(directory, emulator.getSerialNumber() + ".tmp");
+        try {
+            mkdirs();
+            write(returned, emulator.toProperties(System.currentTimeMillis()));
+            if (!returned.renameTo(file(emulator, IDLE))) {
+                throw new IOException("Unable to rename " + returned);
+            }
+            hold(emulator);
+            logger.log(Level.INFO, "Returned emulator {0} to the pool", emulator);
+        } catch (IOException e) {
+            returned.delete();
+            emulator.releaseHostResources();
+            logger.log(Level.WARNING, "Unable to return emulator " + emulator + " to the pool", e);
+        } finally {
+            file(emulator, LEASED).delete();
+            emulator.releaseLease();
+        }
+    }
+
+    /**
+     * Removes a leased or evicted emulator from the pool.
+     *
+     * @param emulator the emulator
+     */
+    public void remove(PooledEmulator emulator) {
+        file(emulator, LEASED).delete();
+        file(emulator, EVICTED).delete();
+        emulator.releaseLease();
+        emulator.takeHostResources(unhold(emulator.getSerialNumber()));
+        emulator.releaseHostResources();
+    }
+
+    /**
+     * Checks whether an emulator belongs to the pool, so it must not be used by a container which did not lease it.
+     *
+     * @param serialNumber serial number of the emulator
+     * @return {@code true} if the emulator is in the pool
+     */
+    public boolean contains(String serialNumber) {
+        for (String state : Arrays.asList(IDLE, LEASED, EVICTED)) {
+            if (new File(directory, serialNumber + state).exists()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Evicts emulators which are idle for longer than {@code idleTimeoutMillis}. Evicted emulators are marked in the pool,
+     * so they are not leased while they are being killed, and they have to be removed by {@link #remove(PooledEmulator)}.
+     *
+     * @param idleTimeoutMillis maximal idle time in milliseconds
+     * @return evicted emulators
+     */
+    public List<PooledEmulator> evictIdle(long idleTimeoutMillis) {
+        reclaimStaleLeases();
+        releaseHostResourcesOfRemoved();
+        List<PooledEmulator> evicted = new ArrayList<PooledEmulator>();
+        long now = System.currentTimeMillis();
+        for (File idle : list(IDLE)) {
+            PooledEmulator emulator = read(idle);
+            if (emulator == null) {
+                idle.delete();
+            } else if (now - emulator.getIdleSince() > idleTimeoutMillis
+                && idle.renameTo(file(emulator, EVICTED))) {
+                emulator.takeHostResources(unhold(emulator.getSerialNumber()));
+                evicted.add(emulator);
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * Evicts emulators which are idle for longer than {@code idleTimeoutMillis}, kills them and deletes their AVDs if they
+     * were generated.
+     *
+     * @param idleTimeoutMillis maximal idle time in milliseconds
+     * @param executor executor the commands are run by
+     * @param sdk the Android SDK
+     */
+    public void evictIdle(long idleTimeoutMillis, ProcessExecutor executor, AndroidSDK sdk) {
+        for (PooledEmulator emulator : evictIdle(idleTimeoutMillis)) {
+            logger.log(Level.INFO, "Evicting emulator {0} idle since {1,time}", new Object[] { emulator,
+                new Date(emulator.getIdleSince()) });
+            dispose(emulator, executor, sdk);
+        }
+    }
+
+    /**
+     * Kills a leased or evicted emulator and removes it from the pool. Its AVD is deleted if it was generated.
+     *
+     * @param emulator the emulator
+     * @param executor executor the commands are run by
+     * @param sdk the Android SDK
+     */
+    public void dispose(PooledEmulator emulator, ProcessExecutor executor, AndroidSDK sdk) {
+        try {
+            EmulatorConsole.forSerialNumber(emulator.getSerialNumber()).execute("kill", KILL_TIMEOUT_SECONDS,
+                TimeUnit.SECONDS);
+            if (emulator.isGenerated()) {
+                executor.execute(sdk.getAndroidPath(), "delete", "avd", "-n", emulator.getAvdName());
+                executor.invalidateCachedResults();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "Unable to dispose pooled emulator " + emulator, e);
+        } finally {
+            remove(emulator);
+        }
+    }
+
+    /**
+     * Returns emulators whose lessee is gone to the pool. Such an emulator is idle since it was leased, so it is evicted
+     * soon unless it is leased again.
+     */
+    private void reclaimStaleLeases() {
+        for (File leased : list(LEASED)) {
+            String serialNumber = leased.getName().substring(0, leased.getName().length() - LEASED.length());
+            HostLock lease = HostLock.tryLock(new File(directory, serialNumber + LOCK));
+            if (lease == null) {
+                continue;
+            }
+            try {
+                PooledEmulator emulator = read(leased);
+                if (emulator == null) {
+                    leased.delete();
+                } else if (leased.renameTo(file(emulator, IDLE))) {
+                    logger.log(Level.INFO, "Reclaimed emulator {0} whose lessee is gone", emulator);
+                }
+            } finally {
+                lease.release();
+            }
+        }
+    }
+
+    private void hold(PooledEmulator emulator) {
+        synchronized (HELD) {
+            HELD.put(file(emulator, "").getAbsoluteFile(), emulator);
+        }
+    }
+
+    private PooledEmulator unhold(String serialNumber) {
+        synchronized (HELD) {
+            return HELD.remove(new File(directory, serialNumber).getAbsoluteFile());
+        }
+    }
+
+    /**
+     * Releases host resources of emulators which were removed from the pool by another JVM.
+     */
+    private void releaseHostResourcesOfRemoved() {
+        synchronized (HELD) {
+            for (Iterator<Map.Entry<File, PooledEmulator>> i = HELD.entrySet().iterator(); i.hasNext();) {
+                Map.Entry<File, PooledEmulator> held = i.next();
+                PooledEmulator emulator = held.getValue();
+                if (held.getKey().equals(file(emulator, "").getAbsoluteFile())
+                    && !contains(emulator.getSerialNumber())) {
+                    emulator.releaseHostResources();
+                    i.remove();
+                }
+            }
+        }
+    }
+
+    private File file(PooledEmulator emulator, String state) {
+        return new File(directory, emulator.getSerialNumber() + state);
+    }
+
+    private List<File> list(String state) {
+        List<File> files = new ArrayList<File>();
+        File[] children = directory.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                if (child.getName().endsWith(state)) {
+                    files.add(child);
+                }
+            }
+        }
+        return files;
+    }
+
+    private void mkdirs() throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+            throw new IOException("Unable to create directory " + directory);
+        }
+    }
+
+    private static PooledEmulator read(File file) {
+        Properties properties = new Properties();
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            properties.load(in);
+            return PooledEmulator.fromProperties(properties);
+        } catch (IOException e) {
+            logger.log(Level.FINE, "Unable to read pooled emulator " + file, e);
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    private static void write(File file, Properties properties) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            properties.store(out, "Emulator pooled by Arquillian Android container");
+        } finally {
+            out.close();
+        }
+    }
+}
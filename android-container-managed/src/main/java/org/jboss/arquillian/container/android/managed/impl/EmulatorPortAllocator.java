@@ -0,0 +1,151 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.android.managed.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.jboss.arquillian.container.android.api.AndroidExecutionException;
+
+/**
+ * Allocates console and adb ports of emulators, so emulators started at the same time by containers of different JVMs,
+ * e.g. forked test runs or parallel builds on a single host, do not collide.
+ *
+ * A pair of ports is allocated by locking a file of the console port in a directory shared by all the JVMs. Lock of the
+ * file is held until the pair is released or the JVM exits. Ports which are locked by another JVM or bound by a process
+ * which does not use the allocator, e.g. an emulator started by hand, are skipped. Ports allocated by another container
+ * of this JVM are skipped without their lock file being opened, closing it would release their lock on POSIX systems.
+ */
+public class EmulatorPortAllocator {
+
+    private static final Logger logger = Logger.getLogger(EmulatorPortAllocator.class.getName());
+
+    /**
+     * The first console port an emulator accepts.
+     */
+    public static final int FIRST_CONSOLE_PORT = 5554;
+
+    /**
+     * The last console port an emulator accepts.
+     */
+    public static final int LAST_CONSOLE_PORT = 5682;
+
+    private final File directory;
+    private final int firstConsolePort;
+    private final int lastConsolePort;
+
+    /**
+     *
+     * @param directory directory of lock files, it is created if it does not exist
+     */
+    public EmulatorPortAllocator(File directory) {
+        this(directory, FIRST_CONSOLE_PORT, LAST_CONSOLE_PORT);
+    }
+
+    EmulatorPortAllocator(File directory, int firstConsolePort, int lastConsolePort) {
+        this.directory = directory;
+        this.firstConsolePort = firstConsolePort;
+        this.lastConsolePort = lastConsolePort;
+    }
+
+    /**
+     * Allocates a free pair of ports, the even console port and the odd adb port following it.
+     *
+     * @return allocated ports, they have to be released once the emulator is stopped
+     * @throws AndroidExecutionException if there is no free pair of ports or the lock files can not be created
+     */
+    public EmulatorPorts allocate() throws AndroidExecutionException {
+        if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+            throw new AndroidExecutionException("Unable to create directory {0} for locks of emulator ports", directory);
+        }
+
+        for (int consolePort = firstConsolePort; consolePort <= lastConsolePort; consolePort += 2) {
+            EmulatorPorts ports = tryLock(consolePort);
+            if (ports == null) {
+                continue;
+            }
+            if (isFree(consolePort) && isFree(consolePort + 1)) {
+                logger.log(Level.FINE, "Allocated emulator ports {0}", ports);
+                return ports;
+            }
+            ports.release();
+        }
+        throw new AndroidExecutionException("There is no free pair of emulator ports between {0,number,#} and {1,number,#}",
+            firstConsolePort, lastConsolePort + 1);
+    }
+
+    private EmulatorPorts tryLock(int consolePort) {
+        HostLock lock = HostLock.tryLock(new File(directory, consolePort + ".lock"));
+        return lock == null ? null : new EmulatorPorts(consolePort, lock);
+    }
+
+    private static boolean isFree(int port) {
+        ServerSocket socket = null;
+        try {
+            socket = new ServerSocket(port, 1, InetAddress.getByName("127.0.0.1"));
+            return true;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            if (socket != null) {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    /**
+     * Console and adb port of an emulator, allocated until they are released.
+     */
+    public static class EmulatorPorts {
+
+        private final int consolePort;
+        private final HostLock lock;
+
+        EmulatorPorts(int consolePort, HostLock lock) {
+            this.consolePort = consolePort;
+            this.lock = lock;
+        }
+
+        public int getConsolePort() {
+            return consolePort;
+        }
+
+        public int getAdbPort() {
+            return consolePort + 1;
+        }
+
+        /**
+         * Releases the ports, so they can be allocated again. Releasing released ports has no effect.
+         */
+        public void release() {
+            lock.release();
+        }
+
+        @Override
+        public String toString() {
+            return consolePort + "," + getAdbPort();
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.android.managed.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reaper of containers stopped without waiting for their cleanup, e.g. for the emulator to exit and the AVD to be deleted,
+ * so tests of the next container can run in the meantime.
+ *
+ * Deferred tasks are run one by one in the order they were deferred in by a single background thread. When the JVM
+ * exits, a single shutdown hook waits for the remaining tasks, at most for the longest timeout of the deferred tasks.
+ * Artifacts the unfinished tasks leave behind are logged.
+ */
+public class EmulatorReaper {
+
+    private static final Logger logger = Logger.getLogger(EmulatorReaper.class.getName());
+
+    /**
+     * Cleanup deferred to the reaper.
+     */
+    public interface Task extends Runnable {
+
+        /**
+         * Returns artifacts which were not cleaned up yet, e.g. the AVD while it is being deleted.
+         *
+         * @return descriptions of the artifacts
+         */
+        List<String> getLeftovers();
+    }
+
+    private static EmulatorReaper instance;
+
+    private final ExecutorService service = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "arquillian-android-reaper");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final List<Task> pending = new ArrayList<Task>();
+
+    private long timeoutMillis;
+
+    /**
+     * Returns the reaper of the JVM, its shutdown hook is registered once it is created.
+     *
+     * @return the reaper
+     */
+    public static synchronized EmulatorReaper getInstance() {
+        if (instance == null) {
+            final EmulatorReaper reaper = new EmulatorReaper();
+            Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    reaper.awaitOnExit();
+                }
+            }, "arquillian-android-reaper-shutdown"));
+            instance = reaper;
+        }
+        return instance;
+    }
+
+    EmulatorReaper() {
+    }
+
+    /**
+     * Defers a task, it is run once all the tasks deferred before it are finished.
+     *
+     * @param task the task
+     * @param timeout time the task takes at most, the JVM waits at least that long for it on exit
+     * @param unit unit of {@code timeout}
+     */
+    public void defer(final Task task, long timeout, TimeUnit unit) {
+        synchronized (pending) {
+            pending.add(task);
+            timeoutMillis = Math.max(timeoutMillis, unit.toMillis(timeout));
+        }
+        service.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    logger.log(Level.WARNING, "Deferred teardown failed, it left behind " + task.getLeftovers(), e);
+                } finally {
+                    synchronized (pending) {
+                        pending.remove(task);
+                        pending.notifyAll();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Defers shutdown of an executor, so it is shut down only after the tasks which use it were deferred before.
+     *
+     * @param executor the executor
+     */
+    public void deferShutdown(final ProcessExecutor executor) {
+        defer(new Task() {
+            @Override
+            public void run() {
+                executor.shutdown();
+            }
+
+            @Override
+            public List<String> getLeftovers() {
+                return Collections.emptyList();
+            }
+        }, 0L, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Waits for all the deferred tasks to finish.
+     *
+     * @param timeout time to wait
+     * @param unit unit of {@code timeout}
+     * @return {@code true} if all the tasks finished, {@code false} if the time elapsed
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (pending) {
+            while (!pending.isEmpty()) {
+                long left = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (left <= 0L) {
+                    return false;
+                }
+                pending.wait(left);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Returns artifacts the deferred tasks have not cleaned up yet.
+     *
+     * @return descriptions of the artifacts
+     */
+    public List<String> getLeftovers() {
+        List<String> leftovers = new ArrayList<String>();
+        synchronized (pending) {
+            for (Task task : pending) {
+                leftovers.addAll(task.getLeftovers());
+            }
+        }
+        return leftovers;
+    }
+
+    private void awaitOnExit() {
+        long timeout;
+        synchronized (pending) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            timeout = timeoutMillis;
+        }
+        logger.log(Level.INFO, "Waiting {0} ms for deferred teardown of {1}", new Object[] { timeout, getLeftovers() });
+        try {
+            if (!await(timeout, TimeUnit.MILLISECONDS)) {
+                logger.log(Level.WARNING, "Deferred teardown did not finish in {0} ms, left behind {1}", new Object[] {
+                    timeout, getLeftovers() });
+            }
+        } catch (InterruptedException e) {
+            logger.log(Level.WARNING, "Deferred teardown was interrupted, it left behind {0}", getLeftovers());
+        }
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.android.managed.impl;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Named boot snapshot of an AVD.
+ *
+ * The first boot of the AVD is a cold boot, the snapshot is saved once it finishes cleanly and following boots are
+ * restored from it. The snapshot is never saved when the emulator exits, so no state of the tests leaks into it. It is
+ * invalidated when configuration of the AVD, its system image or the emulator change, and when a boot from it fails.
+ *
+ * State of the snapshot and times of the boots are stored in the AVD directory.
+ */
+public class EmulatorSnapshot {
+
+    private static final Logger logger = Logger.getLogger(EmulatorSnapshot.class.getName());
+
+    static final String STATE_FILE = "arquillian-snapshot.properties";
+
+    static final String BOOT_TIMES_FILE = "arquillian-boot-times.log";
+
+    private static final String SYSTEM_IMAGE_KEY_PREFIX = "image.sysdir.";
+
+    private final String name;
+    private final File avdDirectory;
+    private final File sdkDirectory;
+    private final File emulator;
+
+    private final String fingerprint;
+    private final boolean usable;
+
+    /**
+     *
+     * @param name name of the snapshot
+     * @param avdDirectory directory of the AVD
+     * @param sdkDirectory directory of the Android SDK system images are relative to
+     * @param emulator emulator binary
+     */
+    public EmulatorSnapshot(String name, File avdDirectory, File sdkDirectory, File emulator) {
+        this.name = name;
+        this.avdDirectory = avdDirectory;
+        this.sdkDirectory = sdkDirectory;
+        this.emulator = emulator;
+        // the emulator might modify the AVD while it runs, so the fingerprint is taken before it is started
+        this.fingerprint = fingerprint();
+        this.usable = fingerprint.equals(loadState().getProperty(name));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns whether the emulator is booted from the snapshot, or cold booted in order to save the snapshot.
+     *
+     * @return {@code true} if the snapshot exists and the AVD did not change since it was saved
+     */
+    public boolean isUsable() {
+        return usable;
+    }
+
+    /**
+     * Returns options of the emulator which boot it from the snapshot if it is usable, or cold boot it otherwise.
+     *
+     * @return options of the emulator
+     */
+    public List<String> getEmulatorOptions() {
+        if (usable) {
+            return Arrays.asList("-snapshot", name, "-no-snapshot-save");
+        }
+        return Arrays.asList("-snapshot", name, "-no-snapshot-load", "-no-snapshot-save");
+    }
+
+    /**
+     * Records that the snapshot was saved.
+     */
+    public void saved() {
+        Properties state = loadState();
+        state.setProperty(name, fingerprint);
+        storeState(state);
+        logger.log(Level.INFO, "Boot snapshot {0} of {1} was saved", new Object[] { name, avdDirectory });
+    }
+
+    /**
+     * Invalidates the snapshot, the next boot is a cold one and saves the snapshot again.
+     */
+    public void invalidate() {
+        Properties state = loadState();
+        if (state.remove(name) != null) {
+            storeState(state);
+            logger.log(Level.INFO, "Boot snapshot {0} of {1} was invalidated", new Object[] { name, avdDirectory });
+        }
+    }
+
+    /**
+     * Records time of a boot.
+     *
+     * @param millis time from the start of the emulator until it booted in milliseconds
+     */
+    public void recordBoot(long millis) {
+        String mode = usable ? "snapshot" : "cold";
+        logger.log(Level.INFO, "Emulator {0} booted in {1} ms ({2} boot)", new Object[] { avdDirectory.getName(),
+            String.valueOf(millis), mode });
+
+        FileWriter writer = null;
+        try {
+            writer = new FileWriter(new File(avdDirectory, BOOT_TIMES_FILE), true);
+            writer.write(System.currentTimeMillis() + "\t" + name + "\t" + mode + "\t" + millis + "\n");
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Unable to record boot time to " + avdDirectory, e);
+        } finally {
+            close(writer);
+        }
+    }
+
+    /**
+     * Computes fingerprint of everything the snapshot depends on, the configuration of the AVD, its system images and the
+     * emulator binary.
+     */
+    private String fingerprint() {
+        Map<String, String> configuration = readConfiguration(new File(avdDirectory, "config.ini"));
+
+        List<File> dependencies = new ArrayList<File>();
+        dependencies.add(emulator);
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, String> entry : configuration.entrySet()) {
+            sb.append(entry.getKey()).append('=').append(entry.getValue()).append('\n');
+            if (entry.getKey().startsWith(SYSTEM_IMAGE_KEY_PREFIX)) {
+                dependencies.add(new File(sdkDirectory, entry.getValue()));
+            }
+        }
+        sb.append(ProcessResultCache.fingerprint(dependencies));
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest(sb.toString().getBytes("UTF-8"))) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return sb.toString();
+        } catch (UnsupportedEncodingException e) {
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Reads configuration of the AVD. Its content is used rather than its modification time, because the emulator rewrites
+     * it when it starts.
+     */
+    static Map<String, String> readConfiguration(File file) {
+        Map<String, String> configuration = new TreeMap<String, String>();
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(file));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int separator = line.indexOf('=');
+                if (separator > 0) {
+                    configuration.put(line.substring(0, separator).trim(), line.substring(separator + 1).trim());
+                }
+            }
+        } catch (IOException e) {
+            logger.log(Level.FINE, "Unable to read AVD configuration " + file, e);
+        } finally {
+            close(reader);
+        }
+        return configuration;
+    }
+
+    private Properties loadState() {
+        Properties state = new Properties();
+        File file = new File(avdDirectory, STATE_FILE);
+        if (!file.isFile()) {
+            return state;
+        }
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            state.load(in);
+        } catch (IOException e) {
+            logger.log(Level.FINE, "Ignoring unreadable snapshot state " + file, e);
+        } finally {
+            close(in);
+        }
+        return state;
+    }
+
+    private void storeState(Properties state) {
+        File file = new File(avdDirectory, STATE_FILE);
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(file);
+            state.store(out, "Boot snapshots of the AVD and fingerprints of what they depend on");
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Unable to store snapshot state to " + file, e);
+        } finally {
+            close(out);
+        }
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.android.managed.impl;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.jboss.arquillian.container.android.api.AndroidExecutionException;
+import org.jboss.arquillian.container.android.managed.configuration.AndroidSDK;
+
+/**
+ * Teardown of an emulator deferred to {@link EmulatorReaper}. The emulator is killed, its AVD and SD card are deleted if
+ * they were generated and resources of the host it held are released.
+ *
+ * The teardown runs outside of the container, so it does not fire any events, e.g. the AVD is deleted directly instead
+ * of by {@code AndroidVirtualDeviceDelete}.
+ */
+class EmulatorTeardown implements EmulatorReaper.Task {
+
+    private static final Logger logger = Logger.getLogger(EmulatorTeardown.class.getName());
+
+    // time a destroyed emulator has to exit in, it does not take long unless the host is overloaded
+    static final long DESTROY_TIMEOUT_SECONDS = 10L;
+
+    private final AndroidEmulator emulator;
+    private final String serialNumber;
+    private final ProcessExecutor executor;
+    private final AndroidSDK sdk;
+    private final long timeoutInSeconds;
+
+    // name of the generated AVD and its generated SD card, they are null once they are deleted
+    private volatile String avdName;
+    private volatile String sdCard;
+    private volatile boolean exited;
+
+    /**
+     *
+     * @param emulator the emulator
+     * @param serialNumber serial number of the emulator
+     * @param executor executor the emulator was spawned by
+     * @param sdk the Android SDK
+     * @param avdName name of the AVD if it was generated, {@code null} otherwise
+     * @param sdCard path of the SD card if it was generated together with the AVD, {@code null} otherwise
+     * @param timeoutInSeconds time the emulator has to exit in
+     */
+    EmulatorTeardown(AndroidEmulator emulator, String serialNumber, ProcessExecutor executor, AndroidSDK sdk,
+        String avdName, String sdCard, long timeoutInSeconds) {
+        this.emulator = emulator;
+        this.serialNumber = serialNumber;
+        this.executor = executor;
+        this.sdk = sdk;
+        this.avdName = avdName;
+        this.sdCard = sdCard;
+        this.timeoutInSeconds = timeoutInSeconds;
+    }
+
+    @Override
+    public void run() {
+        long started = System.nanoTime();
+        CountDownWatch countdown = new CountDownWatch(timeoutInSeconds, TimeUnit.SECONDS);
+        Process process = emulator.getProcess();
+        try {
+            exited = kill(process, executor, serialNumber, countdown);
+        } catch (AndroidExecutionException e) {
+            logger.log(Level.WARNING, "Unable to stop emulator " + serialNumber, e);
+            exited = hasExited(process);
+        }
+        if (exited) {
+            executor.removeShutdownHook(process);
+        }
+
+        // AVD of an emulator which is still running is in use, the deletion is waited for by the reaper when the JVM exits,
+        // so it is not killed half-way by the shutdown hook of the executor
+        if (avdName != null && exited) {
+            ProcessFuture<Integer> deleted = executor.onExit(executor.spawnAsyncWithoutShutdownHook(sdk.getAndroidPath(),
+                "delete", "avd", "-n", avdName));
+            // SD card does not depend on the AVD, it is deleted while the AVD is being deleted
+            deleteSdCard();
+            try {
+                if (deleted.get(Math.max(1L, countdown.timeLeft()), countdown.getTimeUnit()) == 0) {
+                    avdName = null;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                logger.log(Level.WARNING, "Unable to delete AVD " + avdName, e.getCause());
+            } catch (TimeoutException e) {
+                logger.log(Level.WARNING, "AVD {0} was not deleted in time", avdName);
+            }
+            executor.invalidateCachedResults();
+        }
+
+        emulator.releaseHostResources();
+        logger.log(Level.INFO, "Emulator {0} was torn down in the background in {1} ms{2}", new Object[] { serialNumber,
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started),
+            getLeftovers().isEmpty() ? "" : ", it left behind " + getLeftovers() });
+    }
+
+    @Override
+    public List<String> getLeftovers() {
+        List<String> leftovers = new ArrayList<String>();
+        if (!exited) {
+            leftovers.add("emulator " + serialNumber);
+        }
+        String avd = avdName;
+        if (avd != null) {
+            leftovers.add("AVD " + avd);
+        }
+        String card = sdCard;
+        if (card != null) {
+            leftovers.add("SD card " + card);
+        }
+        return leftovers;
+    }
+
+    /**
+     * Kills an emulator through its console and waits for the process to exit. The process is destroyed if the console
+     * rejects the kill or the emulator does not exit in time, it is given {@value #DESTROY_TIMEOUT_SECONDS} more seconds
+     * to exit then, so its AVD is not deleted while it is still in use.
+     *
+     * @param process process of the emulator
+     * @param executor executor the emulator was spawned by
+     * @param serialNumber serial number of the emulator
+     * @param countdown time the emulator has to exit in
+     * @return {@code true} if the process exited, {@code false} if it is still running
+     * @throws AndroidExecutionException if the device is not an emulator or the thread was interrupted
+     */
+    static boolean kill(Process process, ProcessExecutor executor, String serialNumber, CountDownWatch countdown)
+        throws AndroidExecutionException {
+        EmulatorConsole console;
+        try {
+            console = EmulatorConsole.forSerialNumber(serialNumber);
+        } catch (AndroidExecutionException e) {
+            process.destroy();
+            throw e;
+        }
+        return kill(process, executor, console, serialNumber, countdown);
+    }
+
+    static boolean kill(final Process process, ProcessExecutor executor, EmulatorConsole console,
+        final String serialNumber, CountDownWatch countdown) throws AndroidExecutionException {
+
+        ProcessFuture<Integer> exited = executor.onExit(process);
+        try {
+            final ProcessFuture<List<String>> killed = console.send("kill", countdown.timeLeft(),
+                countdown.getTimeUnit());
+            killed.addListener(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        killed.get();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } catch (ExecutionException e) {
+                        logger.warning("Unable to kill emulator " + serialNumber + " via its console, the process is "
+                            + "destroyed: " + e.getCause().getMessage());
+                        process.destroy();
+                    }
+                }
+            });
+            exited.get(countdown.timeLeft(), countdown.getTimeUnit());
+            return true;
+        } catch (TimeoutException e) {
+            logger.warning("Emulator " + serialNumber + " did not exit in time, the process is destroyed");
+            process.destroy();
+        } catch (ExecutionException e) {
+            process.destroy();
+        } catch (InterruptedException e) {
+            process.destroy();
+            Thread.currentThread().interrupt();
+            throw new AndroidExecutionException(e, "Unable to stop emulator {0}", serialNumber);
+        } catch (AndroidExecutionException e) {
+            process.destroy();
+            throw e;
+        }
+
+        try {
+            exited.get(DESTROY_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            return true;
+        } catch (TimeoutException e) {
+            logger.warning("Emulator " + serialNumber + " did not exit in " + DESTROY_TIMEOUT_SECONDS
+                + " seconds after its process was destroyed");
+            return false;
+        } catch (ExecutionException e) {
+            return hasExited(process);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AndroidExecutionException(e, "Unable to stop emulator {0}", serialNumber);
+        }
+    }
+
+    private void deleteSdCard() {
+        String card = sdCard;
+        if (card == null) {
+            return;
+        }
+        if (new File(card).delete()) {
+            sdCard = null;
+        } else {
+            logger.log(Level.INFO, "Unable to delete android SD card located at {0}", card);
+        }
+    }
+
+    private static boolean hasExited(Process process) {
+        try {
+            process.exitValue();
+            return true;
+        } catch (IllegalThreadStateException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.android.managed.impl;
+
+/**
+ * Histogram of non-negative values with buckets growing by powers of two.
+ *
+ * Exact count, sum, minimum and maximum are kept, percentiles are approximated by the upper bound of the bucket they fall
+ * into, so they are at most twice the exact value.
+ */
+public class Histogram {
+
+    private final long[] buckets = new long[Long.SIZE];
+
+    private long count;
+    private long sum;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+    /**
+     * Records a value, negative values are recorded as 0.
+     *
+     * @param value the value
+     */
+    public synchronized void record(long value) {
+        long recorded = Math.max(0L, value);
+        // bucket i holds values from 2^i to 2^(i+1) - 1, the first one holds 0 as well
+        buckets[recorded == 0 ? 0 : Long.SIZE - 1 - Long.numberOfLeadingZeros(recorded)]++;
+        count++;
+        sum += recorded;
+        min = Math.min(min, recorded);
+        max = Math.max(max, recorded);
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized long getSum() {
+        return sum;
+    }
+
+    /**
+     * @return the smallest recorded value, 0 if there is none
+     */
+    public synchronized long getMin() {
+        return count == 0 ? 0L : min;
+    }
+
+    public synchronized long getMax() {
+        return max;
+    }
+
+    /**
+     * @return mean of the recorded values, 0 if there is none
+     */
+    public synchronized double getMean() {
+        return count == 0 ? 0.0 : (double) sum / count;
+    }
+
+    /**
+     * Returns an approximation of a percentile.
+     *
+     * @param percentile percentile between 0 and 100
+     * @return upper bound of the bucket the percentile falls into, limited by the maximal value
+     */
+    public synchronized long getPercentile(double percentile) {
+        if (percentile < 0.0 || percentile > 100.0) {
+            throw new IllegalArgumentException("Percentile has to be between 0 and 100, was " + percentile);
+        }
+        if (count == 0) {
+            return 0L;
+        }
+
+        long rank = Math.max(1L, (long) Math.ceil(percentile / 100.0 * count));
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= rank) {
+                long upperBound = i >= Long.SIZE - 2 ? Long.MAX_VALUE : (1L << (i + 1)) - 1;
+                return Math.max(getMin(), Math.min(upperBound, max));
+            }
+        }
+        return max;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.android.managed.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Exclusive lock of a resource of the host shared by all the JVMs, e.g. a port or a processor core. The lock is a locked
+ * file, it is held until it is released or the JVM exits.
+ */
+class HostLock {
+
+    private static final Logger logger = Logger.getLogger(HostLock.class.getName());
+
+    // a file locked by this JVM must not be opened again, closing it would release the lock on some systems
+    private static final Set<File> LOCKED = new HashSet<File>();
+
+    private final File file;
+    private final RandomAccessFile lockFile;
+    private final FileLock lock;
+
+    // guarded by LOCKED, the file may be locked by another container of this JVM once this lock is released
+    private boolean released;
+
+    private HostLock(File file, RandomAccessFile lockFile, FileLock lock) {
+        this.file = file;
+        this.lockFile = lockFile;
+        this.lock = lock;
+    }
+
+    /**
+     * Locks a file unless it is locked by this or another JVM.
+     *
+     * @param file the file, it is created if it does not exist
+     * @return the lock or {@code null} if the file is locked already
+     */
+    static HostLock tryLock(File file) {
+        file = file.getAbsoluteFile();
+        RandomAccessFile lockFile = null;
+        synchronized (LOCKED) {
+            if (LOCKED.contains(file)) {
+                return null;
+            }
+            try {
+                lockFile = new RandomAccessFile(file, "rw");
+                FileLock lock = lockFile.getChannel().tryLock();
+                if (lock != null) {
+                    // owner of the lock helps to find out who holds the resource
+                    lockFile.setLength(0);
+                    lockFile.writeBytes(ManagementFactory.getRuntimeMXBean().getName() + "\n");
+                    LOCKED.add(file);
+                    return new HostLock(file, lockFile, lock);
+                }
+            } catch (OverlappingFileLockException e) {
+                // locked by this JVM
+            } catch (IOException e) {
+                logger.log(Level.FINE, "Unable to lock " + file, e);
+            }
+        }
+        close(lockFile);
+        return null;
+    }
+
+    /**
+     * Releases the lock. Releasing a released lock has no effect.
+     */
+    void release() {
+        synchronized (LOCKED) {
+            if (released) {
+                return;
+            }
+            released = true;
+            if (lock.isValid()) {
+                try {
+                    lock.release();
+                } catch (IOException e) {
+                    logger.log(Level.FINE, "Unable to release lock " + file, e);
+                }
+            }
+            close(lockFile);
+            LOCKED.remove(file);
+        }
+    }
+
+    private static void close(RandomAccessFile file) {
+        if (file != null) {
+            try {
+                file.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+}
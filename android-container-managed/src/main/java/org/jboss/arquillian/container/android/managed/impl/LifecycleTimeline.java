@@ -0,0 +1,142 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.android.managed.impl;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timeline of the phases a container goes through while it starts an emulator, e.g. creation of the AVD or the boot.
+ *
+ * A phase is recorded once it ends, its start is measured by {@link System#nanoTime()}, so the timeline is not affected by
+ * changes of the system clock.
+ */
+public class LifecycleTimeline {
+
+    /**
+     * Suffix of files the timeline is written to.
+     */
+    public static final String FILE_SUFFIX = ".timings";
+
+    private final long origin = System.nanoTime();
+    private final long startedAt = System.currentTimeMillis();
+
+    private final List<Phase> phases = new ArrayList<Phase>();
+
+    private String profile;
+
+    /**
+     * Records a phase which ends now.
+     *
+     * @param name name of the phase
+     * @param started {@link System#nanoTime()} the phase was started at
+     * @return {@link System#nanoTime()} the phase ended at, the start of a phase which follows right after
+     */
+    public synchronized long record(String name, long started) {
+        long ended = System.nanoTime();
+        phases.add(new Phase(name, started - origin, ended - started));
+        return ended;
+    }
+
+    /**
+     * Returns the emulator profile the emulator was started with.
+     *
+     * @return name of the profile or {@code null} if the emulator was started without a profile
+     */
+    public synchronized String getProfile() {
+        return profile;
+    }
+
+    public synchronized void setProfile(String profile) {
+        this.profile = profile;
+    }
+
+    /**
+     * Returns durations of the recorded phases.
+     *
+     * @return durations in nanoseconds by the phase, in the order the phases were recorded in
+     */
+    public synchronized Map<String, Long> getDurations() {
+        Map<String, Long> durations = new LinkedHashMap<String, Long>();
+        for (Phase phase : phases) {
+            durations.put(phase.name, phase.duration);
+        }
+        return durations;
+    }
+
+    /**
+     * Writes the timeline to a new file in a directory. Every line of the file is a phase, it consists of tab separated name
+     * of the phase, its start in milliseconds since the start of the container and its duration in milliseconds. The
+     * emulator profile, if any, is written in a comment above the phases.
+     *
+     * @param directory the directory, it is created if it does not exist
+     * @param avdName name of the AVD, it is a part of the file name
+     * @return the file
+     * @throws IOException if the file can not be written
+     */
+    public synchronized File write(File directory, String avdName) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+            throw new IOException("Unable to create directory " + directory);
+        }
+        File file = new File(directory, avdName + "-" + startedAt + FILE_SUFFIX);
+        FileWriter writer = new FileWriter(file);
+        try {
+            if (profile != null) {
+                writer.write("# profile\t" + profile + "\n");
+            }
+            writer.write("# phase\tstartMillis\tdurationMillis\n");
+            for (Phase phase : phases) {
+                writer.write(phase.name + "\t" + TimeUnit.NANOSECONDS.toMillis(phase.start) + "\t"
+                    + TimeUnit.NANOSECONDS.toMillis(phase.duration) + "\n");
+            }
+        } finally {
+            writer.close();
+        }
+        return file;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Phase phase : phases) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(phase.name).append(" ").append(TimeUnit.NANOSECONDS.toMillis(phase.duration)).append(" ms");
+        }
+        return sb.toString();
+    }
+
+    private static class Phase {
+
+        private final String name;
+        private final long start;
+        private final long duration;
+
+        Phase(String name, long start, long duration) {
+            this.name = name;
+            this.start = start;
+            this.duration = duration;
+        }
+    }
+}
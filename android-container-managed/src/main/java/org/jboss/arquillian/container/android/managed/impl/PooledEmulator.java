@@ -0,0 +1,211 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.android.managed.impl;
+
+import java.util.Properties;
+
+/**
+ * An emulator kept running in {@link EmulatorPool} between runs of containers.
+ */
+public class PooledEmulator {
+
+    private final String serialNumber;
+    private final String avdName;
+    private final String apiLevel;
+    private final String abi;
+    private final boolean generated;
+
+    private long idleSince;
+
+    // held while the emulator is leased
+    private HostLock lease;
+
+    // held by this JVM while the emulator runs, even while it is idle in the pool
+    private EmulatorAdmission.Ticket admission;
+
+    private EmulatorCoreAllocator.Cores cores;
+
+    /**
+     *
+     * @param serialNumber serial number of the emulator, e.g. emulator-5554
+     * @param avdName name of the AVD the emulator runs
+     * @param apiLevel API level of the AVD
+     * @param abi ABI of the AVD, {@code null} for the default one
+     * @param generated whether the AVD was generated and is deleted when the emulator is evicted
+     */
+    public PooledEmulator(String serialNumber, String avdName, String apiLevel, String abi, boolean generated) {
+        this.serialNumber = serialNumber;
+        this.avdName = avdName;
+        this.apiLevel = apiLevel;
+        this.abi = abi;
+        this.generated = generated;
+    }
+
+    public String getSerialNumber() {
+        return serialNumber;
+    }
+
+    public String getAvdName() {
+        return avdName;
+    }
+
+    public String getApiLevel() {
+        return apiLevel;
+    }
+
+    public String getAbi() {
+        return abi;
+    }
+
+    public boolean isGenerated() {
+        return generated;
+    }
+
+    /**
+     * @return time in milliseconds since the epoch the emulator was returned to the pool at
+     */
+    public long getIdleSince() {
+        return idleSince;
+    }
+
+    /**
+     * Returns admission of the emulator to the host.
+     *
+     * @return the admission or {@code null} if the emulator was not admitted by this JVM
+     */
+    public EmulatorAdmission.Ticket getAdmission() {
+        return admission;
+    }
+
+    public void setAdmission(EmulatorAdmission.Ticket admission) {
+        this.admission = admission;
+    }
+
+    /**
+     * Returns processor cores the emulator is pinned to.
+     *
+     * @return the cores or {@code null} if the cores were not allocated by this JVM
+     */
+    public EmulatorCoreAllocator.Cores getCores() {
+        return cores;
+    }
+
+    public void setCores(EmulatorCoreAllocator.Cores cores) {
+        this.cores = cores;
+    }
+
+    /**
+     * Takes over host resources held for the emulator by another instance of it.
+     *
+     * @param other the other instance or {@code null}
+     */
+    void takeHostResources(PooledEmulator other) {
+        if (other == null || other == this) {
+            return;
+        }
+        admission = other.admission;
+        other.admission = null;
+        cores = other.cores;
+        other.cores = null;
+    }
+
+    /**
+     * Releases host resources held for the emulator. Releasing released resources has no effect.
+     */
+    public void releaseHostResources() {
+        if (admission != null) {
+            admission.release();
+            admission = null;
+        }
+        if (cores != null) {
+            cores.release();
+            cores = null;
+        }
+    }
+
+    void setLease(HostLock lease) {
+        this.lease = lease;
+    }
+
+    /**
+     * Releases the lease of the emulator, if it is leased.
+     */
+    void releaseLease() {
+        if (lease != null) {
+            lease.release();
+            lease = null;
+        }
+    }
+
+    /**
+     * Checks whether the emulator can be leased by a container. A container which names its AVD gets an emulator of that
+     * AVD, a container which lets the AVD be generated gets an emulator of a generated AVD of the same API level and ABI.
+     *
+     * @param avdName name of the AVD or {@code null} if it is generated
+     * @param apiLevel API level of the AVD
+     * @param abi ABI of the AVD or {@code null} for the default one
+     * @return {@code true} if the emulator matches
+     */
+    public boolean matches(String avdName, String apiLevel, String abi) {
+        if (avdName != null) {
+            return avdName.equals(this.avdName);
+        }
+        return generated && equal(apiLevel, this.apiLevel) && equal(abi, this.abi);
+    }
+
+    Properties toProperties(long idleSince) {
+        Properties properties = new Properties();
+        properties.setProperty("serialNumber", serialNumber);
+        properties.setProperty("avdName", avdName);
+        setIfNotNull(properties, "apiLevel", apiLevel);
+        setIfNotNull(properties, "abi", abi);
+        properties.setProperty("generated", String.valueOf(generated));
+        properties.setProperty("idleSince", String.valueOf(idleSince));
+        return properties;
+    }
+
+    static PooledEmulator fromProperties(Properties properties) {
+        String serialNumber = properties.getProperty("serialNumber");
+        String avdName = properties.getProperty("avdName");
+        if (serialNumber == null || avdName == null) {
+            return null;
+        }
+        PooledEmulator emulator = new PooledEmulator(serialNumber, avdName, properties.getProperty("apiLevel"),
+            properties.getProperty("abi"), Boolean.parseBoolean(properties.getProperty("generated")));
+        try {
+            emulator.idleSince = Long.parseLong(properties.getProperty("idleSince", "0"));
+        } catch (NumberFormatException e) {
+            emulator.idleSince = 0L;
+        }
+        return emulator;
+    }
+
+    private static void setIfNotNull(Properties properties, String key, String value) {
+        if (value != null) {
+            properties.setProperty(key, value);
+        }
+    }
+
+    private static boolean equal(String first, String second) {
+        return first == null ? second == null : first.equals(second);
+    }
+
+    @Override
+    public String toString() {
+        return serialNumber + " (" + avdName + ")";
+    }
+}
@@ -16,28 +16,29 @@
  */
 package org.jboss.arquillian.container.android.managed.impl;
 
-import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.jboss.arquillian.container.android.managed.configuration.ExecutorStrategy;
+
 /**
  * Executor service which is able to execute external process as well as callables
  *
@@ -46,14 +47,75 @@ import java.util.logging.Logger;
  */
 public class ProcessExecutor {
 
-    private final ShutDownThreadHolder shutdownThreads;
+    private static final Logger logger = Logger.getLogger(ProcessExecutor.class.getName());
+
+    /**
+     * Number of lines kept from the output of a spawned process by default.
+     */
+    public static final int DEFAULT_TAIL_LINES = 100;
+
+    /**
+     * Number of characters kept from the output of a spawned process by default.
+     */
+    public static final long DEFAULT_TAIL_SIZE = 16L * 1024;
+
+    private final ProcessSupervisor supervisor;
+    private final ProcessMetrics metrics = new ProcessMetrics();
+    private final ProcessResultCache resultCache;
     private final ExecutorService service;
-    private final ScheduledExecutorService scheduledService;
 
+    // exits of processes which are awaited, a process is waited for once however many callers await it
+    private final Map<Process, ProcessFuture<Integer>> exits = new IdentityHashMap<Process, ProcessFuture<Integer>>();
+
+    /**
+     * Creates an executor running its tasks on pooled platform threads.
+     */
     public ProcessExecutor() {
-        this.shutdownThreads = new ShutDownThreadHolder();
-        this.service = Executors.newCachedThreadPool();
-        this.scheduledService = Executors.newScheduledThreadPool(1);
+        this(ExecutorStrategy.PLATFORM);
+    }
+
+    /**
+     * Creates an executor running its tasks on threads created by {@code strategy}.
+     *
+     * @param strategy strategy of creating threads
+     */
+    public ProcessExecutor(ExecutorStrategy strategy) {
+        this(strategy, null);
+    }
+
+    /**
+     * Creates an executor running its tasks on threads created by {@code strategy} which caches outputs of read-only
+     * commands executed by {@link #executeCached(Collection, String...)}.
+     *
+     * @param strategy strategy of creating threads
+     * @param resultCache cache of outputs of read-only commands, {@code null} disables caching
+     */
+    public ProcessExecutor(ExecutorStrategy strategy, ProcessResultCache resultCache) {
+        this.supervisor = new ProcessSupervisor();
+        this.service = strategy.createService();
+        this.resultCache = resultCache;
+    }
+
+    /**
+     * Stops accepting new tasks. Tasks already submitted, e.g. consumers of output of processes which are still running,
+     * are allowed to finish. Processes which are still running are killed when the JVM exits.
+     */
+    public void shutdown() {
+        service.shutdown();
+        supervisor.close();
+    }
+
+    /**
+     * Returns execution metrics of all commands run by this executor.
+     *
+     * @return metrics aggregated per executable
+     */
+    public ProcessMetrics getMetrics() {
+        return metrics;
+    }
+
+    ProcessSupervisor getSupervisor() {
+        return supervisor;
     }
 
     /**
@@ -67,7 +129,21 @@ public class ProcessExecutor {
     }
 
     /**
-     * Schedules a callable to be executed in regular intervals
+     * Starts callable asynchronously.
+     *
+     * @param callable to be executed
+     * @return future further steps can be chained to
+     */
+    public <T> ProcessFuture<T> start(Callable<T> callable) {
+        ProcessFuture<T> future = new ProcessFuture<T>(service, callable);
+        service.execute(future);
+        return future;
+    }
+
+    /**
+     * Executes a callable in regular intervals until it returns {@code true}. The callable is executed by the calling
+     * thread, so no task is left behind when the timeout elapses. Prefer {@link SignalledCondition} when there is an
+     * observer able to signal the change.
      *
      * @param callable Callable
      * @param timeout Total timeout
@@ -80,28 +156,12 @@ public class ProcessExecutor {
     public Boolean scheduleUntilTrue(Callable<Boolean> callable, long timeout, long step, TimeUnit unit)
         throws InterruptedException, ExecutionException {
 
-        CountDownWatch countdown = new CountDownWatch(timeout, unit);
-        while (countdown.timeLeft() > 0) {
-            // delay by step
-            ScheduledFuture<Boolean> future = scheduledService.schedule(callable, step, unit);
-            Boolean result = false;
-            try {
-                // wait for true up to timeLeft
-                // this means we might get less steps then timeout/step
-                result = future.get(countdown.timeLeft(), unit);
-                if (result == true) {
-                    return true;
-                }
-            } catch (TimeoutException e) {
-                continue;
-            }
-        }
-
-        return false;
+        long delay = Math.max(1L, unit.toMillis(step));
+        return new SignalledCondition(callable, delay, delay).await(timeout, unit);
     }
 
     /**
-     * Spawns a process defined by command. Process output is discarded.
+     * Spawns a process defined by command. Only a short tail of the process output is kept.
      *
      * @param command
      * @return spawned process
@@ -113,7 +173,7 @@ public class ProcessExecutor {
     }
 
     /**
-     * Spawns a process defined by command. Process output is discarded
+     * Spawns a process defined by command. Only a short tail of the process output is kept.
      *
      * @param command the command to be executed
      * @return spawned process
@@ -121,10 +181,156 @@ public class ProcessExecutor {
      * @throws ExecutionException
      */
     public Process spawn(String... command) throws InterruptedException, ExecutionException {
-        Future<Process> processFuture = service.submit(new SpawnedProcess(true, command));
-        Process process = processFuture.get();
-        service.submit(new ProcessOutputConsumer(new ProcessWithId(process, command[0])));
-        shutdownThreads.addHookFor(process);
+        return spawn(new ProcessOutputTail(DEFAULT_TAIL_LINES, DEFAULT_TAIL_SIZE), command);
+    }
+
+    /**
+     * Spawns a process defined by command. Process output is captured by {@code output} which is closed when the process
+     * closes its output.
+     *
+     * @param output bounded capture of the process output
+     * @param command the command to be executed
+     * @return spawned process
+     * @throws InterruptedException
+     * @throws ExecutionException
+     */
+    public Process spawn(ProcessOutputTail output, List<String> command) throws InterruptedException,
+        ExecutionException {
+        return spawn(output, command.toArray(new String[0]));
+    }
+
+    /**
+     * Spawns a process defined by command. Process output is captured by {@code output} which is closed when the process
+     * closes its output.
+     *
+     * @param output bounded capture of the process output
+     * @param command the command to be executed
+     * @return spawned process
+     * @throws InterruptedException
+     * @throws ExecutionException
+     */
+    public Process spawn(ProcessOutputTail output, String... command) throws InterruptedException, ExecutionException {
+        return spawn((ProcessOutputPump.LineHandler) output, command);
+    }
+
+    /**
+     * Spawns a process defined by command. Every line of the process output is passed to {@code output}.
+     *
+     * @param output handler of the process output
+     * @param command the command to be executed
+     * @return spawned process
+     * @throws InterruptedException
+     * @throws ExecutionException
+     */
+    Process spawn(ProcessOutputPump.LineHandler output, List<String> command) throws InterruptedException,
+        ExecutionException {
+        return spawn(output, command.toArray(new String[0]));
+    }
+
+    private Process spawn(ProcessOutputPump.LineHandler output, String... command) throws InterruptedException,
+        ExecutionException {
+        return spawnAsync(output, true, command).get();
+    }
+
+    /**
+     * Spawns a process defined by command without blocking the caller. Only a short tail of the process output is kept.
+     *
+     * @param command the command to be executed
+     * @return future of the spawned process
+     */
+    public ProcessFuture<Process> spawnAsync(String... command) {
+        return spawnAsync(new ProcessOutputTail(DEFAULT_TAIL_LINES, DEFAULT_TAIL_SIZE), command);
+    }
+
+    /**
+     * Spawns a process defined by command without blocking the caller. The process is not killed when the JVM exits, so
+     * it has to be waited for by a shutdown hook of its own, e.g. by {@link EmulatorReaper}. Only a short tail of the
+     * process output is kept.
+     *
+     * @param command the command to be executed
+     * @return future of the spawned process
+     */
+    public ProcessFuture<Process> spawnAsyncWithoutShutdownHook(String... command) {
+        return spawnAsync(new ProcessOutputTail(DEFAULT_TAIL_LINES, DEFAULT_TAIL_SIZE), false, command);
+    }
+
+    /**
+     * Spawns a process defined by command without blocking the caller. Process output is captured by {@code output}.
+     *
+     * @param output bounded capture of the process output
+     * @param command the command to be executed
+     * @return future of the spawned process
+     */
+    public ProcessFuture<Process> spawnAsync(ProcessOutputTail output, String... command) {
+        return spawnAsync((ProcessOutputPump.LineHandler) output, true, command);
+    }
+
+    private ProcessFuture<Process> spawnAsync(final ProcessOutputPump.LineHandler output, final boolean tracked,
+        final String... command) {
+        return start(new Callable<Process>() {
+            @Override
+            public Process call() throws Exception {
+                ProcessWithId process = spawnProcess(new SpawnedProcess(true, command), command);
+                service.submit(new ProcessOutputConsumer(process, Collections.<String, String> emptyMap(), output));
+                if (tracked) {
+                    supervisor.track(process.getProcess());
+                }
+                return process.getProcess();
+            }
+        });
+    }
+
+    /**
+     * Spawns a process defined by command. Both standard and error output of the process are redirected to {@code output}
+     * by the operating system, so no thread of this executor copies the output.
+     *
+     * @param output file the output is written to, it is truncated if it exists
+     * @param command the command to be executed
+     * @return spawned process
+     * @throws InterruptedException
+     * @throws ExecutionException
+     */
+    public Process spawn(File output, List<String> command) throws InterruptedException, ExecutionException {
+        return spawn(output, command.toArray(new String[0]));
+    }
+
+    /**
+     * Spawns a process defined by command. Both standard and error output of the process are redirected to {@code output}
+     * by the operating system, so no thread of this executor copies the output.
+     *
+     * @param output file the output is written to, it is truncated if it exists
+     * @param command the command to be executed
+     * @return spawned process
+     * @throws InterruptedException
+     * @throws ExecutionException
+     */
+    public Process spawn(File output, final String... command) throws InterruptedException, ExecutionException {
+        if (!FileRedirect.isSupported()) {
+            try {
+                return spawn(new FileOutputHandler(output), command);
+            } catch (IOException e) {
+                throw new ExecutionException(e);
+            }
+        }
+
+        final ProcessMetrics.Execution execution = metrics.start(command);
+        Future<Process> processFuture = service.submit(new SpawnedProcess(output, command));
+        final Process process = processFuture.get();
+        execution.spawned();
+        supervisor.track(process);
+
+        // nobody reads the output, so the exit is recorded once the process exits
+        final ProcessFuture<Integer> exit = onExit(process);
+        exit.addListener(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    execution.finished(exit.get());
+                } catch (Exception e) {
+                    logger.log(Level.FINE, "Unable to record exit of " + Arrays.asList(command), e);
+                }
+            }
+        });
 
         return process;
     }
@@ -139,56 +345,212 @@ public class ProcessExecutor {
      */
     public List<String> execute(Map<String, String> input, String... command) throws InterruptedException,
         ExecutionException {
-        Future<Process> processFuture = service.submit(new SpawnedProcess(true, command));
-        Process process = processFuture.get();
-        return service.submit(new ProcessOutputConsumer(new ProcessWithId(process, command[0]), input)).get();
+        return executeAsync(input, command).get();
     }
 
     /**
+     * Executes a process defined by command without blocking the caller, answering its prompts by {@code input}.
      *
-     * @param command
-     * @return pending results of the task
+     * @param input prompts of the process mapped to answers
+     * @param command the command to be executed
+     * @return future of the process output, completed when the process closes its output
+     */
+    public ProcessFuture<List<String>> executeAsync(final Map<String, String> input, final String... command) {
+        return start(new Callable<List<String>>() {
+            @Override
+            public List<String> call() throws Exception {
+                ProcessWithId process = spawnProcess(new SpawnedProcess(true, command), command);
+                List<String> output = new ArrayList<String>();
+                new ProcessOutputConsumer(process, input, collect(output)).call();
+                return output;
+            }
+        });
+    }
+
+    /**
+     * Executes a read-only command, e.g. a query of the SDK, or returns its cached output. The output is cached only if
+     * the command succeeded and it is used until any of the files the command reads changes or the cache is invalidated.
+     *
+     * @param inputs files and directories the output of the command depends on
+     * @param command the command to be executed
+     * @return output of the process
      * @throws InterruptedException
      * @throws ExecutionException
      */
-    public List<String> execute(String... command) throws InterruptedException, ExecutionException {
-        return execute(Collections.<String, String> emptyMap(), command);
+    public List<String> executeCached(Collection<File> inputs, final String... command) throws InterruptedException,
+        ExecutionException {
+        if (resultCache == null) {
+            return execute(command);
+        }
+
+        final List<String> key = Arrays.asList(command);
+        // fingerprint is taken before the command is run, so changes made meanwhile invalidate the output
+        final String fingerprint = ProcessResultCache.fingerprint(inputs);
+        List<String> cached = resultCache.get(key, fingerprint);
+        if (cached != null) {
+            logger.log(Level.FINE, "Using cached output of {0}", key);
+            return cached;
+        }
+
+        return start(new Callable<List<String>>() {
+            @Override
+            public List<String> call() throws Exception {
+                ProcessWithId process = spawnProcess(new SpawnedProcess(true, command), command);
+                List<String> output = new ArrayList<String>();
+                ProcessOutputConsumer consumer = new ProcessOutputConsumer(process,
+                    Collections.<String, String> emptyMap(), collect(output));
+                consumer.call();
+                if (consumer.getExitCode() == 0) {
+                    resultCache.put(key, fingerprint, output);
+                }
+                return output;
+            }
+        }).get();
     }
 
-    public ProcessExecutor removeShutdownHook(Process p) {
-        shutdownThreads.removeHookFor(p);
-        return this;
+    /**
+     * Discards cached outputs of read-only commands, e.g. after an AVD is created or deleted.
+     */
+    public void invalidateCachedResults() {
+        if (resultCache != null) {
+            resultCache.invalidate();
+        }
     }
 
-    private static class ShutDownThreadHolder {
+    /**
+     * Executes a process defined by command and interacts with it according to the script.
+     *
+     * @param script script of the interaction
+     * @param command the command to be executed
+     * @return output of the process
+     * @throws InterruptedException
+     * @throws ExecutionException if the process did not prompt in time or failed, the process is killed in that case
+     */
+    public List<String> execute(ProcessScript script, String... command) throws InterruptedException,
+        ExecutionException {
+        return executeAsync(script, command).get();
+    }
 
-        private final Map<Process, Thread> shutdownThreads;
+    /**
+     * Executes a process defined by command without blocking the caller and interacts with it according to the script.
+     *
+     * @param script script of the interaction
+     * @param command the command to be executed
+     * @return future of the process output, it fails if the process did not prompt in time or failed
+     */
+    public ProcessFuture<List<String>> executeAsync(final ProcessScript script, final String... command) {
+        return start(new Callable<List<String>>() {
+            @Override
+            public List<String> call() throws Exception {
+                ProcessWithId process = spawnProcess(new SpawnedProcess(true, command), command);
+                supervisor.track(process.getProcess());
+                ProcessInteraction interaction = new ProcessInteraction(process, process, script,
+                    process.getExecution());
+                service.submit(interaction);
+                return interaction.await();
+            }
+        });
+    }
+
+    /**
+     * Executes a process defined by command without blocking the caller.
+     *
+     * @param command the command to be executed
+     * @return future of the process output, completed when the process closes its output
+     */
+    public ProcessFuture<List<String>> executeAsync(String... command) {
+        return executeAsync(Collections.<String, String> emptyMap(), command);
+    }
 
-        public ShutDownThreadHolder() {
-            this.shutdownThreads = Collections.synchronizedMap(new HashMap<Process, Thread>());
+    /**
+     * Returns a future completed by the exit value of the process when it terminates. The future is shared by all callers
+     * awaiting the process, so it must not be cancelled. When the JVM reports exits of processes, no thread waits for the
+     * process, otherwise a single task waits for it.
+     *
+     * @param process the process
+     * @return future of the exit value
+     */
+    public ProcessFuture<Integer> onExit(final Process process) {
+        final ProcessFuture<Integer> exit;
+        synchronized (exits) {
+            ProcessFuture<Integer> awaited = exits.get(process);
+            if (awaited != null) {
+                return awaited;
+            }
+            exit = new ProcessFuture<Integer>(service);
+            exits.put(process, exit);
         }
 
-        public void addHookFor(final Process p) {
-            Thread shutdownThread = new Thread(new Runnable() {
-                @Override
-                public void run() {
-                    if (p != null) {
-                        p.destroy();
-                        try {
-                            p.waitFor();
-                        } catch (InterruptedException e) {
-                            throw new RuntimeException(e);
-                        }
-                    }
+        final Runnable exited = new Runnable() {
+            @Override
+            public void run() {
+                synchronized (exits) {
+                    exits.remove(process);
                 }
-            });
-            Runtime.getRuntime().addShutdownHook(shutdownThread);
-            shutdownThreads.put(p, shutdownThread);
+                try {
+                    exit.complete(process.waitFor());
+                } catch (InterruptedException e) {
+                    exit.fail(e);
+                }
+            }
+        };
+        if (!ProcessSupervisor.onExit(process, exited)) {
+            service.execute(exited);
         }
+        return exit;
+    }
 
-        public void removeHookFor(final Process p) {
-            shutdownThreads.remove(p);
-        }
+    /**
+     * Returns a future completed by the exit value of the process when it is spawned and terminates.
+     *
+     * @param process future of the spawned process
+     * @return future of the exit value
+     */
+    public ProcessFuture<Integer> onExit(ProcessFuture<Process> process) {
+        return process.thenCompose(new ProcessFuture.Step<Process, ProcessFuture<Integer>>() {
+            @Override
+            public ProcessFuture<Integer> apply(Process spawned) {
+                return onExit(spawned);
+            }
+        });
+    }
+
+    /**
+     *
+     * @param command
+     * @return pending results of the task
+     * @throws InterruptedException
+     * @throws ExecutionException
+     */
+    public List<String> execute(String... command) throws InterruptedException, ExecutionException {
+        return execute(Collections.<String, String> emptyMap(), command);
+    }
+
+    /**
+     * Stops tracking the process, so it is not killed when the JVM exits.
+     *
+     * @param p the process
+     * @return this executor
+     */
+    public ProcessExecutor removeShutdownHook(Process p) {
+        supervisor.untrack(p);
+        return this;
+    }
+
+    private ProcessWithId spawnProcess(SpawnedProcess spawnedProcess, String... command) throws Exception {
+        ProcessMetrics.Execution execution = metrics.start(command);
+        Process process = spawnedProcess.call();
+        execution.spawned();
+        return new ProcessWithId(process, command[0], execution);
+    }
+
+    private static ProcessOutputPump.LineHandler collect(final List<String> output) {
+        return new ProcessOutputPump.LineHandler() {
+            @Override
+            public void handle(String line) {
+                output.add(line);
+            }
+        };
     }
 
     private static class InputSanitizer {
@@ -208,102 +570,137 @@ public class ProcessExecutor {
 
         private final String[] command;
         private boolean redirectErrorStream;
+        private File output;
 
         public SpawnedProcess(boolean redirectErrorStream, String... command) {
             this.redirectErrorStream = redirectErrorStream;
             this.command = command;
         }
 
+        public SpawnedProcess(File output, String... command) {
+            this(true, command);
+            this.output = output;
+        }
+
         @Override
         public Process call() throws Exception {
             ProcessBuilder builder = new ProcessBuilder(InputSanitizer.sanitizeArguments(command));
             builder.redirectErrorStream(redirectErrorStream);
+            if (output != null) {
+                FileRedirect.redirectOutput(builder, output);
+            }
             return builder.start();
         }
 
     }
 
+    /**
+     * Redirects output of a process builder to a file. ProcessBuilder.Redirect is available since Java 7 only, so it is
+     * accessed reflectively.
+     */
+    private static class FileRedirect {
+
+        private static final Method REDIRECT_TO;
+        private static final Method REDIRECT_OUTPUT;
+
+        static {
+            Method redirectTo = null;
+            Method redirectOutput = null;
+            try {
+                Class<?> redirect = Class.forName("java.lang.ProcessBuilder$Redirect");
+                redirectTo = redirect.getMethod("to", File.class);
+                redirectOutput = ProcessBuilder.class.getMethod("redirectOutput", redirect);
+            } catch (Exception e) {
+                // running on Java 6
+            }
+            REDIRECT_TO = redirectTo;
+            REDIRECT_OUTPUT = redirectOutput;
+        }
+
+        public static boolean isSupported() {
+            return REDIRECT_OUTPUT != null;
+        }
+
+        public static void redirectOutput(ProcessBuilder builder, File file) throws Exception {
+            REDIRECT_OUTPUT.invoke(builder, REDIRECT_TO.invoke(null, file));
+        }
+    }
+
+    /**
+     * Writes the output of the process to a file, used when the output can not be redirected by the operating system.
+     */
+    private static class FileOutputHandler implements ProcessOutputPump.LineHandler, Closeable {
+
+        private final RotatingLogFile file;
+
+        public FileOutputHandler(File file) throws IOException {
+            this.file = new RotatingLogFile(file, Long.MAX_VALUE, 0);
+        }
+
+        @Override
+        public void handle(String line) {
+            try {
+                file.write(line);
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to write process output to " + file.getFile(), e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            file.close();
+        }
+    }
+
     /**
      * Runnable that consumes the output of the process.
      *
      * @author Stuart Douglas
      * @author Karel Piwko
      */
-    private static class ProcessOutputConsumer implements Callable<List<String>> {
+    private static class ProcessOutputConsumer implements Callable<Void> {
 
-        private static final Logger log = Logger.getLogger(ProcessOutputConsumer.class.getName());
-        private static final String NL = System.getProperty("line.separator");
-
-        private final Process process;
+        private final ProcessWithId process;
         private final Map<String, String> inputOutputMap;
+        private final ProcessOutputPump.LineHandler handler;
+        private int exitCode = -1;
 
-        public ProcessOutputConsumer(ProcessWithId process, Map<String, String> inputOutputMap) {
+        public ProcessOutputConsumer(ProcessWithId process, Map<String, String> inputOutputMap,
+            ProcessOutputPump.LineHandler handler) {
             this.process = process;
             this.inputOutputMap = inputOutputMap;
-        }
-
-        public ProcessOutputConsumer(ProcessWithId process) {
-            this(process, Collections.<String, String> emptyMap());
+            this.handler = handler;
         }
 
         @Override
-        public List<String> call() throws Exception {
-            final InputStream stream = process.getInputStream();
-            final BufferedReader reader = new BufferedReader(new InputStreamReader(stream));
-            final List<String> output = new ArrayList<String>();
+        public Void call() throws Exception {
+            ProcessOutputPump pump = new ProcessOutputPump(process, process.getInputStream(), process.getOutputStream(),
+                inputOutputMap);
 
+            final ProcessMetrics.Execution execution = process.getExecution();
             try {
-                // read character by character
-                int i;
-                StringBuilder line = new StringBuilder();
-                while ((i = reader.read()) != -1) {
-                    char c = (char) i;
-
-                    // add the character
-                    line.append(c);
-
-                    // check if we are have to respond with an input
-                    String key = line.toString();
-                    if (inputOutputMap.containsKey(key)) {
-
-                        if (log.isLoggable(Level.FINEST)) {
-                            log.log(Level.FINEST, "{0} outputs: {1}, responded with: ",
-                                new Object[] { process, line.toString(), inputOutputMap.get(key) });
-                        }
-                        OutputStream ostream = process.getOutputStream();
-                        ostream.write(inputOutputMap.get(key).getBytes());
-                        ostream.flush();
-
-                    }
-
-                    // save output
-                    // adb command writes its output with ends of lines as "\\n"
-                    // ignoring Windows conventions which recognize "\r\n" as the
-                    // end of the line
-                    if (line.indexOf("\n") != -1 || line.indexOf(NL) != -1) {
-                        String wholeLine = line.toString();
-                        if (log.isLoggable(Level.FINEST)) {
-                            log.log(Level.FINEST, "{0} outputs: {1}", new Object[] { process, wholeLine });
-                        } else if (wholeLine.toLowerCase().startsWith("error")) {
-                            log.log(Level.SEVERE, "{0} outputs: {1}", new Object[] { process, wholeLine });
-                        }
-                        output.add(wholeLine);
-                        line = new StringBuilder();
-                    }
-                }
-                if (line.length() > 1) {
-                    String wholeLine = line.toString();
-                    if (log.isLoggable(Level.FINEST)) {
-                        log.log(Level.FINEST, "{0} outputs: {1}", new Object[] { process, wholeLine });
-                    } else if (wholeLine.toLowerCase().startsWith("error")) {
-                        log.log(Level.SEVERE, "{0} outputs: {1}", new Object[] { process, wholeLine });
+                pump.pump(new ProcessOutputPump.LineHandler() {
+                    @Override
+                    public void handle(String line) {
+                        execution.line();
+                        handler.handle(line);
                     }
-                    output.add(wholeLine);
-                }
+                });
             } catch (IOException e) {
+            } finally {
+                if (handler instanceof Closeable) {
+                    ((Closeable) handler).close();
+                }
             }
 
-            return output;
+            // output is closed, so the process is exiting
+            exitCode = process.waitFor();
+            execution.finished(exitCode);
+            return null;
+        }
+
+        public int getExitCode() {
+            return exitCode;
         }
     }
 
@@ -317,10 +714,22 @@ public class ProcessExecutor {
 
         private final Process process;
         private final String id;
+        private final ProcessMetrics.Execution execution;
+        private final InputStream output;
 
-        public ProcessWithId(Process process, String id) {
+        public ProcessWithId(Process process, String id, ProcessMetrics.Execution execution) {
             this.id = id;
             this.process = process;
+            this.execution = execution;
+            this.output = execution.meter(process.getInputStream());
+        }
+
+        public Process getProcess() {
+            return process;
+        }
+
+        public ProcessMetrics.Execution getExecution() {
+            return execution;
         }
 
         @Override
@@ -330,7 +739,7 @@ public class ProcessExecutor {
 
         @Override
         public InputStream getInputStream() {
-            return process.getInputStream();
+            return output;
         }
 
         @Override
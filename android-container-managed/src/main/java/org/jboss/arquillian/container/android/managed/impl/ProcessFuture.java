@@ -0,0 +1,194 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.android.managed.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Future of an asynchronous operation of {@link ProcessExecutor} which further steps can be chained to. A chained step is
+ * executed by the executor as soon as this future completes, so no thread is blocked waiting for the result.
+ * @param <T> type of the result
+ */
+public class ProcessFuture<T> extends FutureTask<T> {
+
+    /**
+     * A step executed with the result of the previous one.
+     *
+     * @param <T> type of the result of the previous step
+     * @param <R> type of the result of this step
+     */
+    public interface Step<T, R> {
+
+        R apply(T result) throws Exception;
+    }
+
+    private final Executor executor;
+
+    private final List<Runnable> listeners = new ArrayList<Runnable>();
+
+    private boolean completed;
+
+    /**
+     * Creates a future which is completed by the callable when it is run.
+     *
+     * @param executor executor chained steps are executed by
+     * @param callable callable computing the result
+     */
+    public ProcessFuture(Executor executor, Callable<T> callable) {
+        super(callable);
+        this.executor = executor;
+    }
+
+    /**
+     * Creates a future which is completed explicitly by {@link #complete(Object)} or {@link #fail(Throwable)}.
+     *
+     * @param executor executor chained steps are executed by
+     */
+    public ProcessFuture(Executor executor) {
+        this(executor, new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                throw new IllegalStateException("Future is completed explicitly and can not be run.");
+            }
+        });
+    }
+
+    /**
+     * Completes the future with a result.
+     *
+     * @param result result
+     */
+    public void complete(T result) {
+        set(result);
+    }
+
+    /**
+     * Completes the future with a failure.
+     *
+     * @param cause cause of the failure
+     */
+    public void fail(Throwable cause) {
+        setException(cause);
+    }
+
+    /**
+     * Registers a listener which is run by the executor when this future completes, either successfully, by failure or by
+     * cancellation. If the future is already completed, the listener is scheduled immediately.
+     *
+     * @param listener listener
+     * @return this future
+     */
+    public ProcessFuture<T> addListener(Runnable listener) {
+        synchronized (listeners) {
+            if (!completed) {
+                listeners.add(listener);
+                return this;
+            }
+        }
+        executor.execute(listener);
+        return this;
+    }
+
+    /**
+     * Chains a step which transforms the result of this future.
+     *
+     * @param step step to be applied on the result
+     * @return future of the result of the step, it fails if either this future or the step fails
+     */
+    public <R> ProcessFuture<R> thenApply(final Step<? super T, R> step) {
+        final ProcessFuture<R> next = new ProcessFuture<R>(executor);
+        addListener(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    next.complete(step.apply(getNow()));
+                } catch (Throwable e) {
+                    next.fail(unwrap(e));
+                }
+            }
+        });
+        return next;
+    }
+
+    /**
+     * Chains a step which starts another asynchronous operation with the result of this future.
+     *
+     * @param step step starting the next operation
+     * @return future of the result of the operation started by the step
+     */
+    public <R> ProcessFuture<R> thenCompose(final Step<? super T, ProcessFuture<R>> step) {
+        final ProcessFuture<R> next = new ProcessFuture<R>(executor);
+        addListener(new Runnable() {
+            @Override
+            public void run() {
+                final ProcessFuture<R> started;
+                try {
+                    started = step.apply(getNow());
+                } catch (Throwable e) {
+                    next.fail(unwrap(e));
+                    return;
+                }
+                started.addListener(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            next.complete(started.getNow());
+                        } catch (Throwable e) {
+                            next.fail(unwrap(e));
+                        }
+                    }
+                });
+            }
+        });
+        return next;
+    }
+
+    @Override
+    protected void done() {
+        List<Runnable> toRun;
+        synchronized (listeners) {
+            completed = true;
+            toRun = new ArrayList<Runnable>(listeners);
+            listeners.clear();
+        }
+        for (Runnable listener : toRun) {
+            executor.execute(listener);
+        }
+    }
+
+    /**
+     * Gets result of the completed future.
+     */
+    private T getNow() throws InterruptedException, ExecutionException {
+        if (!isDone()) {
+            throw new IllegalStateException("Future is not completed yet.");
+        }
+        return get();
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        if (e instanceof ExecutionException && e.getCause() != null) {
+            return e.getCause();
+        }
+        return e;
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.android.managed.impl;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.jboss.arquillian.container.android.api.AndroidExecutionException;
+
+/**
+ * Single execution of a {@link ProcessScript} against a running process.
+ *
+ * The output is read by {@link #call()}, which answers the prompts and detects failures, while {@link #await()} enforces
+ * deadlines of the steps. When a deadline elapses or a failure is detected, the process is killed and the execution fails
+ * right away.
+ */
+class ProcessInteraction implements Callable<Void> {
+
+    private static final Logger log = Logger.getLogger(ProcessInteraction.class.getName());
+
+    // number of lines of the output included in failure messages
+    private static final int LAST_OUTPUT_LINES = 10;
+
+    private final Object id;
+    private final Process process;
+    private final List<ProcessScript.Step> steps;
+    private final List<Pattern> failures;
+    private final long completionTimeout;
+    private final ProcessMetrics.Execution execution;
+
+    private final Object lock = new Object();
+    private final List<String> output = new ArrayList<String>();
+    private int step;
+    private long stepStarted = System.nanoTime();
+    private boolean finished;
+    private AndroidExecutionException failure;
+
+    /**
+     *
+     * @param id identification of the process used in logs and messages
+     * @param process the process
+     * @param script script of the interaction
+     * @param execution record of the execution metrics
+     */
+    ProcessInteraction(Object id, Process process, ProcessScript script, ProcessMetrics.Execution execution) {
+        this.id = id;
+        this.process = process;
+        this.steps = script.getSteps();
+        this.failures = script.getFailures();
+        this.completionTimeout = script.getCompletionTimeout();
+        this.execution = execution;
+    }
+
+    /**
+     * Reads the output of the process until its end.
+     */
+    @Override
+    public Void call() {
+        Reader reader = new InputStreamReader(process.getInputStream());
+        OutputStream replies = process.getOutputStream();
+        char[] buffer = new char[ProcessOutputPump.BUFFER_SIZE];
+        StringBuilder line = new StringBuilder();
+        // beginning of the part of the line which was not matched by a prompt yet
+        int unmatched = 0;
+
+        try {
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                for (int i = 0; i < read; i++) {
+                    line.append(buffer[i]);
+                    if (buffer[i] == '\n') {
+                        String completed = line.toString();
+                        answer(completed, unmatched, replies);
+                        emit(completed);
+                        line.setLength(0);
+                        unmatched = 0;
+                    }
+                }
+                if (line.length() > 0) {
+                    unmatched = answer(line, unmatched, replies);
+                }
+            }
+            if (line.length() > 0) {
+                emit(line.toString());
+            }
+        } catch (IOException e) {
+            // the process was killed or closed its output
+            log.log(Level.FINE, "Reading output of " + id + " failed", e);
+        } finally {
+            synchronized (lock) {
+                finished = true;
+                lock.notifyAll();
+            }
+        }
+
+        try {
+            // output is closed, so the process is exiting
+            execution.finished(process.waitFor());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    /**
+     * Waits until the script is finished and the process closes its output.
+     *
+     * @return output of the process
+     * @throws InterruptedException if the waiting thread was interrupted, the process is killed
+     * @throws AndroidExecutionException if the process failed or did not prompt in time, the process is killed
+     */
+    List<String> await() throws InterruptedException, AndroidExecutionException {
+        try {
+            synchronized (lock) {
+                while (true) {
+                    if (failure != null) {
+                        throw failure;
+                    }
+
+                    ProcessScript.Step current = step < steps.size() ? steps.get(step) : null;
+                    if (finished) {
+                        while (current != null && current.isOptional()) {
+                            current = ++step < steps.size() ? steps.get(step) : null;
+                        }
+                        if (current != null) {
+                            throw new AndroidExecutionException(
+                                "{0} finished without prompting for ''{1}'', last output: {2}", id, current, lastOutput());
+                        }
+                        return new ArrayList<String>(output);
+                    }
+
+                    long timeout = current != null ? current.getTimeout() : completionTimeout;
+                    long remaining = timeout - (System.nanoTime() - stepStarted);
+                    if (remaining <= 0) {
+                        if (current != null && current.isOptional()) {
+                            advance(step + 1);
+                            continue;
+                        }
+                        throw new AndroidExecutionException(
+                            "{0} did not {1} within {2} ms, last output: {3}", id, current != null ? "prompt for '"
+                                + current + "'" : "finish", String.valueOf(TimeUnit.NANOSECONDS.toMillis(timeout)),
+                            lastOutput());
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+                }
+            }
+        } catch (InterruptedException e) {
+            process.destroy();
+            throw e;
+        } catch (AndroidExecutionException e) {
+            process.destroy();
+            throw e;
+        }
+    }
+
+    /**
+     * Answers the prompt of the current step, or of a following step if the current one is optional.
+     *
+     * @return beginning of the part of the line which was not matched yet
+     */
+    private int answer(CharSequence line, int unmatched, OutputStream replies) throws IOException {
+        synchronized (lock) {
+            for (int candidate = step; candidate < steps.size(); candidate++) {
+                ProcessScript.Step next = steps.get(candidate);
+                Matcher matcher = next.getPrompt().matcher(line);
+                if (matcher.find(unmatched)) {
+                    if (log.isLoggable(Level.FINEST)) {
+                        log.log(Level.FINEST, "{0} outputs: {1}, responded with: {2}", new Object[] { id, line,
+                            next.getAnswer() });
+                    }
+                    replies.write(next.getAnswer().getBytes());
+                    replies.flush();
+                    advance(candidate + 1);
+                    return matcher.end();
+                }
+                if (!next.isOptional()) {
+                    break;
+                }
+            }
+            return unmatched;
+        }
+    }
+
+    private void emit(String line) {
+        ProcessOutputPump.logLine(id, line);
+        execution.line();
+        synchronized (lock) {
+            output.add(line);
+            if (failure != null) {
+                return;
+            }
+            for (Pattern pattern : failures) {
+                if (pattern.matcher(line).find()) {
+                    failure = new AndroidExecutionException("{0} failed with: {1}", id, line.trim());
+                    lock.notifyAll();
+                    return;
+                }
+            }
+        }
+    }
+
+    private List<String> lastOutput() {
+        return new ArrayList<String>(output.subList(Math.max(0, output.size() - LAST_OUTPUT_LINES), output.size()));
+    }
+
+    private void advance(int next) {
+        step = next;
+        stepStarted = System.nanoTime();
+        lock.notifyAll();
+    }
+}
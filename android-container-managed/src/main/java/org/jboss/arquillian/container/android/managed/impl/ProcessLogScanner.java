@@ -0,0 +1,121 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.android.managed.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Incrementally reads lines appended to a log file a process writes its output to.
+ *
+ * Every scan maps only the part of the file which was appended since the previous scan, so scanning is cheap and no
+ * thread has to copy the output of the process while it is running.
+ */
+public class ProcessLogScanner {
+
+    private static final long MAX_MAPPED_REGION = 8L * 1024 * 1024;
+
+    private final Object id;
+    private final File file;
+
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private long position;
+
+    /**
+     *
+     * @param id identification of the process used in logs
+     * @param file log file of the process
+     */
+    public ProcessLogScanner(Object id, File file) {
+        this.id = id;
+        this.file = file;
+    }
+
+    /**
+     * Passes all complete lines appended to the log since the last scan to {@code handler}. Lines starting with "error"
+     * are logged.
+     *
+     * @param handler handler of the lines
+     * @return number of lines read
+     * @throws IOException if the log can not be read
+     */
+    synchronized int scan(ProcessOutputPump.LineHandler handler) throws IOException {
+        if (!file.exists()) {
+            return 0;
+        }
+
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            if (size < position) {
+                // log was truncated, start from the beginning
+                position = 0;
+                pending.reset();
+            }
+
+            int lines = 0;
+            while (position < size) {
+                long length = Math.min(size - position, MAX_MAPPED_REGION);
+                MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                lines += split(region, handler);
+                position += length;
+            }
+            return lines;
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Returns the log file.
+     *
+     * @return log file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    private int split(MappedByteBuffer region, ProcessOutputPump.LineHandler handler) {
+        byte[] chunk = new byte[ProcessOutputPump.BUFFER_SIZE];
+        int lines = 0;
+        while (region.hasRemaining()) {
+            int length = Math.min(chunk.length, region.remaining());
+            region.get(chunk, 0, length);
+
+            int lineStart = 0;
+            for (int i = 0; i < length; i++) {
+                if (chunk[i] == '\n') {
+                    pending.write(chunk, lineStart, i - lineStart + 1);
+                    lineStart = i + 1;
+
+                    String line = pending.toString();
+                    pending.reset();
+                    ProcessOutputPump.logLine(id, line);
+                    handler.handle(line);
+                    lines++;
+                }
+            }
+            pending.write(chunk, lineStart, length - lineStart);
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.android.managed.impl;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Execution metrics of commands run by {@link ProcessExecutor}, aggregated per executable.
+ *
+ * For every executable, e.g. {@code adb}, {@code android} or {@code emulator}, it records histograms of spawn latency, time
+ * to the first byte of output, total wall time, bytes and lines of output and counts of exit codes. Times are recorded in
+ * nanoseconds.
+ */
+public class ProcessMetrics {
+
+    private final Map<String, CommandStatistics> statistics = new TreeMap<String, CommandStatistics>();
+
+    /**
+     * Returns statistics of all executables which were run.
+     *
+     * @return statistics mapped by name of the executable
+     */
+    public synchronized Map<String, CommandStatistics> getStatistics() {
+        return Collections.unmodifiableMap(new TreeMap<String, CommandStatistics>(statistics));
+    }
+
+    /**
+     * Returns statistics of an executable.
+     *
+     * @param executable name of the executable without its path and extension, e.g. "adb"
+     * @return statistics or {@code null} if the executable was not run
+     */
+    public synchronized CommandStatistics getStatistics(String executable) {
+        return statistics.get(executable);
+    }
+
+    /**
+     * Starts recording an execution of a command.
+     *
+     * @param command the command
+     * @return record of the execution
+     */
+    Execution start(String... command) {
+        return new Execution(statisticsOf(executableName(command.length > 0 ? command[0] : null)));
+    }
+
+    private synchronized CommandStatistics statisticsOf(String executable) {
+        CommandStatistics commandStatistics = statistics.get(executable);
+        if (commandStatistics == null) {
+            commandStatistics = new CommandStatistics();
+            statistics.put(executable, commandStatistics);
+        }
+        return commandStatistics;
+    }
+
+    static String executableName(String path) {
+        if (path == null || path.length() == 0) {
+            return "unknown";
+        }
+        String name = new File(path).getName();
+        int extension = name.lastIndexOf('.');
+        return extension > 0 ? name.substring(0, extension) : name;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, CommandStatistics> entry : getStatistics().entrySet()) {
+            sb.append("\n").append(entry.getKey()).append(entry.getValue());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Aggregated metrics of a single executable.
+     */
+    public static class CommandStatistics {
+
+        private final Histogram spawnLatency = new Histogram();
+        private final Histogram timeToFirstByte = new Histogram();
+        private final Histogram wallTime = new Histogram();
+        private final Histogram bytes = new Histogram();
+        private final Histogram lines = new Histogram();
+        private final Map<Integer, Long> exitCodes = new TreeMap<Integer, Long>();
+
+        /**
+         * @return time from the request to spawn the process until it was started
+         */
+        public Histogram getSpawnLatency() {
+            return spawnLatency;
+        }
+
+        /**
+         * @return time from the request to spawn the process until it wrote the first byte of output
+         */
+        public Histogram getTimeToFirstByte() {
+            return timeToFirstByte;
+        }
+
+        /**
+         * @return time from the request to spawn the process until it exited
+         */
+        public Histogram getWallTime() {
+            return wallTime;
+        }
+
+        public Histogram getBytes() {
+            return bytes;
+        }
+
+        public Histogram getLines() {
+            return lines;
+        }
+
+        /**
+         * @return number of executions mapped by their exit code
+         */
+        public synchronized Map<Integer, Long> getExitCodes() {
+            return Collections.unmodifiableMap(new TreeMap<Integer, Long>(exitCodes));
+        }
+
+        private synchronized void exited(int exitCode) {
+            Long count = exitCodes.get(exitCode);
+            exitCodes.put(exitCode, count == null ? 1L : count + 1);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("\n\truns\t\t:").append(wallTime.getCount()).append(", exit codes ").append(getExitCodes());
+            appendTime(sb, "spawn\t\t", spawnLatency);
+            appendTime(sb, "firstByte\t", timeToFirstByte);
+            appendTime(sb, "wallTime\t", wallTime);
+            sb.append("\n\tbytes\t\t:total ").append(bytes.getSum()).append(", max ").append(bytes.getMax());
+            sb.append("\n\tlines\t\t:total ").append(lines.getSum()).append(", max ").append(lines.getMax());
+            return sb.toString();
+        }
+
+        private static void appendTime(StringBuilder sb, String name, Histogram histogram) {
+            sb.append("\n\t").append(name).append(":min ").append(millis(histogram.getMin()))
+                .append(" ms, p50 ").append(millis(histogram.getPercentile(50)))
+                .append(" ms, p90 ").append(millis(histogram.getPercentile(90)))
+                .append(" ms, max ").append(millis(histogram.getMax()))
+                .append(" ms, total ").append(millis(histogram.getSum())).append(" ms");
+        }
+
+        private static long millis(long nanos) {
+            return TimeUnit.NANOSECONDS.toMillis(nanos);
+        }
+    }
+
+    /**
+     * Record of a single execution of a command. The statistics are updated when the execution finishes.
+     */
+    static class Execution {
+
+        private final CommandStatistics statistics;
+        private final long started = System.nanoTime();
+
+        private volatile long firstByte;
+        private volatile long bytes;
+        private volatile long lines;
+        private boolean finished;
+
+        Execution(CommandStatistics statistics) {
+            this.statistics = statistics;
+        }
+
+        /**
+         * Records that the process was started.
+         */
+        void spawned() {
+            statistics.getSpawnLatency().record(System.nanoTime() - started);
+        }
+
+        /**
+         * Wraps the output of the process in order to count its bytes and time to the first one.
+         *
+         * @param output output of the process
+         * @return metered output
+         */
+        InputStream meter(InputStream output) {
+            return new FilterInputStream(output) {
+                @Override
+                public int read() throws IOException {
+                    int read = super.read();
+                    if (read != -1) {
+                        received(1);
+                    }
+                    return read;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    int read = super.read(b, off, len);
+                    if (read > 0) {
+                        received(read);
+                    }
+                    return read;
+                }
+            };
+        }
+
+        /**
+         * Records a line of output.
+         */
+        void line() {
+            lines++;
+        }
+
+        /**
+         * Records exit of the process, only the first call has any effect.
+         *
+         * @param exitCode exit code of the process
+         */
+        synchronized void finished(int exitCode) {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            statistics.getWallTime().record(System.nanoTime() - started);
+            if (firstByte != 0) {
+                statistics.getTimeToFirstByte().record(firstByte - started);
+            }
+            statistics.getBytes().record(bytes);
+            statistics.getLines().record(lines);
+            statistics.exited(exitCode);
+        }
+
+        private void received(int count) {
+            // output is read by a single thread
+            if (bytes == 0) {
+                firstByte = System.nanoTime();
+            }
+            bytes += count;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.android.managed.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reads the output of a process in bulk, splits it into lines and answers prompts found in the output.
+ *
+ * All prompts are matched at once by {@link PromptAutomaton}. A prompt is answered when the current line, read from its
+ * beginning, is equal to the prompt, so the pump can answer questions which are not terminated by a new line.
+ */
+class ProcessOutputPump {
+
+    private static final Logger log = Logger.getLogger(ProcessOutputPump.class.getName());
+
+    static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Receives lines read from the process output.
+     */
+    interface LineHandler {
+
+        /**
+         * @param line line including its line terminator, if there was any
+         */
+        void handle(String line);
+    }
+
+    private final Object id;
+    private final InputStream input;
+    private final OutputStream replies;
+    private final Map<String, String> inputOutputMap;
+    private final PromptAutomaton prompts;
+
+    /**
+     *
+     * @param id identification of the process used in logs
+     * @param input output of the process
+     * @param replies input of the process where answers to the prompts are written to
+     * @param inputOutputMap prompts mapped to answers
+     */
+    ProcessOutputPump(Object id, InputStream input, OutputStream replies, Map<String, String> inputOutputMap) {
+        this.id = id;
+        this.input = input;
+        this.replies = replies;
+        this.inputOutputMap = inputOutputMap;
+        this.prompts = new PromptAutomaton(inputOutputMap.keySet());
+    }
+
+    /**
+     * Pumps the output until the end of the stream is reached.
+     *
+     * @param handler handler of the lines
+     * @throws IOException if reading the output or writing an answer failed
+     */
+    void pump(LineHandler handler) throws IOException {
+        final Reader reader = new InputStreamReader(input);
+        final char[] buffer = new char[BUFFER_SIZE];
+        final StringBuilder line = new StringBuilder();
+
+        int state = PromptAutomaton.ROOT;
+        int read;
+        while ((read = reader.read(buffer)) != -1) {
+            int lineStart = 0;
+            for (int i = 0; i < read; i++) {
+                char c = buffer[i];
+
+                if (!prompts.isEmpty()) {
+                    state = prompts.next(state, c);
+                    String prompt = prompts.matchOfLength(state, line.length() + i - lineStart + 1);
+                    if (prompt != null) {
+                        line.append(buffer, lineStart, i - lineStart + 1);
+                        lineStart = i + 1;
+                        reply(prompt, line);
+                    }
+                }
+
+                // adb command writes its output with ends of lines as "\\n"
+                // ignoring Windows conventions which recognize "\r\n" as the
+                // end of the line
+                if (c == '\n') {
+                    line.append(buffer, lineStart, i - lineStart + 1);
+                    lineStart = i + 1;
+                    emit(line.toString(), handler);
+                    line.setLength(0);
+                    state = PromptAutomaton.ROOT;
+                }
+            }
+            line.append(buffer, lineStart, read - lineStart);
+        }
+
+        if (line.length() > 1) {
+            emit(line.toString(), handler);
+        }
+    }
+
+    private void reply(String prompt, CharSequence line) throws IOException {
+        String answer = inputOutputMap.get(prompt);
+        if (log.isLoggable(Level.FINEST)) {
+            log.log(Level.FINEST, "{0} outputs: {1}, responded with: {2}", new Object[] { id, line, answer });
+        }
+        replies.write(answer.getBytes());
+        replies.flush();
+    }
+
+    private void emit(String wholeLine, LineHandler handler) {
+        logLine(id, wholeLine);
+        handler.handle(wholeLine);
+    }
+
+    /**
+     * Logs a line of the process output, lines starting with "error" are always logged.
+     *
+     * @param id identification of the process
+     * @param line line of the output
+     */
+    static void logLine(Object id, String line) {
+        if (log.isLoggable(Level.FINEST)) {
+            log.log(Level.FINEST, "{0} outputs: {1}", new Object[] { id, line });
+        } else if (line.regionMatches(true, 0, "error", 0, 5)) {
+            log.log(Level.SEVERE, "{0} outputs: {1}", new Object[] { id, line });
+        }
+    }
+}
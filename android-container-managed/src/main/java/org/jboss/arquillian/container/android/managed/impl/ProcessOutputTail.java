@@ -0,0 +1,152 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.android.managed.impl;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the last lines of a process output in a fixed-size ring buffer, so the output of long living processes does not
+ * consume more and more memory. The whole output can be optionally spilled to a rotating log file.
+ */
+public class ProcessOutputTail implements ProcessOutputPump.LineHandler, Closeable {
+
+    private static final Logger logger = Logger.getLogger(ProcessOutputTail.class.getName());
+
+    /**
+     * Number of rotated log files kept besides the current one.
+     */
+    public static final int LOG_BACKUPS = 3;
+
+    private final String[] lines;
+    private final long maxSize;
+
+    private int head;
+    private int count;
+    private long size;
+
+    private RotatingLogFile spill;
+
+    /**
+     * Creates a tail which is not spilled to any file.
+     *
+     * @param maxLines maximal number of lines kept
+     * @param maxSize maximal number of characters kept
+     * @throws IllegalArgumentException if any of the limits is not positive
+     */
+    public ProcessOutputTail(int maxLines, long maxSize) throws IllegalArgumentException {
+        if (maxLines <= 0 || maxSize <= 0) {
+            throw new IllegalArgumentException("Limits of the process output tail have to be positive numbers.");
+        }
+        this.lines = new String[maxLines];
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Creates a tail which spills the whole output to a rotating log file.
+     *
+     * @param maxLines maximal number of lines kept
+     * @param maxSize maximal number of characters kept
+     * @param logFile file the output is spilled to
+     * @param maxLogFileSize size of the log file in bytes after which it is rotated
+     * @throws IOException if log file can not be opened
+     */
+    public ProcessOutputTail(int maxLines, long maxSize, File logFile, long maxLogFileSize) throws IOException {
+        this(maxLines, maxSize);
+        this.spill = new RotatingLogFile(logFile, maxLogFileSize, LOG_BACKUPS);
+    }
+
+    @Override
+    public synchronized void handle(String line) {
+        if (line.length() > maxSize) {
+            line = line.substring((int) (line.length() - maxSize));
+        }
+
+        while (count == lines.length || (count > 0 && size + line.length() > maxSize)) {
+            size -= lines[head].length();
+            lines[head] = null;
+            head = (head + 1) % lines.length;
+            count--;
+        }
+
+        lines[(head + count) % lines.length] = line;
+        count++;
+        size += line.length();
+
+        if (spill != null) {
+            try {
+                spill.write(line);
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Unable to write process output to " + spill.getFile()
+                    + ", output will not be spilled anymore", e);
+                closeSpill();
+            }
+        }
+    }
+
+    /**
+     * Returns the lines which are currently held, the oldest first.
+     *
+     * @return copy of the tail of the output
+     */
+    public synchronized List<String> getLines() {
+        List<String> tail = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            tail.add(lines[(head + i) % lines.length]);
+        }
+        return tail;
+    }
+
+    /**
+     * Returns the file the output is spilled to.
+     *
+     * @return log file or {@code null} if the output is not spilled
+     */
+    public File getLogFile() {
+        RotatingLogFile spill = this.spill;
+        return spill == null ? null : spill.getFile();
+    }
+
+    @Override
+    public synchronized void close() {
+        closeSpill();
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (String line : getLines()) {
+            sb.append(line);
+        }
+        return sb.toString();
+    }
+
+    private void closeSpill() {
+        if (spill != null) {
+            try {
+                spill.close();
+            } catch (IOException e) {
+                logger.log(Level.FINE, "Unable to close " + spill.getFile(), e);
+            }
+        }
+    }
+}
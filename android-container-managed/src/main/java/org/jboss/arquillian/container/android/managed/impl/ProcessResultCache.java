@@ -0,0 +1,369 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.android.managed.impl;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Cache of outputs of read-only commands, e.g. {@code android list avd}, which are expensive to run.
+ *
+ * An output is keyed by the command and a fingerprint of the files the command reads. The fingerprint consists of
+ * modification times of the files and of the direct children of directories, so the cached output is not used once an
+ * AVD or a platform is added, removed or modified, even by another process. The cache is stored in a file, so it is
+ * shared between JVM runs.
+ *
+ * The store is a plain text file which is only parsed, it should be kept in a directory of the user, its directory is
+ * made accessible to its owner only when it is created. Changes are merged with the entries stored by other JVMs while
+ * the store is locked, so concurrently running JVMs do not lose each other's entries.
+ */
+public class ProcessResultCache {
+
+    private static final Logger logger = Logger.getLogger(ProcessResultCache.class.getName());
+
+    private static final String ENCODING = "UTF-8";
+
+    private static final String COMMAND = "command";
+    private static final String FINGERPRINT = "fingerprint";
+    private static final String OUTPUT = "output";
+    private static final String END = "end";
+
+    private final File store;
+    private final File lock;
+
+    private Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+    private long loadedModified = -1L;
+    private long loadedLength = -1L;
+
+    /**
+     *
+     * @param store file the cache is persisted to, it is created if it does not exist
+     */
+    public ProcessResultCache(File store) {
+        this.store = store;
+        this.lock = new File(store.getPath() + ".lock");
+    }
+
+    /**
+     * Gets cached output of a command.
+     *
+     * @param command the command
+     * @param fingerprint fingerprint of the files the command reads
+     * @return cached output or {@code null} if there is none for the fingerprint
+     */
+    public synchronized List<String> get(List<String> command, String fingerprint) {
+        reloadIfChanged();
+        Entry entry = entries.get(key(command));
+        if (entry == null || !entry.fingerprint.equals(fingerprint)) {
+            return null;
+        }
+        return new ArrayList<String>(entry.output);
+    }
+
+    /**
+     * Caches output of a command.
+     *
+     * @param command the command
+     * @param fingerprint fingerprint of the files the command reads
+     * @param output output of the command
+     */
+    public synchronized void put(List<String> command, String fingerprint, List<String> output) {
+        update(new Entry(command, fingerprint, output));
+    }
+
+    /**
+     * Removes all cached outputs, e.g. after an AVD was created or deleted.
+     */
+    public synchronized void invalidate() {
+        update(null);
+    }
+
+    /**
+     * Computes fingerprint of files. Missing files are part of the fingerprint as well.
+     *
+     * @param files files or directories
+     * @return the fingerprint
+     */
+    public static String fingerprint(Collection<File> files) {
+        StringBuilder sb = new StringBuilder();
+        for (File file : files) {
+            append(sb, file);
+            File[] children = file.listFiles();
+            if (children != null) {
+                Arrays.sort(children);
+                for (File child : children) {
+                    append(sb, child);
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void append(StringBuilder sb, File file) {
+        sb.append(file.getAbsolutePath()).append(':').append(file.lastModified()).append(':').append(file.length())
+            .append('\n');
+    }
+
+    private static String key(List<String> command) {
+        StringBuilder sb = new StringBuilder();
+        for (String token : command) {
+            sb.append(token).append('\u0000');
+        }
+        return sb.toString();
+    }
+
+    private void reloadIfChanged() {
+        if (store.lastModified() != loadedModified || store.length() != loadedLength) {
+            entries = load();
+        }
+    }
+
+    /**
+     * Stores an entry, or removes all of them if it is {@code null}, merged with the entries stored by other JVMs.
+     */
+    private void update(Entry entry) {
+        RandomAccessFile lockFile = null;
+        FileLock fileLock = null;
+        try {
+            createDirectory();
+            lockFile = new RandomAccessFile(lock, "rw");
+            fileLock = lockFile.getChannel().lock();
+
+            Map<String, Entry> merged = entry == null ? new LinkedHashMap<String, Entry>() : load();
+            if (entry != null) {
+                merged.put(key(entry.command), entry);
+            }
+            save(merged);
+            entries = merged;
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Unable to store command cache to " + store, e);
+        } finally {
+            if (fileLock != null) {
+                try {
+                    fileLock.release();
+                } catch (IOException e) {
+                    // released when the file is closed
+                }
+            }
+            close(lockFile);
+        }
+    }
+
+    private void createDirectory() throws IOException {
+        File parent = store.getAbsoluteFile().getParentFile();
+        if (parent == null || parent.isDirectory()) {
+            return;
+        }
+        if (!parent.mkdirs() && !parent.isDirectory()) {
+            throw new IOException("Unable to create directory " + parent);
+        }
+        // outputs of commands are trusted, so nobody else may change them
+        parent.setReadable(false, false);
+        parent.setWritable(false, false);
+        parent.setExecutable(false, false);
+        parent.setReadable(true, true);
+        parent.setWritable(true, true);
+        parent.setExecutable(true, true);
+    }
+
+    private Map<String, Entry> load() {
+        Map<String, Entry> loaded = new LinkedHashMap<String, Entry>();
+        long modified = store.lastModified();
+        long length = store.length();
+        if (!store.isFile()) {
+            loadedModified = modified;
+            loadedLength = length;
+            return loaded;
+        }
+
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(store), ENCODING));
+            Entry entry;
+            while ((entry = read(reader)) != null) {
+                loaded.put(key(entry.command), entry);
+            }
+        } catch (IOException e) {
+            logger.log(Level.FINE, "Ignoring unreadable command cache " + store, e);
+            loaded.clear();
+        } finally {
+            close(reader);
+        }
+        loadedModified = modified;
+        loadedLength = length;
+        return loaded;
+    }
+
+    private static Entry read(BufferedReader reader) throws IOException {
+        String line = reader.readLine();
+        if (line == null) {
+            return null;
+        }
+        List<String> command = unescapeAll(value(line, COMMAND));
+        String fingerprint = unescape(value(reader.readLine(), FINGERPRINT));
+        List<String> output = new ArrayList<String>();
+        while (true) {
+            line = reader.readLine();
+            if (END.equals(line)) {
+                return new Entry(command, fingerprint, output);
+            }
+            output.add(unescape(value(line, OUTPUT)));
+        }
+    }
+
+    private static String value(String line, String name) throws IOException {
+        if (line == null || !line.startsWith(name + "\t")) {
+            throw new IOException("Expected " + name + " but got " + line);
+        }
+        return line.substring(name.length() + 1);
+    }
+
+    private void save(Map<String, Entry> toSave) throws IOException {
+        // the cache is replaced at once, so a reader never reads a partially written one
+        File temporary = new File(store.getPath() + "." + System.nanoTime() + ".tmp");
+        Writer writer = null;
+        try {
+            writer = new OutputStreamWriter(new FileOutputStream(temporary), ENCODING);
+            for (Entry entry : toSave.values()) {
+                StringBuilder command = new StringBuilder();
+                for (String token : entry.command) {
+                    if (command.length() != 0) {
+                        command.append('\t');
+                    }
+                    command.append(escape(token));
+                }
+                writer.write(COMMAND + "\t" + command + "\n");
+                writer.write(FINGERPRINT + "\t" + escape(entry.fingerprint) + "\n");
+                for (String line : entry.output) {
+                    writer.write(OUTPUT + "\t" + escape(line) + "\n");
+                }
+                writer.write(END + "\n");
+            }
+            writer.close();
+            writer = null;
+            if (!temporary.renameTo(store) && !(store.delete() && temporary.renameTo(store))) {
+                throw new IOException("Unable to replace " + store);
+            }
+        } finally {
+            close(writer);
+            temporary.delete();
+        }
+    }
+
+    static String escape(String value) {
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                default:
+                    sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    static String unescape(String value) throws IOException {
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            if (++i == value.length()) {
+                throw new IOException("Incomplete escape sequence in " + value);
+            }
+            switch (value.charAt(i)) {
+                case '\\':
+                    sb.append('\\');
+                    break;
+                case 't':
+                    sb.append('\t');
+                    break;
+                case 'n':
+                    sb.append('\n');
+                    break;
+                case 'r':
+                    sb.append('\r');
+                    break;
+                default:
+                    throw new IOException("Unknown escape sequence in " + value);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static List<String> unescapeAll(String values) throws IOException {
+        List<String> unescaped = new ArrayList<String>();
+        for (String value : values.split("\t", -1)) {
+            unescaped.add(unescape(value));
+        }
+        return unescaped;
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    private static class Entry {
+
+        private final List<String> command;
+        private final String fingerprint;
+        private final List<String> output;
+
+        public Entry(List<String> command, String fingerprint, List<String> output) {
+            this.command = new ArrayList<String>(command);
+            this.fingerprint = fingerprint;
+            this.output = new ArrayList<String>(output);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.android.managed.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Script of an interaction with a process which asks questions on its output, e.g. SDK tools.
+ *
+ * The script is a sequence of steps, each of them waits for a prompt matching a regular expression and answers it. Every
+ * step has a deadline, the process is killed and the execution fails if the prompt does not come in time. The execution
+ * fails immediately as well if the process outputs a line matching any of the failure patterns.
+ *
+ * A script does not hold any state of its execution, so it can be defined once and executed by
+ * {@link ProcessExecutor#execute(ProcessScript, String...)} as many times as needed.
+ */
+public class ProcessScript {
+
+    /**
+     * Default time to wait for a prompt in milliseconds.
+     */
+    public static final long DEFAULT_STEP_TIMEOUT = 30000L;
+
+    private final List<Step> steps = new ArrayList<Step>();
+    private final List<Pattern> failures = new ArrayList<Pattern>();
+
+    private long stepTimeout = TimeUnit.MILLISECONDS.toNanos(DEFAULT_STEP_TIMEOUT);
+    private long completionTimeout = Long.MAX_VALUE;
+
+    /**
+     * Adds a step which waits for a prompt and answers it.
+     *
+     * @param prompt regular expression found in the current line of the output
+     * @param answer text written to the input of the process, it is not terminated by a new line automatically
+     * @return this script
+     */
+    public ProcessScript expect(String prompt, String answer) {
+        steps.add(new Step(Pattern.compile(prompt), answer, stepTimeout, false));
+        return this;
+    }
+
+    /**
+     * Adds a step which answers a prompt the process might not ask. The step is skipped if the process finishes, the
+     * deadline of the step elapses or a prompt of any following step comes first.
+     *
+     * @param prompt regular expression found in the current line of the output
+     * @param answer text written to the input of the process, it is not terminated by a new line automatically
+     * @return this script
+     */
+    public ProcessScript expectOptionally(String prompt, String answer) {
+        steps.add(new Step(Pattern.compile(prompt), answer, stepTimeout, true));
+        return this;
+    }
+
+    /**
+     * Sets the deadline of the last added step.
+     *
+     * @param timeout time to wait for the prompt, counted since the previous step is finished
+     * @param unit unit of the timeout
+     * @return this script
+     * @throws IllegalStateException if there is no step yet
+     */
+    public ProcessScript within(long timeout, TimeUnit unit) throws IllegalStateException {
+        if (steps.isEmpty()) {
+            throw new IllegalStateException("There is no step to set the deadline for.");
+        }
+        Step last = steps.remove(steps.size() - 1);
+        steps.add(new Step(last.getPrompt(), last.getAnswer(), unit.toNanos(timeout), last.isOptional()));
+        return this;
+    }
+
+    /**
+     * Sets the deadline of steps added afterwards.
+     *
+     * @param timeout time to wait for a prompt
+     * @param unit unit of the timeout
+     * @return this script
+     */
+    public ProcessScript stepTimeout(long timeout, TimeUnit unit) {
+        this.stepTimeout = unit.toNanos(timeout);
+        return this;
+    }
+
+    /**
+     * Sets the time to wait for the process to close its output after the last step. There is no limit by default.
+     *
+     * @param timeout time to wait for the process
+     * @param unit unit of the timeout
+     * @return this script
+     */
+    public ProcessScript completionTimeout(long timeout, TimeUnit unit) {
+        this.completionTimeout = unit.toNanos(timeout);
+        return this;
+    }
+
+    /**
+     * Adds a pattern of output which makes the execution fail immediately.
+     *
+     * @param pattern regular expression found in a line of the output
+     * @return this script
+     */
+    public ProcessScript failOn(String pattern) {
+        failures.add(Pattern.compile(pattern));
+        return this;
+    }
+
+    List<Step> getSteps() {
+        return Collections.unmodifiableList(steps);
+    }
+
+    List<Pattern> getFailures() {
+        return Collections.unmodifiableList(failures);
+    }
+
+    long getCompletionTimeout() {
+        return completionTimeout;
+    }
+
+    /**
+     * A prompt and its answer.
+     */
+    static class Step {
+
+        private final Pattern prompt;
+        private final String answer;
+        private final long timeout;
+        private final boolean optional;
+
+        Step(Pattern prompt, String answer, long timeout, boolean optional) {
+            this.prompt = prompt;
+            this.answer = answer;
+            this.timeout = timeout;
+            this.optional = optional;
+        }
+
+        Pattern getPrompt() {
+            return prompt;
+        }
+
+        String getAnswer() {
+            return answer;
+        }
+
+        /**
+         * @return timeout in nanoseconds
+         */
+        long getTimeout() {
+            return timeout;
+        }
+
+        boolean isOptional() {
+            return optional;
+        }
+
+        @Override
+        public String toString() {
+            return prompt.pattern();
+        }
+    }
+}
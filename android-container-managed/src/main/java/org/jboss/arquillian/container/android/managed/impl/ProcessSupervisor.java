@@ -0,0 +1,306 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.android.managed.impl;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Tracks processes spawned by a {@link ProcessExecutor} and kills the ones still running when the JVM exits.
+ *
+ * All supervisors share a single shutdown hook which kills the remaining process trees in parallel. A process stops being
+ * tracked as soon as it exits. ProcessHandle is available since Java 9 only, so it is accessed reflectively. When it is
+ * available, exits are reported by the JVM and child processes, e.g. the ones started by the emulator, are killed as
+ * well. Otherwise exited processes are pruned whenever a new process is tracked.
+ */
+class ProcessSupervisor {
+
+    private static final Logger logger = Logger.getLogger(ProcessSupervisor.class.getName());
+
+    /**
+     * Time the shutdown hook waits for all process trees to be killed.
+     */
+    static final long SHUTDOWN_TIMEOUT_MILLIS = 10000L;
+
+    private static final Set<ProcessSupervisor> SUPERVISORS = new LinkedHashSet<ProcessSupervisor>();
+
+    private static Thread shutdownHook;
+
+    private final Map<Process, Boolean> processes = new IdentityHashMap<Process, Boolean>();
+
+    private boolean closed;
+
+    /**
+     * Starts tracking the process.
+     *
+     * @param process the process
+     */
+    void track(final Process process) {
+        synchronized (this) {
+            pruneExited();
+            processes.put(process, Boolean.TRUE);
+        }
+        register(this);
+
+        if (ProcessHandles.isSupported()) {
+            ProcessHandles.onExit(process, new Runnable() {
+                @Override
+                public void run() {
+                    untrack(process);
+                }
+            });
+        }
+    }
+
+    /**
+     * Stops tracking the process, it will not be killed when the JVM exits.
+     *
+     * @param process the process
+     */
+    void untrack(Process process) {
+        boolean unregister;
+        synchronized (this) {
+            processes.remove(process);
+            unregister = closed && processes.isEmpty();
+        }
+        if (unregister) {
+            unregister(this);
+        }
+    }
+
+    /**
+     * Returns number of tracked processes which have not exited yet.
+     *
+     * @return number of live processes
+     */
+    synchronized int size() {
+        pruneExited();
+        return processes.size();
+    }
+
+    /**
+     * Closes the supervisor. Processes which are still running are tracked until they exit.
+     */
+    void close() {
+        boolean unregister;
+        synchronized (this) {
+            closed = true;
+            pruneExited();
+            unregister = processes.isEmpty();
+        }
+        if (unregister) {
+            unregister(this);
+        }
+    }
+
+    /**
+     * Runs {@code action} once the process exits, without any thread waiting for the process.
+     *
+     * @param process the process
+     * @param action action run when the process exits
+     * @return {@code false} if the JVM does not report exits of processes, the action is not run then
+     */
+    static boolean onExit(Process process, Runnable action) {
+        if (!ProcessHandles.isSupported()) {
+            return false;
+        }
+        ProcessHandles.onExit(process, action);
+        return true;
+    }
+
+    /**
+     * Kills all tracked processes together with their descendants in parallel.
+     *
+     * @param timeoutMillis time to wait for the processes to be killed
+     */
+    void destroyAll(long timeoutMillis) {
+        List<Process> toDestroy;
+        synchronized (this) {
+            toDestroy = new ArrayList<Process>(processes.keySet());
+        }
+        destroy(toDestroy, timeoutMillis);
+    }
+
+    private void pruneExited() {
+        for (Process process : new ArrayList<Process>(processes.keySet())) {
+            if (hasExited(process)) {
+                processes.remove(process);
+            }
+        }
+    }
+
+    private static boolean hasExited(Process process) {
+        try {
+            process.exitValue();
+            return true;
+        } catch (IllegalThreadStateException e) {
+            return false;
+        }
+    }
+
+    private static synchronized void register(ProcessSupervisor supervisor) {
+        SUPERVISORS.add(supervisor);
+        if (shutdownHook == null) {
+            shutdownHook = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    List<Process> toDestroy = new ArrayList<Process>();
+                    for (ProcessSupervisor supervisor : supervisors()) {
+                        synchronized (supervisor) {
+                            toDestroy.addAll(supervisor.processes.keySet());
+                        }
+                    }
+                    destroy(toDestroy, SHUTDOWN_TIMEOUT_MILLIS);
+                }
+            }, "arquillian-android-process-supervisor");
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
+        }
+    }
+
+    private static synchronized void unregister(ProcessSupervisor supervisor) {
+        SUPERVISORS.remove(supervisor);
+    }
+
+    private static synchronized List<ProcessSupervisor> supervisors() {
+        return new ArrayList<ProcessSupervisor>(SUPERVISORS);
+    }
+
+    private static void destroy(List<Process> processes, long timeoutMillis) {
+        List<Thread> killers = new ArrayList<Thread>(processes.size());
+        for (final Process process : processes) {
+            Thread killer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    destroyTree(process);
+                }
+            }, "arquillian-android-process-killer");
+            killer.setDaemon(true);
+            killer.start();
+            killers.add(killer);
+        }
+
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        for (Thread killer : killers) {
+            try {
+                killer.join(Math.max(1L, deadline - System.currentTimeMillis()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private static void destroyTree(Process process) {
+        // descendants have to be found before the parent is killed, they are reparented afterwards
+        List<Object> descendants = ProcessHandles.descendants(process);
+        process.destroy();
+        for (Object descendant : descendants) {
+            ProcessHandles.destroy(descendant);
+        }
+        try {
+            process.waitFor();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Reflective access to ProcessHandle.
+     */
+    private static class ProcessHandles {
+
+        private static final Method TO_HANDLE;
+        private static final Method DESCENDANTS;
+        private static final Method DESTROY;
+        private static final Method ON_EXIT;
+        private static final Method THEN_RUN;
+        private static final Method STREAM_ITERATOR;
+
+        static {
+            Method toHandle = null;
+            Method descendants = null;
+            Method destroy = null;
+            Method onExit = null;
+            Method thenRun = null;
+            Method streamIterator = null;
+            try {
+                Class<?> handle = Class.forName("java.lang.ProcessHandle");
+                toHandle = Process.class.getMethod("toHandle");
+                descendants = handle.getMethod("descendants");
+                destroy = handle.getMethod("destroy");
+                onExit = handle.getMethod("onExit");
+                thenRun = Class.forName("java.util.concurrent.CompletableFuture").getMethod("thenRun", Runnable.class);
+                streamIterator = Class.forName("java.util.stream.BaseStream").getMethod("iterator");
+            } catch (Exception e) {
+                // ProcessHandle is not available in this JVM
+                toHandle = null;
+            }
+            TO_HANDLE = toHandle;
+            DESCENDANTS = descendants;
+            DESTROY = destroy;
+            ON_EXIT = onExit;
+            THEN_RUN = thenRun;
+            STREAM_ITERATOR = streamIterator;
+        }
+
+        public static boolean isSupported() {
+            return TO_HANDLE != null;
+        }
+
+        public static void onExit(Process process, Runnable action) {
+            try {
+                THEN_RUN.invoke(ON_EXIT.invoke(TO_HANDLE.invoke(process)), action);
+            } catch (Exception e) {
+                logger.log(Level.FINE, "Unable to watch exit of process " + process, e);
+            }
+        }
+
+        public static List<Object> descendants(Process process) {
+            if (!isSupported()) {
+                return Collections.emptyList();
+            }
+            List<Object> handles = new ArrayList<Object>();
+            try {
+                Object stream = DESCENDANTS.invoke(TO_HANDLE.invoke(process));
+                Iterator<?> iterator = (Iterator<?>) STREAM_ITERATOR.invoke(stream);
+                while (iterator.hasNext()) {
+                    handles.add(iterator.next());
+                }
+            } catch (Exception e) {
+                logger.log(Level.FINE, "Unable to get descendants of process " + process, e);
+            }
+            return handles;
+        }
+
+        public static void destroy(Object handle) {
+            try {
+                DESTROY.invoke(handle);
+            } catch (Exception e) {
+                logger.log(Level.FINE, "Unable to destroy process " + handle, e);
+            }
+        }
+    }
+}
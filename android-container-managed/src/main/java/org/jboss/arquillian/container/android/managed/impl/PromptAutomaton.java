@@ -0,0 +1,164 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.android.managed.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Multi-pattern matcher (Aho-Corasick automaton) over a fixed set of prompts.
+ *
+ * The automaton is fed one character at a time and reports which prompts end at the current position, so all prompts
+ * are matched in a single pass over the output no matter how many of them there are.
+ */
+class PromptAutomaton {
+
+    /**
+     * State the automaton starts in.
+     */
+    static final int ROOT = 0;
+
+    private final List<Map<Character, Integer>> transitions = new ArrayList<Map<Character, Integer>>();
+
+    private final List<Integer> failure = new ArrayList<Integer>();
+
+    // index of the prompt ending in the state, -1 if none
+    private final List<Integer> terminal = new ArrayList<Integer>();
+
+    // nearest state reachable by failure links which is terminal, -1 if none
+    private final List<Integer> dictionaryLink = new ArrayList<Integer>();
+
+    private final List<String> prompts;
+
+    /**
+     * Builds the automaton.
+     *
+     * @param prompts prompts to be matched, {@code null} and empty prompts are ignored
+     */
+    PromptAutomaton(Iterable<String> prompts) {
+        this.prompts = new ArrayList<String>();
+        newState();
+
+        for (String prompt : prompts) {
+            if (prompt == null || prompt.length() == 0) {
+                continue;
+            }
+            int state = ROOT;
+            for (int i = 0; i < prompt.length(); i++) {
+                Character c = prompt.charAt(i);
+                Integer next = transitions.get(state).get(c);
+                if (next == null) {
+                    next = newState();
+                    transitions.get(state).put(c, next);
+                }
+                state = next;
+            }
+            if (terminal.get(state) == -1) {
+                terminal.set(state, this.prompts.size());
+                this.prompts.add(prompt);
+            }
+        }
+
+        buildFailureLinks();
+    }
+
+    /**
+     * @return {@code true} if there is no prompt to be matched
+     */
+    boolean isEmpty() {
+        return prompts.isEmpty();
+    }
+
+    /**
+     * Moves the automaton by one character.
+     *
+     * @param state current state
+     * @param c next character
+     * @return next state
+     */
+    int next(int state, char c) {
+        Character key = c;
+        while (true) {
+            Integer next = transitions.get(state).get(key);
+            if (next != null) {
+                return next;
+            }
+            if (state == ROOT) {
+                return ROOT;
+            }
+            state = failure.get(state);
+        }
+    }
+
+    /**
+     * Finds the longest prompt ending in given state which has exactly {@code length} characters.
+     *
+     * @param state current state
+     * @param length required length of the prompt
+     * @return matched prompt or {@code null}
+     */
+    String matchOfLength(int state, int length) {
+        int s = terminal.get(state) != -1 ? state : dictionaryLink.get(state);
+        while (s != -1) {
+            String prompt = prompts.get(terminal.get(s));
+            if (prompt.length() == length) {
+                return prompt;
+            }
+            if (prompt.length() < length) {
+                // prompts reachable by dictionary links are only shorter
+                return null;
+            }
+            s = dictionaryLink.get(s);
+        }
+        return null;
+    }
+
+    private int newState() {
+        transitions.add(new HashMap<Character, Integer>(4));
+        failure.add(ROOT);
+        terminal.add(-1);
+        dictionaryLink.add(-1);
+        return transitions.size() - 1;
+    }
+
+    private void buildFailureLinks() {
+        LinkedList<Integer> queue = new LinkedList<Integer>();
+        for (Integer child : transitions.get(ROOT).values()) {
+            queue.add(child);
+        }
+
+        while (!queue.isEmpty()) {
+            int state = queue.removeFirst();
+            for (Map.Entry<Character, Integer> edge : transitions.get(state).entrySet()) {
+                int child = edge.getValue();
+                int fallback = failure.get(state);
+                while (fallback != ROOT && !transitions.get(fallback).containsKey(edge.getKey())) {
+                    fallback = failure.get(fallback);
+                }
+                Integer target = transitions.get(fallback).get(edge.getKey());
+                failure.set(child, target != null && target != child ? target : ROOT);
+
+                int link = failure.get(child);
+                dictionaryLink.set(child, terminal.get(link) != -1 ? link : dictionaryLink.get(link));
+                queue.add(child);
+            }
+        }
+    }
+}
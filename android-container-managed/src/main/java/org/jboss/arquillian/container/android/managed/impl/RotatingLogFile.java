@@ -0,0 +1,116 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.android.managed.impl;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Log file which is rotated when it reaches its maximal size. Rotated files are suffixed by {@code .1}, {@code .2}, ...
+ * where {@code .1} is the most recent one.
+ *
+ * Text is not buffered, every write reaches the file right away, so the file holds the output up to the last line even if
+ * the JVM crashes.
+ */
+class RotatingLogFile implements Closeable {
+
+    private final File file;
+    private final long maxSize;
+    private final int backups;
+
+    private final Charset charset = Charset.defaultCharset();
+
+    private OutputStream out;
+    private long size;
+
+    /**
+     *
+     * @param file file to write to, it is truncated when opened
+     * @param maxSize size in bytes after which the file is rotated
+     * @param backups number of rotated files to keep
+     * @throws IOException if the file can not be opened
+     */
+    RotatingLogFile(File file, long maxSize, int backups) throws IOException {
+        this.file = file;
+        this.maxSize = maxSize;
+        this.backups = backups;
+        open();
+    }
+
+    /**
+     * Appends text to the file, rotating it if needed.
+     *
+     * @param text text to append
+     * @throws IOException if writing failed
+     */
+    synchronized void write(String text) throws IOException {
+        if (out == null) {
+            return;
+        }
+        byte[] bytes = text.getBytes(charset);
+        if (size > 0 && size + bytes.length > maxSize) {
+            rotate();
+        }
+        out.write(bytes);
+        size += bytes.length;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+
+    private void rotate() throws IOException {
+        out.close();
+        for (int i = backups; i > 0; i--) {
+            File target = backup(i);
+            File source = i == 1 ? file : backup(i - 1);
+            if (source.exists()) {
+                target.delete();
+                source.renameTo(target);
+            }
+        }
+        if (backups == 0) {
+            file.delete();
+        }
+        open();
+    }
+
+    private File backup(int i) {
+        return new File(file.getPath() + "." + i);
+    }
+
+    private void open() throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+        this.out = new FileOutputStream(file, false);
+        this.size = 0;
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.android.managed.impl;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A condition which can be awaited until it holds.
+ *
+ * The condition is checked again as soon as an observer, e.g. a device change listener, signals that the state it depends
+ * on has changed. Polling is used only as a fallback in case a signal is missed or there is nobody to signal it. The
+ * polling delay starts short and doubles after every unsuccessful check up to a maximum, so a condition which holds soon
+ * is detected quickly while a long wait does not keep the waiting thread busy.
+ */
+public class SignalledCondition {
+
+    /**
+     * Default first polling delay in milliseconds.
+     */
+    public static final long DEFAULT_MIN_DELAY = 10L;
+
+    /**
+     * Default maximal polling delay in milliseconds.
+     */
+    public static final long DEFAULT_MAX_DELAY = 1000L;
+
+    private final Callable<Boolean> check;
+    private final long minDelay;
+    private final long maxDelay;
+
+    private final List<Runnable> beforeCheck = new CopyOnWriteArrayList<Runnable>();
+
+    private final Object lock = new Object();
+    private long signals;
+    private Throwable abortCause;
+
+    /**
+     * Creates a condition polled with default delays.
+     *
+     * @param check check of the condition
+     */
+    public SignalledCondition(Callable<Boolean> check) {
+        this(check, DEFAULT_MIN_DELAY, DEFAULT_MAX_DELAY);
+    }
+
+    /**
+     *
+     * @param check check of the condition
+     * @param minDelay first polling delay in milliseconds
+     * @param maxDelay maximal polling delay in milliseconds
+     */
+    public SignalledCondition(Callable<Boolean> check, long minDelay, long maxDelay) {
+        if (minDelay <= 0 || maxDelay < minDelay) {
+            throw new IllegalArgumentException(
+                "Polling delays have to be positive and the minimal delay can not exceed the maximal one");
+        }
+        this.check = check;
+        this.minDelay = minDelay;
+        this.maxDelay = maxDelay;
+    }
+
+    /**
+     * Creates a condition which holds when a future completes. It is signalled by the future, so it is not polled often.
+     *
+     * @param future the future
+     * @return the condition
+     */
+    public static SignalledCondition completionOf(final ProcessFuture<?> future) {
+        final SignalledCondition condition = new SignalledCondition(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return future.isDone();
+            }
+        }, DEFAULT_MAX_DELAY, DEFAULT_MAX_DELAY);
+        future.addListener(new Runnable() {
+            @Override
+            public void run() {
+                condition.signal();
+            }
+        });
+        return condition;
+    }
+
+    /**
+     * Signals that the condition might hold now, threads awaiting it check it immediately.
+     */
+    public void signal() {
+        synchronized (lock) {
+            signals++;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Registers a task run by the waiting thread right before every check of the condition, e.g. a scan of output which
+     * may abort the condition. The task is run as often as the condition is checked, so no other thread has to poll.
+     *
+     * @param task the task
+     */
+    public void beforeCheck(Runnable task) {
+        beforeCheck.add(task);
+    }
+
+    /**
+     * Aborts waiting for the condition, e.g. because it can not hold anymore. Threads awaiting the condition and all
+     * following calls of {@link #await(long, TimeUnit)} fail with {@code cause}. Only the first abort has any effect.
+     *
+     * @param cause reason of the abort
+     */
+    public void abort(Throwable cause) {
+        synchronized (lock) {
+            if (abortCause == null) {
+                abortCause = cause;
+            }
+            signals++;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Waits until the condition holds or the timeout elapses.
+     *
+     * @param timeout timeout
+     * @param unit unit of the timeout
+     * @return {@code true} if the condition holds, {@code false} if the timeout elapsed
+     * @throws InterruptedException if the waiting thread was interrupted
+     * @throws ExecutionException if the check of the condition failed or waiting was aborted
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        long delay = minDelay;
+
+        while (true) {
+            for (Runnable task : beforeCheck) {
+                task.run();
+            }
+
+            long observedSignals;
+            synchronized (lock) {
+                if (abortCause != null) {
+                    throw new ExecutionException(abortCause);
+                }
+                observedSignals = signals;
+            }
+
+            if (isSatisfied()) {
+                return true;
+            }
+
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remaining <= 0) {
+                return false;
+            }
+
+            synchronized (lock) {
+                // a signal arriving during the check is not lost, the condition is checked again right away
+                if (signals == observedSignals) {
+                    lock.wait(Math.min(delay, remaining));
+                }
+                if (signals != observedSignals) {
+                    delay = minDelay;
+                } else {
+                    delay = Math.min(delay * 2, maxDelay);
+                }
+            }
+        }
+    }
+
+    private boolean isSatisfied() throws ExecutionException {
+        try {
+            return Boolean.TRUE.equals(check.call());
+        } catch (Exception e) {
+            throw new ExecutionException(e);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.android.managed.configuration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Tests parsing and merging of {@link EmulatorOptions} and options of {@link EmulatorProfile}.
+ */
+public class EmulatorOptionsTestCase {
+
+    @Test
+    public void testOptionsAreParsed() {
+        EmulatorOptions options = EmulatorOptions.parse("-no-window  -gpu off -prop a=b -qemu -m 512 -enable-kvm");
+
+        assertTrue(options.contains("-no-window"));
+        assertNull(options.get("-no-window"));
+        assertEquals("off", options.get("-gpu"));
+        assertEquals("a=b", options.get("-prop"));
+        assertFalse(options.contains("-m"));
+        assertEquals(Arrays.asList("-no-window", "-gpu", "off", "-prop", "a=b", "-qemu", "-m", "512", "-enable-kvm"),
+            options.getAsList());
+        assertTrue(EmulatorOptions.parse(null).getAsList().isEmpty());
+    }
+
+    @Test
+    public void testProfileIsMergedWithUserOptions() throws Exception {
+        EmulatorOptions merged = EmulatorProfile.of("headless-ci").getOptions()
+            .merge(EmulatorOptions.parse("-no-audio -prop a=b -netspeed full -qemu -enable-kvm"));
+
+        assertEquals(Arrays.asList("-no-window", "-no-audio", "-no-boot-anim", "-gpu", "off", "-prop", "a=b", "-netspeed",
+            "full", "-qemu", "-enable-kvm"), merged.getAsList());
+    }
+
+    @Test
+    public void testConflictingOptionsAreDetected() {
+        assertConflict(EmulatorProfile.HEADLESS_CI, "-gpu on");
+        assertConflict(EmulatorProfile.HEADLESS_CI, "-audio alsa");
+        assertConflict(EmulatorProfile.INTERACTIVE, "-gpu off");
+    }
+
+    @Test
+    public void testRepeatableOptionsDoNotConflict() throws Exception {
+        EmulatorOptions merged = EmulatorOptions.parse("-prop a=b").merge(EmulatorOptions.parse("-prop c=d"));
+        assertEquals(Arrays.asList("-prop", "a=b", "-prop", "c=d"), merged.getAsList());
+    }
+
+    @Test(expected = AndroidContainerConfigurationException.class)
+    public void testUnknownProfileIsRejected() throws Exception {
+        EmulatorProfile.of("fastest");
+    }
+
+    private static void assertConflict(EmulatorProfile profile, String options) {
+        try {
+            profile.getOptions().merge(EmulatorOptions.parse(options));
+            fail("Options " + options + " conflict with profile " + profile);
+        } catch (AndroidContainerConfigurationException e) {
+            // expected
+        }
+    }
+}
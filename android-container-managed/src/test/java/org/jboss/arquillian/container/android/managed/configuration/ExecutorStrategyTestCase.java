@@ -0,0 +1,85 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.android.managed.configuration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.arquillian.container.android.managed.impl.ProcessExecutor;
+import org.junit.Test;
+
+/**
+ * Tests creation of executors by {@link ExecutorStrategy}.
+ */
+public class ExecutorStrategyTestCase {
+
+    @Test
+    public void testStrategyIsParsedCaseInsensitive() {
+        assertEquals(ExecutorStrategy.VIRTUAL, ExecutorStrategy.fromString(" Virtual "));
+        assertEquals(ExecutorStrategy.PLATFORM, ExecutorStrategy.fromString("platform"));
+    }
+
+    @Test
+    public void testStrategyIsParsedInAnyLocale() {
+        Locale locale = Locale.getDefault();
+        Locale.setDefault(new Locale("tr", "TR"));
+        try {
+            assertEquals(ExecutorStrategy.PLATFORM, ExecutorStrategy.fromString("platform"));
+            assertEquals(ExecutorStrategy.VIRTUAL, ExecutorStrategy.fromString("virtual"));
+        } finally {
+            Locale.setDefault(locale);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownStrategyIsRejected() {
+        ExecutorStrategy.fromString("green");
+    }
+
+    @Test
+    public void testPlatformStrategyUsesDaemonThreads() {
+        assertFalse(ExecutorStrategy.PLATFORM.isVirtual());
+        assertTrue(runsOnDaemonThread(ExecutorStrategy.PLATFORM));
+    }
+
+    @Test
+    public void testVirtualStrategyRunsTasksOnAnyJvm() {
+        // falls back to platform threads when virtual threads are not supported
+        assertTrue(runsOnDaemonThread(ExecutorStrategy.VIRTUAL));
+    }
+
+    private boolean runsOnDaemonThread(ExecutorStrategy strategy) {
+        ProcessExecutor executor = new ProcessExecutor(strategy);
+        try {
+            return executor.start(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return Thread.currentThread().isDaemon();
+                }
+            }).get(5, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
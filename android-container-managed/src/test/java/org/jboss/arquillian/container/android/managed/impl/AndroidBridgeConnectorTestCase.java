@@ -78,6 +78,7 @@ public class AndroidBridgeConnectorTestCase extends AbstractAndroidTestTestBase
 
         bind(ContainerScoped.class, AndroidManagedContainerConfiguration.class, configuration);
         bind(ContainerScoped.class, AndroidSDK.class, androidSDK);
+        bind(ContainerScoped.class, ProcessExecutor.class, new ProcessExecutor());
 
         fire(new AndroidContainerStart());
 
@@ -104,6 +105,7 @@ public class AndroidBridgeConnectorTestCase extends AbstractAndroidTestTestBase
 
         bind(ContainerScoped.class, AndroidManagedContainerConfiguration.class, configuration2);
         bind(ContainerScoped.class, AndroidSDK.class, androidSDK2);
+        bind(ContainerScoped.class, ProcessExecutor.class, new ProcessExecutor());
 
         fire(new AndroidContainerStart());
 
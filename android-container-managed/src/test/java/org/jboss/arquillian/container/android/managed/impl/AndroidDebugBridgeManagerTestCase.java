@@ -0,0 +1,281 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.android.managed.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.android.ddmlib.IDevice;
+
+/**
+ * Tests checks of the adb server done by {@link AndroidDebugBridgeManager} before the bridge is created, the wait for the
+ * bridge to connect and sharing of the bridge by containers.
+ */
+public class AndroidDebugBridgeManagerTestCase {
+
+    private ServerSocket server;
+
+    @Before
+    public void setup() throws IOException {
+        server = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+    }
+
+    @After
+    public void cleanup() throws IOException {
+        server.close();
+    }
+
+    @Test
+    public void testVersionOfBinaryIsParsed() {
+        assertEquals(31, AndroidDebugBridgeManager.parseBinaryVersion(Arrays.asList("Android Debug Bridge version 1.0.31")));
+        assertEquals(39, AndroidDebugBridgeManager.parseBinaryVersion(Arrays.asList(
+            "Android Debug Bridge version 1.0.39", "Revision 3db08f2c6889-android")));
+        assertEquals(-1, AndroidDebugBridgeManager.parseBinaryVersion(Arrays.asList("adb: not found")));
+    }
+
+    @Test(timeout = 5000)
+    public void testVersionOfServerIsAsked() throws Exception {
+        Thread reply = reply("OKAY0004001f");
+        assertEquals(31, AndroidDebugBridgeManager.serverVersion(address(), 2000));
+        reply.join();
+    }
+
+    @Test(timeout = 5000)
+    public void testServerWhichDoesNotAnswerAsAdbIsNotResponding() throws Exception {
+        Thread reply = reply("FAIL");
+        assertEquals(AndroidDebugBridgeManager.NOT_RESPONDING, AndroidDebugBridgeManager.serverVersion(address(), 2000));
+        reply.join();
+
+        // accepts the connection but never answers
+        assertEquals(AndroidDebugBridgeManager.NOT_RESPONDING, AndroidDebugBridgeManager.serverVersion(address(), 200));
+    }
+
+    @Test(timeout = 5000)
+    public void testServerWhichIsNotRunningIsDetected() throws Exception {
+        InetSocketAddress address = address();
+        server.close();
+        assertEquals(AndroidDebugBridgeManager.NOT_RUNNING, AndroidDebugBridgeManager.serverVersion(address, 2000));
+    }
+
+    @Test
+    public void testReleaseWithoutAcquireIsIgnored() {
+        AndroidDebugBridgeManager manager = new AndroidDebugBridgeManager(address());
+        manager.release();
+        assertEquals(0, manager.getReferences());
+    }
+
+    @Test(timeout = 5000)
+    public void testBridgeIsTerminatedByLastRelease() {
+        StubBridgeFactory factory = new StubBridgeFactory(null);
+        AndroidDebugBridgeManager manager = new AndroidDebugBridgeManager(address(), factory);
+
+        for (int i = 0; i < 3; i++) {
+            manager.acquire(new File("adb"), false, null);
+        }
+        assertEquals(1, factory.created);
+        AndroidDebugBridgeManager.Bridge bridge = manager.getBridge();
+
+        manager.release();
+        manager.release();
+        assertEquals(0, factory.terminated);
+        assertSame(bridge, manager.getBridge());
+
+        manager.release();
+        assertEquals(1, factory.terminated);
+        assertNull(manager.getBridge());
+    }
+
+    @Test(timeout = 5000)
+    public void testDisconnectedBridgeIsAwaitedUnlessServerHasToBeRestarted() throws Exception {
+        StubBridge disconnected = new StubBridge(false);
+        StubBridgeFactory factory = new StubBridgeFactory(disconnected);
+        AndroidDebugBridgeManager manager = new AndroidDebugBridgeManager(address(), factory);
+        disconnected.connectLater(100L);
+
+        // a new bridge is not forced, the bridge reconnects by itself
+        manager.acquire(new File("adb"), false, null);
+        assertEquals(0, factory.created);
+        assertSame(disconnected, manager.getBridge());
+        assertTrue(disconnected.isConnected());
+
+        // a new bridge is forced and the server does not respond, the bridge is recreated with the server
+        disconnected.connected = false;
+        Thread reply = reply("FAIL");
+        manager.acquire(new File("adb"), true, null);
+        reply.join();
+        assertEquals(1, factory.created);
+        assertTrue(factory.stoppedCurrent);
+        assertSame(factory.current, manager.getBridge());
+        assertEquals(2, manager.getReferences());
+    }
+
+    @Test(timeout = 5000)
+    public void testWaitForBridgeTimesOut() throws Exception {
+        long start = System.nanoTime();
+        assertFalse(AndroidDebugBridgeManager.awaitInitialDeviceList(new StubBridge(false), 100, TimeUnit.MILLISECONDS));
+        assertFalse(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 100L);
+    }
+
+    @Test(timeout = 5000)
+    public void testWaitForBridgeIsInterrupted() {
+        final Thread waiting = Thread.currentThread();
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    // interrupt right away
+                }
+                waiting.interrupt();
+            }
+        }.start();
+
+        try {
+            AndroidDebugBridgeManager.awaitInitialDeviceList(new StubBridge(false), 10, TimeUnit.SECONDS);
+            fail("Waiting thread was interrupted");
+        } catch (InterruptedException e) {
+            // expected
+        }
+    }
+
+    private InetSocketAddress address() {
+        return new InetSocketAddress("127.0.0.1", server.getLocalPort());
+    }
+
+    private Thread reply(final String reply) {
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Socket socket = server.accept();
+                    try {
+                        InputStream in = socket.getInputStream();
+                        byte[] request = new byte[16];
+                        for (int read = 0; read < request.length;) {
+                            read += in.read(request, read, request.length - read);
+                        }
+                        assertEquals("000chost:version", new String(request, "US-ASCII"));
+                        OutputStream out = socket.getOutputStream();
+                        out.write(reply.getBytes("US-ASCII"));
+                        out.flush();
+                    } finally {
+                        socket.close();
+                    }
+                } catch (IOException e) {
+                    // the test fails on the version
+                }
+            }
+        };
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Bridge which is connected once it is told to be.
+     */
+    private static class StubBridge implements AndroidDebugBridgeManager.Bridge {
+
+        private volatile boolean connected;
+
+        StubBridge(boolean connected) {
+            this.connected = connected;
+        }
+
+        void connectLater(final long delayMillis) {
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        Thread.sleep(delayMillis);
+                    } catch (InterruptedException e) {
+                        // connect right away
+                    }
+                    connected = true;
+                }
+            }.start();
+        }
+
+        @Override
+        public boolean isConnected() {
+            return connected;
+        }
+
+        @Override
+        public boolean hasInitialDeviceList() {
+            return connected;
+        }
+
+        @Override
+        public IDevice[] getDevices() {
+            return new IDevice[0];
+        }
+    }
+
+    /**
+     * Factory which creates connected bridges and counts them.
+     */
+    private static class StubBridgeFactory implements AndroidDebugBridgeManager.BridgeFactory {
+
+        private AndroidDebugBridgeManager.Bridge current;
+        private int created;
+        private int terminated;
+        private boolean stoppedCurrent;
+
+        StubBridgeFactory(AndroidDebugBridgeManager.Bridge current) {
+            this.current = current;
+        }
+
+        @Override
+        public AndroidDebugBridgeManager.Bridge getBridge() {
+            return current;
+        }
+
+        @Override
+        public AndroidDebugBridgeManager.Bridge createBridge(File adbLocation, boolean stopCurrent) {
+            created++;
+            stoppedCurrent = stopCurrent;
+            current = new StubBridge(true);
+            return current;
+        }
+
+        @Override
+        public void terminate() {
+            terminated++;
+            current = null;
+        }
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.android.managed.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.android.ddmlib.IDevice;
+import com.android.ddmlib.IShellOutputReceiver;
+
+/**
+ * Tests detection of a completed boot by {@link BootCompletionDetector}.
+ */
+public class BootCompletionDetectorTestCase {
+
+    private ProcessExecutor executor;
+
+    @Before
+    public void setup() {
+        executor = new ProcessExecutor();
+    }
+
+    @After
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    @Test(timeout = 5000)
+    public void testMilestonesAreReportedUntilCompletion() throws Exception {
+        IDevice device = device(new Shell() {
+            @Override
+            public void run(int session, IShellOutputReceiver receiver) throws Exception {
+                output(receiver, "bootanim=running sys.boot_completed= dev.bootcomplete=\r\n");
+                Thread.sleep(50);
+                output(receiver, "bootanim=stopped sys.boot_completed=1 dev.bootcomplete=1\r\nBOOT_COMPLETED\r\n");
+            }
+        });
+
+        BootCompletionDetector detector = new BootCompletionDetector(device, executor);
+
+        assertTrue(detector.await(3, TimeUnit.SECONDS));
+        assertEquals(2, detector.getMilestones().size());
+        assertTrue(detector.getMilestones().get(0).startsWith("bootanim=running"));
+    }
+
+    @Test(timeout = 5000)
+    public void testSessionIsRestartedAfterFailure() throws Exception {
+        final AtomicInteger sessions = new AtomicInteger();
+        IDevice device = device(new Shell() {
+            @Override
+            public void run(int session, IShellOutputReceiver receiver) throws Exception {
+                sessions.incrementAndGet();
+                if (session == 0) {
+                    throw new IOException("device offline");
+                }
+                output(receiver, "BOOT_COMPLETED\r\n");
+            }
+        });
+
+        assertTrue(new BootCompletionDetector(device, executor).await(3, TimeUnit.SECONDS));
+        assertEquals(2, sessions.get());
+    }
+
+    @Test(timeout = 5000)
+    public void testSessionIsCancelledAfterTimeout() throws Exception {
+        final AtomicInteger cancelled = new AtomicInteger();
+        IDevice device = device(new Shell() {
+            @Override
+            public void run(int session, IShellOutputReceiver receiver) throws Exception {
+                output(receiver, "bootanim=running sys.boot_completed= dev.bootcomplete=\r\n");
+                // ddmlib polls the receiver while the command is silent
+                while (!receiver.isCancelled()) {
+                    Thread.sleep(10);
+                }
+                cancelled.incrementAndGet();
+            }
+        });
+
+        assertFalse(new BootCompletionDetector(device, executor).await(200, TimeUnit.MILLISECONDS));
+        long deadline = System.currentTimeMillis() + 2000;
+        while (cancelled.get() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, cancelled.get());
+    }
+
+    @Test(timeout = 10000)
+    public void testFirstBootDoesNotCompleteBootOfCurrentImages() throws Exception {
+        assumeTrue(new File("/bin/sh").canExecute());
+        final File properties = properties();
+        try {
+            setProperty(properties, "ro.build.version.sdk", "17");
+            // system_server sets the first boot long before the boot is completed
+            setProperty(properties, "ro.runtime.firstboot", "1234567890");
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        Thread.sleep(500);
+                        setProperty(properties, "sys.boot_completed", "1");
+                    } catch (Exception e) {
+                        // the boot is not completed and the test fails
+                    }
+                }
+            }.start();
+
+            long start = System.nanoTime();
+            assertTrue(new BootCompletionDetector(device(localShell(properties)), executor).await(5, TimeUnit.SECONDS));
+            assertFalse(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 500L);
+        } finally {
+            delete(properties);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testFirstBootCompletesBootOfOldImages() throws Exception {
+        assumeTrue(new File("/bin/sh").canExecute());
+        File properties = properties();
+        try {
+            setProperty(properties, "ro.build.version.sdk", "7");
+            setProperty(properties, "ro.runtime.firstboot", "1234567890");
+
+            assertTrue(new BootCompletionDetector(device(localShell(properties)), executor).await(5, TimeUnit.SECONDS));
+        } finally {
+            delete(properties);
+        }
+    }
+
+    // runs the watch script by the local shell, getprop reads properties from files of the directory
+    private static Shell localShell(final File properties) {
+        return new Shell() {
+            @Override
+            public void run(int session, IShellOutputReceiver receiver) throws Exception {
+                ProcessBuilder builder = new ProcessBuilder("/bin/sh", "-c", BootCompletionDetector.WATCH_SCRIPT);
+                builder.environment().put("PATH", properties.getAbsolutePath() + File.pathSeparator
+                    + builder.environment().get("PATH"));
+                builder.redirectErrorStream(true);
+                Process process = builder.start();
+                try {
+                    InputStream output = process.getInputStream();
+                    // the script is polled, so it is not waited for after the detector cancelled the session
+                    while (!receiver.isCancelled()) {
+                        boolean exited = hasExited(process);
+                        if (output.available() != 0) {
+                            byte[] buffer = new byte[output.available()];
+                            int read = output.read(buffer);
+                            // the local shell terminates lines with LF only
+                            output(receiver, new String(buffer, 0, read).replace("\n", "\r\n"));
+                        } else if (exited) {
+                            break;
+                        } else {
+                            Thread.sleep(10);
+                        }
+                    }
+                } finally {
+                    process.destroy();
+                }
+            }
+        };
+    }
+
+    private static boolean hasExited(Process process) {
+        try {
+            process.exitValue();
+            return true;
+        } catch (IllegalThreadStateException e) {
+            return false;
+        }
+    }
+
+    private static File properties() throws IOException {
+        File properties = File.createTempFile("properties", "");
+        properties.delete();
+        properties.mkdirs();
+        File getprop = new File(properties, "getprop");
+        FileWriter writer = new FileWriter(getprop);
+        try {
+            writer.write("#!/bin/sh\ncat \"" + properties.getAbsolutePath() + "/$1\" 2>/dev/null\n");
+        } finally {
+            writer.close();
+        }
+        getprop.setExecutable(true);
+        return properties;
+    }
+
+    private static void setProperty(File properties, String name, String value) throws IOException {
+        FileWriter writer = new FileWriter(new File(properties, name));
+        try {
+            writer.write(value);
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static void delete(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    // adb shell terminates lines with CRLF
+    private static void output(IShellOutputReceiver receiver, String output) {
+        byte[] bytes = output.getBytes();
+        receiver.addOutput(bytes, 0, bytes.length);
+    }
+
+    private interface Shell {
+        void run(int session, IShellOutputReceiver receiver) throws Exception;
+    }
+
+    private static IDevice device(final Shell shell) {
+        final AtomicInteger sessions = new AtomicInteger();
+        return (IDevice) Proxy.newProxyInstance(IDevice.class.getClassLoader(), new Class<?>[] { IDevice.class },
+            new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    if ("executeShellCommand".equals(method.getName())) {
+                        IShellOutputReceiver receiver = (IShellOutputReceiver) args[1];
+                        shell.run(sessions.getAndIncrement(), receiver);
+                        receiver.flush();
+                        return null;
+                    }
+                    if ("getSerialNumber".equals(method.getName())) {
+                        return "emulator-5554";
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                }
+            });
+    }
+}
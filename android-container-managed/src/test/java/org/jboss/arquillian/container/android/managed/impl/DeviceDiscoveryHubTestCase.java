@@ -0,0 +1,138 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.android.managed.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.jboss.arquillian.container.android.managed.impl.DeviceDiscoveryHub.DeviceState;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.android.ddmlib.IDevice;
+
+/**
+ * Tests tracking of device states by {@link DeviceDiscoveryHub}.
+ */
+public class DeviceDiscoveryHubTestCase {
+
+    private DeviceDiscoveryHub hub;
+
+    @Before
+    public void setup() {
+        hub = new DeviceDiscoveryHub();
+    }
+
+    @Test(timeout = 5000)
+    public void testEachEmulatorCompletesItsOwnFuture() throws Exception {
+        ProcessFuture<IDevice> first = hub.awaitOnline(5554);
+        ProcessFuture<IDevice> second = hub.awaitOnline(5556);
+
+        IDevice other = device("emulator-5556", new AtomicBoolean(true));
+        hub.deviceConnected(other);
+        assertFalse(first.isDone());
+        assertSame(other, second.get(1, TimeUnit.SECONDS));
+
+        IDevice own = device("emulator-5554", new AtomicBoolean(true));
+        hub.deviceConnected(own);
+        assertSame(own, first.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test(timeout = 5000)
+    public void testStateChangeBringsBootingEmulatorOnline() throws Exception {
+        AtomicBoolean online = new AtomicBoolean(false);
+        IDevice device = device("emulator-5554", online);
+        ProcessFuture<IDevice> future = hub.awaitOnline(5554);
+
+        hub.deviceConnected(device);
+        assertEquals(DeviceState.CONNECTED, hub.getState("emulator-5554"));
+        assertFalse(future.isDone());
+
+        // changes other than a state change are ignored
+        online.set(true);
+        hub.deviceChanged(device, IDevice.CHANGE_BUILD_INFO);
+        assertFalse(future.isDone());
+
+        hub.deviceChanged(device, IDevice.CHANGE_STATE | IDevice.CHANGE_BUILD_INFO);
+        assertSame(device, future.get(1, TimeUnit.SECONDS));
+        assertEquals(DeviceState.ONLINE, hub.getState("emulator-5554"));
+    }
+
+    @Test(timeout = 5000)
+    public void testConnectionIsReportedInAnyState() throws Exception {
+        AtomicBoolean online = new AtomicBoolean(false);
+        IDevice device = device("emulator-5554", online);
+        ProcessFuture<IDevice> connected = hub.awaitConnected(5554);
+
+        hub.deviceConnected(device);
+        assertSame(device, connected.get(1, TimeUnit.SECONDS));
+
+        // a device which is connected already completes the future right away
+        assertSame(device, hub.awaitConnected(5554).get(1, TimeUnit.SECONDS));
+        assertFalse(hub.awaitConnected(5556).isDone());
+    }
+
+    @Test(timeout = 5000)
+    public void testDeviceAlreadyInStateCompletesFutureImmediately() throws Exception {
+        IDevice device = device("emulator-5554", new AtomicBoolean(true));
+        hub.deviceConnected(device);
+
+        assertSame(device, hub.awaitOnline(5554).get(1, TimeUnit.SECONDS));
+        // a device which was never connected is disconnected
+        assertTrue(hub.await("emulator-5556", DeviceState.DISCONNECTED).isDone());
+    }
+
+    @Test(timeout = 5000)
+    public void testDisconnectionIsAwaitedBySerialNumber() throws Exception {
+        IDevice first = device("emulator-5554", new AtomicBoolean(true));
+        IDevice second = device("emulator-5556", new AtomicBoolean(true));
+        hub.deviceConnected(first);
+        hub.deviceConnected(second);
+
+        ProcessFuture<IDevice> disconnected = hub.await("emulator-5554", DeviceState.DISCONNECTED);
+        hub.deviceDisconnected(second);
+        assertFalse(disconnected.isDone());
+
+        hub.deviceDisconnected(first);
+        assertSame(first, disconnected.get(1, TimeUnit.SECONDS));
+        assertEquals(DeviceState.DISCONNECTED, hub.getState("emulator-5554"));
+    }
+
+    private static IDevice device(final String serialNumber, final AtomicBoolean online) {
+        return (IDevice) Proxy.newProxyInstance(IDevice.class.getClassLoader(), new Class<?>[] { IDevice.class },
+            new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    if ("getSerialNumber".equals(method.getName())) {
+                        return serialNumber;
+                    }
+                    if ("isOnline".equals(method.getName())) {
+                        return online.get();
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                }
+            });
+    }
+}
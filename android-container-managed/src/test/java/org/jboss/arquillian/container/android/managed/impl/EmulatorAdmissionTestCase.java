@@ -0,0 +1,164 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.android.managed.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests admission of emulators by {@link EmulatorAdmission}.
+ */
+public class EmulatorAdmissionTestCase {
+
+    private File directory;
+    private File meminfo;
+
+    @Before
+    public void setup() throws IOException {
+        directory = File.createTempFile("admission", "");
+        directory.delete();
+        directory.mkdirs();
+        meminfo = File.createTempFile("meminfo", "");
+    }
+
+    @After
+    public void cleanup() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+        meminfo.delete();
+    }
+
+    @Test
+    public void testFootprintIsEstimatedFromConfiguration() throws IOException {
+        File configuration = new File(directory, "config.ini");
+
+        write(configuration, "hw.ram.size=1536\nhw.cpu.ncore=2\n");
+        EmulatorAdmission.Footprint footprint = EmulatorAdmission.Footprint.of(directory);
+        assertEquals(1536L + 256L, footprint.getRamMegabytes());
+        assertEquals(2, footprint.getCores());
+
+        write(configuration, "hw.ram.size=2G\n");
+        footprint = EmulatorAdmission.Footprint.of(directory);
+        assertEquals(2048L + 256L, footprint.getRamMegabytes());
+        assertEquals(1, footprint.getCores());
+
+        write(configuration, "hw.ram.size=1024MB\nhw.cpu.ncore=many\n");
+        assertEquals(1024L + 256L, EmulatorAdmission.Footprint.of(directory).getRamMegabytes());
+    }
+
+    @Test(timeout = 10000)
+    public void testEmulatorIsQueuedUntilProcessorsAreReleased() throws Exception {
+        write(meminfo, "MemTotal:       16777216 kB\nMemAvailable:   16777216 kB\n");
+        EmulatorAdmission admission = new EmulatorAdmission(directory, meminfo, 2);
+        EmulatorAdmission.Footprint footprint = new EmulatorAdmission.Footprint(768L, 1);
+
+        final EmulatorAdmission.Ticket first = admission.admit(footprint, 1, TimeUnit.SECONDS);
+        EmulatorAdmission.Ticket second = admission.admit(footprint, 1, TimeUnit.SECONDS);
+        assertNotNull(second);
+        assertNotAdmitted(admission, footprint);
+
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    // release right away
+                }
+                first.release();
+            }
+        }.start();
+
+        EmulatorAdmission.Ticket third = admission.admit(footprint, 5, TimeUnit.SECONDS);
+        assertTrue(third.getQueueTime(TimeUnit.MILLISECONDS) >= 100L);
+        second.release();
+        third.release();
+    }
+
+    @Test
+    public void testEmulatorIsQueuedUntilMemoryIsReleased() throws Exception {
+        // 4 GB of memory, 1 GB of it is left to the host
+        write(meminfo, "MemTotal:        4194304 kB\nMemFree:          102400 kB\nMemAvailable:    4194304 kB\n");
+        EmulatorAdmission admission = new EmulatorAdmission(directory, meminfo, 8);
+        EmulatorAdmission.Footprint footprint = new EmulatorAdmission.Footprint(2048L, 1);
+
+        EmulatorAdmission.Ticket first = admission.admit(footprint, 1, TimeUnit.SECONDS);
+        assertNotAdmitted(admission, footprint);
+
+        first.release();
+        admission.admit(footprint, 1, TimeUnit.SECONDS).release();
+    }
+
+    @Test
+    public void testEmulatorBiggerThanHostIsAdmittedAlone() throws Exception {
+        write(meminfo, "MemTotal:        2097152 kB\nMemAvailable:     524288 kB\n");
+        EmulatorAdmission admission = new EmulatorAdmission(directory, meminfo, 1);
+
+        EmulatorAdmission.Ticket ticket = admission.admit(new EmulatorAdmission.Footprint(4096L, 4), 1, TimeUnit.SECONDS);
+        ticket.release();
+        ticket.release();
+    }
+
+    @Test
+    public void testTicketOfExitedJvmIsIgnored() throws Exception {
+        write(meminfo, "");
+        File stale = new File(directory, "stale" + EmulatorAdmission.TICKET_SUFFIX);
+        write(stale, "hw.ram.size=512\nhw.cpu.ncore=1\n");
+        EmulatorAdmission admission = new EmulatorAdmission(directory, meminfo, 1);
+
+        EmulatorAdmission.Ticket ticket = admission.admit(new EmulatorAdmission.Footprint(768L, 1), 1, TimeUnit.SECONDS);
+        assertFalse(stale.exists());
+        ticket.release();
+    }
+
+    private static void assertNotAdmitted(EmulatorAdmission admission, EmulatorAdmission.Footprint footprint)
+        throws Exception {
+        try {
+            admission.admit(footprint, 100, TimeUnit.MILLISECONDS).release();
+            fail("The host does not have capacity for the emulator");
+        } catch (TimeoutException e) {
+            // expected
+        }
+    }
+
+    private static void write(File file, String content) throws IOException {
+        FileWriter writer = new FileWriter(file);
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.android.managed.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.jboss.arquillian.container.android.api.AndroidExecutionException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link EmulatorConsole} against a local stand-in of the emulator console.
+ */
+public class EmulatorConsoleTestCase {
+
+    private static final String AUTH_BANNER = "Android Console: Authentication required\r\n"
+        + "Android Console: type 'auth <auth_token>' to authenticate\r\nOK\r\n";
+
+    private StandInConsole server;
+    private File authToken;
+
+    @Before
+    public void setup() throws IOException {
+        authToken = File.createTempFile("auth", "token");
+    }
+
+    @After
+    public void cleanup() throws IOException {
+        if (server != null) {
+            server.close();
+        }
+        authToken.delete();
+    }
+
+    @Test(timeout = 5000)
+    public void testCommandsArePipelinedOverSingleConnection() throws Exception {
+        server = new StandInConsole(StandInConsole.BANNER, 2);
+        server.reply("avd name", "test\r\nOK\r\n");
+        server.reply("bogus", "KO: unknown command, try 'help'\r\n");
+        EmulatorConsole console = server.console(authToken);
+
+        // the stand-in replies only once it has read both commands
+        ProcessFuture<List<String>> name = console.send("avd name", 2, TimeUnit.SECONDS);
+        ProcessFuture<List<String>> bogus = console.send("bogus", 2, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList("test"), name.get());
+        try {
+            bogus.get();
+            fail("The console rejected the command");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof AndroidExecutionException);
+            assertTrue(e.getCause().getMessage().contains("KO: unknown command"));
+        }
+
+        server.reply("avd status", "virtual device is running\r\nOK\r\n");
+        server.reply("ping", "OK\r\n");
+        List<String> status = console.execute("avd status", 2, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList("virtual device is running"), status);
+        assertEquals(Collections.<String> emptyList(), console.execute("ping", 2, TimeUnit.SECONDS));
+        assertEquals(1, server.getConnections());
+    }
+
+    @Test(timeout = 5000)
+    public void testConsoleIsAuthenticated() throws Exception {
+        write(authToken, "s3cr3t\n");
+        server = new StandInConsole(AUTH_BANNER, 1);
+        server.reply("auth s3cr3t", "Android Console: type 'help' for a list of commands\r\nOK\r\n");
+        server.reply("avd name", "test\r\nOK\r\n");
+
+        assertEquals(Arrays.asList("test"), server.console(authToken).execute("avd name", 2, TimeUnit.SECONDS));
+    }
+
+    @Test(timeout = 5000)
+    public void testMissingAuthTokenFailsCommand() throws Exception {
+        authToken.delete();
+        server = new StandInConsole(AUTH_BANNER, 1);
+
+        try {
+            server.console(authToken).execute("avd name", 2, TimeUnit.SECONDS);
+            fail("The console requires authentication");
+        } catch (AndroidExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void testCommandFailsAfterDeadline() throws Exception {
+        server = new StandInConsole(StandInConsole.BANNER, 1);
+        EmulatorConsole console = server.console(authToken);
+
+        long started = System.nanoTime();
+        try {
+            console.execute("avd name", 200, TimeUnit.MILLISECONDS);
+            fail("The console did not reply");
+        } catch (AndroidExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) < 2000L);
+
+        // the connection which timed out is replaced
+        server.reply("avd name", "test\r\nOK\r\n");
+        assertEquals(Arrays.asList("test"), console.execute("avd name", 2, TimeUnit.SECONDS));
+        assertEquals(2, server.getConnections());
+    }
+
+    private static void write(File file, String content) throws IOException {
+        Writer writer = new FileWriter(file);
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.android.managed.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests allocation of processor cores by {@link EmulatorCoreAllocator}.
+ */
+public class EmulatorCoreAllocatorTestCase {
+
+    private File directory;
+
+    @Before
+    public void setup() throws IOException {
+        directory = File.createTempFile("cores", "");
+        directory.delete();
+        directory.mkdirs();
+    }
+
+    @After
+    public void cleanup() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testEmulatorsGetDisjointCores() {
+        EmulatorCoreAllocator allocator = new EmulatorCoreAllocator(directory, range(0, 5));
+
+        EmulatorCoreAllocator.Cores first = allocator.allocate(2);
+        EmulatorCoreAllocator.Cores second = allocator.allocate(2);
+        assertEquals("4,5", first.toString());
+        assertEquals("2,3", second.toString());
+
+        // the first core is left to the host
+        assertNull(allocator.allocate(2));
+        EmulatorCoreAllocator.Cores third = allocator.allocate(1);
+        assertEquals("1", third.toString());
+
+        first.release();
+        first.release();
+        EmulatorCoreAllocator.Cores fourth = allocator.allocate(2);
+        assertNotNull(fourth);
+        assertEquals("4,5", fourth.toString());
+
+        second.release();
+        third.release();
+        fourth.release();
+    }
+
+    @Test
+    public void testOnlyCoreOfHostIsAllocated() {
+        EmulatorCoreAllocator allocator = new EmulatorCoreAllocator(directory, range(0, 0));
+
+        EmulatorCoreAllocator.Cores cores = allocator.allocate(1);
+        assertEquals("0", cores.toString());
+        assertNull(allocator.allocate(1));
+        cores.release();
+    }
+
+    @Test
+    public void testOnlyAllowedCoresAreAllocated() {
+        EmulatorCoreAllocator allocator = new EmulatorCoreAllocator(directory, Arrays.asList(7, 2, 6, 3));
+
+        EmulatorCoreAllocator.Cores first = allocator.allocate(2);
+        assertEquals("6,7", first.toString());
+        // the first allowed core is left to the host
+        assertNull(allocator.allocate(2));
+        EmulatorCoreAllocator.Cores second = allocator.allocate(1);
+        assertEquals("3", second.toString());
+
+        first.release();
+        second.release();
+    }
+
+    @Test
+    public void testAllowedCoresAreReadFromStatus() throws IOException {
+        File status = new File(directory, "status");
+        FileWriter writer = new FileWriter(status);
+        try {
+            writer.write("Name:\tjava\nCpus_allowed:\t34f\nCpus_allowed_list:\t0-3,6,8-9\nMems_allowed:\t1\n");
+        } finally {
+            writer.close();
+        }
+
+        assertEquals(Arrays.asList(0, 1, 2, 3, 6, 8, 9), EmulatorCoreAllocator.allowedCores(status));
+        assertEquals(range(0, Runtime.getRuntime().availableProcessors() - 1),
+            EmulatorCoreAllocator.allowedCores(new File(directory, "missing")));
+    }
+
+    private static List<Integer> range(int first, int last) {
+        List<Integer> cores = new ArrayList<Integer>();
+        for (int core = first; core <= last; core++) {
+            cores.add(core);
+        }
+        return cores;
+    }
+}
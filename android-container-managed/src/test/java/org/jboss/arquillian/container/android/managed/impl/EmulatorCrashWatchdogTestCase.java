@@ -0,0 +1,156 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.android.managed.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.arquillian.container.android.api.AndroidExecutionException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests detection of emulator crashes by {@link EmulatorCrashWatchdog}.
+ */
+public class EmulatorCrashWatchdogTestCase {
+
+    private ProcessExecutor executor;
+
+    @Before
+    public void setup() {
+        executor = new ProcessExecutor();
+    }
+
+    @After
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    @Test(timeout = 5000)
+    public void testFatalOutputAbortsGuardedCondition() throws Exception {
+        ProcessOutputTail output = new ProcessOutputTail(10, 1024);
+        EmulatorCrashWatchdog watchdog = new EmulatorCrashWatchdog("test", output);
+        SignalledCondition condition = never();
+        watchdog.guard(condition);
+
+        watchdog.handle("emulator: warning: opening audio output failed\n");
+        assertNull(watchdog.getFailure());
+
+        watchdog.handle("PANIC: Could not open AVD config file: /tmp/test.avd/config.ini\n");
+        assertAborted(condition, "PANIC: Could not open AVD config file");
+        assertEquals(2, output.getLines().size());
+    }
+
+    @Test(timeout = 5000)
+    public void testProcessExitAbortsGuardedCondition() throws Exception {
+        assumeTrue(new File("/bin/sh").canExecute());
+
+        EmulatorCrashWatchdog watchdog = new EmulatorCrashWatchdog("test", new ProcessOutputTail(10, 1024));
+        SignalledCondition condition = never();
+        watchdog.guard(condition);
+        watchdog.watch(executor, executor.spawn("/bin/sh", "-c", "exit 3"));
+
+        assertAborted(condition, "exited with code 3");
+    }
+
+    @Test(timeout = 5000)
+    public void testExitOfProcessIsAwaitedOnce() throws Exception {
+        assumeTrue(new File("/bin/sh").canExecute());
+
+        Process process = executor.spawn("/bin/sh", "-c", "sleep 1; exit 3");
+        ProcessFuture<Integer> exit = executor.onExit(process);
+        assertSame(exit, executor.onExit(process));
+        assertEquals(Integer.valueOf(3), exit.get());
+    }
+
+    @Test(timeout = 5000)
+    public void testRedirectedOutputIsScanned() throws Exception {
+        File log = File.createTempFile("emulator", ".log");
+        log.deleteOnExit();
+
+        ProcessOutputTail output = new ProcessOutputTail(10, 1024);
+        EmulatorCrashWatchdog watchdog = new EmulatorCrashWatchdog("test", output);
+        SignalledCondition condition = never();
+        watchdog.guard(condition);
+        watchdog.watch(new ProcessLogScanner("test", log));
+
+        FileWriter writer = new FileWriter(log);
+        try {
+            writer.write("emulator: ERROR: x86 emulation currently requires hardware acceleration!\n");
+        } finally {
+            writer.close();
+        }
+
+        assertAborted(condition, "requires hardware acceleration");
+        assertEquals(1, output.getLines().size());
+    }
+
+    @Test
+    public void testDisarmedWatchdogIgnoresCrash() throws Exception {
+        EmulatorCrashWatchdog watchdog = new EmulatorCrashWatchdog("test", new ProcessOutputTail(10, 1024));
+        SignalledCondition condition = never();
+        watchdog.guard(condition);
+        watchdog.disarm();
+
+        watchdog.handle("PANIC: Missing emulator engine program for 'x86' CPU.\n");
+
+        assertNull(watchdog.getFailure());
+        assertFalse(condition.await(10, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testConditionGuardedAfterCrashIsAborted() throws Exception {
+        EmulatorCrashWatchdog watchdog = new EmulatorCrashWatchdog("test", new ProcessOutputTail(10, 1024));
+        watchdog.handle("emulator: ERROR: unknown virtual device name: 'test'\n");
+
+        SignalledCondition condition = never();
+        watchdog.guard(condition);
+
+        assertAborted(condition, "unknown virtual device name");
+    }
+
+    private static SignalledCondition never() {
+        return new SignalledCondition(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return false;
+            }
+        }, 60000L, 60000L);
+    }
+
+    private static void assertAborted(SignalledCondition condition, String message) throws InterruptedException {
+        try {
+            condition.await(30, TimeUnit.SECONDS);
+            fail("Waiting should have been aborted");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof AndroidExecutionException);
+            assertTrue(e.getCause().getMessage(), e.getCause().getMessage().contains(message));
+        }
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.android.managed.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests leasing and eviction of emulators in {@link EmulatorPool}.
+ */
+public class EmulatorPoolTestCase {
+
+    private static final List<String> RUNNING = Arrays.asList("emulator-5554", "emulator-5556");
+
+    private File directory;
+    private File resources;
+    private EmulatorPool pool;
+
+    @Before
+    public void setup() throws IOException {
+        directory = File.createTempFile("pool", "");
+        directory.delete();
+        resources = File.createTempFile("resources", "");
+        resources.delete();
+        resources.mkdirs();
+        pool = new EmulatorPool(directory);
+    }
+
+    @After
+    public void cleanup() {
+        delete(directory);
+        delete(resources);
+    }
+
+    private static void delete(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testReleasedEmulatorIsLeasedOnlyOnce() {
+        pool.release(new PooledEmulator("emulator-5554", "test", "19", "x86", false));
+
+        PooledEmulator leased = pool.lease("test", "19", "x86", RUNNING);
+        assertNotNull(leased);
+        assertEquals("emulator-5554", leased.getSerialNumber());
+        assertTrue(pool.contains("emulator-5554"));
+
+        assertNull(pool.lease("test", "19", "x86", RUNNING));
+
+        pool.release(leased);
+        assertNotNull(pool.lease("test", "19", "x86", RUNNING));
+    }
+
+    @Test
+    public void testEmulatorOfGoneLesseeIsReclaimed() {
+        pool.release(new PooledEmulator("emulator-5554", "test", "19", null, false));
+        PooledEmulator leased = pool.lease("test", "19", null, RUNNING);
+        assertTrue(new File(directory, "emulator-5554" + EmulatorPool.LEASED).isFile());
+
+        // the lock of the lease is released when the JVM of the lessee exits, its lease stays
+        leased.releaseLease();
+
+        assertTrue(pool.contains("emulator-5554"));
+        PooledEmulator reclaimed = pool.lease("test", "19", null, RUNNING);
+        assertNotNull(reclaimed);
+        assertEquals("emulator-5554", reclaimed.getSerialNumber());
+        assertNull(pool.lease("test", "19", null, RUNNING));
+        reclaimed.releaseLease();
+    }
+
+    @Test
+    public void testAdmissionIsHeldWhileEmulatorIsPooled() throws Exception {
+        PooledEmulator emulator = new PooledEmulator("emulator-5554", "test", "19", null, false);
+        EmulatorAdmission.Ticket ticket = admit();
+        emulator.setAdmission(ticket);
+        pool.release(emulator);
+        assertEquals(1, countTickets());
+
+        PooledEmulator leased = pool.lease("test", "19", null, RUNNING);
+        assertSame(ticket, leased.getAdmission());
+        pool.release(leased);
+        assertEquals(1, countTickets());
+
+        Thread.sleep(20);
+        List<PooledEmulator> evicted = pool.evictIdle(10L);
+        assertSame(ticket, evicted.get(0).getAdmission());
+        assertEquals(1, countTickets());
+
+        pool.remove(evicted.get(0));
+        assertEquals(0, countTickets());
+    }
+
+    @Test
+    public void testCoresAreReservedWhileEmulatorIsPooled() {
+        EmulatorCoreAllocator allocator = new EmulatorCoreAllocator(resources, Arrays.asList(5));
+        PooledEmulator emulator = new PooledEmulator("emulator-5554", "test", "19", null, false);
+        emulator.setCores(allocator.allocate(1));
+        pool.release(emulator);
+        assertNull(allocator.allocate(1));
+
+        PooledEmulator leased = pool.lease("test", "19", null, RUNNING);
+        assertEquals("5", leased.getCores().toString());
+        assertNull(allocator.allocate(1));
+
+        pool.remove(leased);
+        EmulatorCoreAllocator.Cores cores = allocator.allocate(1);
+        assertNotNull(cores);
+        cores.release();
+    }
+
+    @Test
+    public void testAdmissionIsReleasedWhenEmulatorIsRemovedByAnotherJvm() throws Exception {
+        PooledEmulator emulator = new PooledEmulator("emulator-5554", "test", "19", null, false);
+        emulator.setAdmission(admit());
+        pool.release(emulator);
+
+        assertTrue(new File(directory, "emulator-5554" + EmulatorPool.IDLE).delete());
+        pool.evictIdle(60000L);
+        assertEquals(0, countTickets());
+    }
+
+    @Test
+    public void testEmulatorIsLeasedByMatchingKey() {
+        pool.release(new PooledEmulator("emulator-5554", "generated", "19", "x86", true));
+        pool.release(new PooledEmulator("emulator-5556", "named", "19", "x86", false));
+
+        // a generated AVD is matched by API level and ABI
+        assertNull(pool.lease(null, "17", "x86", RUNNING));
+        assertNull(pool.lease(null, "19", "armeabi-v7a", RUNNING));
+        PooledEmulator generated = pool.lease(null, "19", "x86", RUNNING);
+        assertEquals("generated", generated.getAvdName());
+        assertTrue(generated.isGenerated());
+
+        // a named AVD is matched by its name only
+        assertNull(pool.lease("other", "19", "x86", RUNNING));
+        assertEquals("named", pool.lease("named", "10", null, RUNNING).getAvdName());
+    }
+
+    @Test
+    public void testEmulatorWhichIsNotRunningIsNotLeased() {
+        pool.release(new PooledEmulator("emulator-5554", "test", "19", null, false));
+
+        assertNull(pool.lease("test", "19", null, Collections.<String> emptyList()));
+        assertTrue(pool.contains("emulator-5554"));
+    }
+
+    @Test
+    public void testIdleEmulatorsAreEvicted() throws Exception {
+        pool.release(new PooledEmulator("emulator-5554", "test", "19", null, false));
+
+        assertTrue(pool.evictIdle(60000L).isEmpty());
+
+        Thread.sleep(20);
+        List<PooledEmulator> evicted = pool.evictIdle(10L);
+        assertEquals(1, evicted.size());
+        assertNull(pool.lease("test", "19", null, RUNNING));
+        assertTrue(pool.contains("emulator-5554"));
+
+        pool.remove(evicted.get(0));
+        assertFalse(pool.contains("emulator-5554"));
+    }
+
+    private EmulatorAdmission.Ticket admit() throws Exception {
+        File meminfo = new File(resources, "meminfo");
+        meminfo.createNewFile();
+        return new EmulatorAdmission(resources, meminfo, 1).admit(new EmulatorAdmission.Footprint(768L, 1), 1,
+            TimeUnit.SECONDS);
+    }
+
+    private int countTickets() {
+        int tickets = 0;
+        for (File file : resources.listFiles()) {
+            if (file.getName().endsWith(EmulatorAdmission.TICKET_SUFFIX)) {
+                tickets++;
+            }
+        }
+        return tickets;
+    }
+}
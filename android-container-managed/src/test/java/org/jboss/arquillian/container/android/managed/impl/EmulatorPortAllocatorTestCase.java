@@ -0,0 +1,178 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.android.managed.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.Arrays;
+
+import org.jboss.arquillian.container.android.api.AndroidExecutionException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests allocation of emulator ports by {@link EmulatorPortAllocator}.
+ */
+public class EmulatorPortAllocatorTestCase {
+
+    private File directory;
+    private ServerSocket range;
+    private int first;
+
+    @Before
+    public void setup() throws IOException {
+        directory = File.createTempFile("ports", "");
+        directory.delete();
+
+        // an even port which is free together with the three ports following it
+        for (first = 20000; first < 30000; first += 2) {
+            if (free(first) && free(first + 1) && free(first + 2) && free(first + 3)) {
+                break;
+            }
+        }
+    }
+
+    @After
+    public void cleanup() throws IOException {
+        if (range != null) {
+            range.close();
+        }
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testAllocatedPortsAreNotAllocatedUntilReleased() {
+        EmulatorPortAllocator allocator = new EmulatorPortAllocator(directory, first, first + 2);
+
+        EmulatorPortAllocator.EmulatorPorts ports = allocator.allocate();
+        assertEquals(first, ports.getConsolePort());
+        assertEquals(first + 1, ports.getAdbPort());
+
+        // another allocator shares the lock files like an allocator of another JVM
+        EmulatorPortAllocator.EmulatorPorts other = new EmulatorPortAllocator(directory, first, first + 2).allocate();
+        assertEquals(first + 2, other.getConsolePort());
+
+        try {
+            allocator.allocate();
+            fail("All the ports are allocated");
+        } catch (AndroidExecutionException e) {
+            // expected
+        }
+
+        ports.release();
+        ports.release();
+        assertEquals(first, allocator.allocate().getConsolePort());
+        assertTrue(new File(directory, first + ".lock").exists());
+    }
+
+    @Test(timeout = 30000)
+    public void testLockOfPortsIsKeptWhenAnotherContainerOfTheJvmAllocatesPorts() throws Exception {
+        File java = new File(new File(System.getProperty("java.home"), "bin"), "java");
+        assumeTrue(java.canExecute());
+
+        EmulatorPortAllocator.EmulatorPorts ports = new EmulatorPortAllocator(directory, first, first + 2).allocate();
+        // the allocator of another container tries the allocated ports first, it must not close the lock file of them
+        EmulatorPortAllocator.EmulatorPorts other = new EmulatorPortAllocator(directory, first, first + 2).allocate();
+        assertEquals(first + 2, other.getConsolePort());
+
+        ProcessExecutor executor = new ProcessExecutor();
+        try {
+            assertEquals(Arrays.asList("locked\n"), executor.execute(java.getAbsolutePath(), "-cp",
+                System.getProperty("java.class.path"), getClass().getName(), new File(directory, first + ".lock")
+                    .getAbsolutePath()));
+        } finally {
+            executor.shutdown();
+            ports.release();
+            other.release();
+        }
+    }
+
+    @Test
+    public void testReleasingReleasedPortsKeepsLockOfAnotherContainer() throws Exception {
+        File java = new File(new File(System.getProperty("java.home"), "bin"), "java");
+        assumeTrue(java.canExecute());
+
+        EmulatorPortAllocator.EmulatorPorts released = new EmulatorPortAllocator(directory, first, first + 2).allocate();
+        released.release();
+        EmulatorPortAllocator.EmulatorPorts ports = new EmulatorPortAllocator(directory, first, first + 2).allocate();
+        assertEquals(first, ports.getConsolePort());
+        released.release();
+        // the allocator of a third container must not close the lock file of the ports allocated again
+        EmulatorPortAllocator.EmulatorPorts other = new EmulatorPortAllocator(directory, first, first + 2).allocate();
+        assertEquals(first + 2, other.getConsolePort());
+
+        ProcessExecutor executor = new ProcessExecutor();
+        try {
+            assertEquals(Arrays.asList("locked\n"), executor.execute(java.getAbsolutePath(), "-cp",
+                System.getProperty("java.class.path"), getClass().getName(), new File(directory, first + ".lock")
+                    .getAbsolutePath()));
+        } finally {
+            executor.shutdown();
+            ports.release();
+            other.release();
+        }
+    }
+
+    /**
+     * Reports whether a file is locked, as seen by another JVM.
+     *
+     * @param args path of the file
+     * @throws IOException if the file can not be opened
+     */
+    public static void main(String[] args) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(args[0], "rw");
+        try {
+            System.out.println(file.getChannel().tryLock() == null ? "locked" : "free");
+        } finally {
+            file.close();
+        }
+    }
+
+    @Test
+    public void testBoundPortsAreSkipped() throws IOException {
+        // the adb port of the first pair is taken by a process which does not use the allocator
+        range = new ServerSocket(first + 1, 1, InetAddress.getByName("127.0.0.1"));
+
+        EmulatorPortAllocator.EmulatorPorts ports = new EmulatorPortAllocator(directory, first, first + 2).allocate();
+        assertEquals(first + 2, ports.getConsolePort());
+        ports.release();
+    }
+
+    private static boolean free(int port) {
+        try {
+            new ServerSocket(port, 1, InetAddress.getByName("127.0.0.1")).close();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
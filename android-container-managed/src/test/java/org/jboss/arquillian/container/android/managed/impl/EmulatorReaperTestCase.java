@@ -0,0 +1,119 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.android.managed.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tests deferring of teardowns to {@link EmulatorReaper}.
+ */
+public class EmulatorReaperTestCase {
+
+    @Test(timeout = 5000)
+    public void testTasksAreRunInBackgroundInOrder() throws Exception {
+        EmulatorReaper reaper = new EmulatorReaper();
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<String> finished = Collections.synchronizedList(new ArrayList<String>());
+
+        reaper.defer(new RecordingTask("first", finished, release), 1, TimeUnit.SECONDS);
+        reaper.defer(new RecordingTask("second", finished, null), 1, TimeUnit.SECONDS);
+
+        // deferring does not wait for the tasks
+        assertTrue(finished.isEmpty());
+        assertEquals(Arrays.asList("first", "second"), reaper.getLeftovers());
+
+        release.countDown();
+        assertTrue(reaper.await(2, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("first", "second"), finished);
+        assertTrue(reaper.getLeftovers().isEmpty());
+    }
+
+    @Test(timeout = 5000)
+    public void testLeftoversOfUnfinishedTasksAreReported() throws Exception {
+        EmulatorReaper reaper = new EmulatorReaper();
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> finished = Collections.synchronizedList(new ArrayList<String>());
+
+        reaper.defer(new RecordingTask("stuck", finished, release), 1, TimeUnit.SECONDS);
+        assertFalse(reaper.await(100, TimeUnit.MILLISECONDS));
+        assertEquals(Arrays.asList("stuck"), reaper.getLeftovers());
+
+        release.countDown();
+        assertTrue(reaper.await(2, TimeUnit.SECONDS));
+    }
+
+    @Test(timeout = 5000)
+    public void testFailedTaskDoesNotStopReaper() throws Exception {
+        EmulatorReaper reaper = new EmulatorReaper();
+        List<String> finished = Collections.synchronizedList(new ArrayList<String>());
+
+        reaper.defer(new RecordingTask("failing", finished, null) {
+            @Override
+            public void run() {
+                throw new IllegalStateException("teardown failed");
+            }
+        }, 1, TimeUnit.SECONDS);
+        reaper.defer(new RecordingTask("next", finished, null), 1, TimeUnit.SECONDS);
+
+        assertTrue(reaper.await(2, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("next"), finished);
+    }
+
+    /**
+     * Task which waits for a latch and records it finished, its name is its leftover until then.
+     */
+    private static class RecordingTask implements EmulatorReaper.Task {
+
+        private final String name;
+        private final List<String> finished;
+        private final CountDownLatch release;
+
+        RecordingTask(String name, List<String> finished, CountDownLatch release) {
+            this.name = name;
+            this.finished = finished;
+            this.release = release;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (release != null) {
+                    release.await();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            finished.add(name);
+        }
+
+        @Override
+        public List<String> getLeftovers() {
+            return finished.contains(name) ? Collections.<String> emptyList() : Collections.singletonList(name);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.android.managed.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests lifecycle of {@link EmulatorSnapshot}.
+ */
+public class EmulatorSnapshotTestCase {
+
+    private File root;
+    private File avd;
+    private File sdk;
+    private File emulator;
+
+    @Before
+    public void setup() throws IOException {
+        root = File.createTempFile("snapshot", "");
+        root.delete();
+        avd = new File(root, "test.avd");
+        sdk = new File(root, "sdk");
+        File systemImage = new File(sdk, "system-images/android-19/default/x86");
+        systemImage.mkdirs();
+        avd.mkdirs();
+
+        write(new File(systemImage, "system.img"), "system");
+        write(new File(avd, "config.ini"), "hw.ram.size=512\nimage.sysdir.1=system-images/android-19/default/x86/\n");
+        emulator = new File(sdk, "emulator");
+        write(emulator, "emulator");
+    }
+
+    @After
+    public void cleanup() {
+        delete(root);
+    }
+
+    @Test
+    public void testColdBootUntilSaved() {
+        EmulatorSnapshot snapshot = snapshot();
+        assertFalse(snapshot.isUsable());
+        assertEquals(Arrays.asList("-snapshot", "clean", "-no-snapshot-load", "-no-snapshot-save"),
+            snapshot.getEmulatorOptions());
+
+        snapshot.saved();
+
+        EmulatorSnapshot saved = snapshot();
+        assertTrue(saved.isUsable());
+        assertEquals(Arrays.asList("-snapshot", "clean", "-no-snapshot-save"), saved.getEmulatorOptions());
+    }
+
+    @Test
+    public void testRewrittenConfigurationKeepsSnapshot() throws IOException {
+        snapshot().saved();
+
+        File configuration = new File(avd, "config.ini");
+        write(configuration, "image.sysdir.1=system-images/android-19/default/x86/\nhw.ram.size=512\n");
+        configuration.setLastModified(configuration.lastModified() + 10000);
+
+        assertTrue(snapshot().isUsable());
+    }
+
+    @Test
+    public void testChangedConfigurationInvalidatesSnapshot() throws IOException {
+        snapshot().saved();
+
+        write(new File(avd, "config.ini"), "hw.ram.size=1024\nimage.sysdir.1=system-images/android-19/default/x86/\n");
+
+        assertFalse(snapshot().isUsable());
+    }
+
+    @Test
+    public void testChangedSystemImageInvalidatesSnapshot() throws IOException {
+        snapshot().saved();
+
+        write(new File(sdk, "system-images/android-19/default/x86/ramdisk.img"), "ramdisk");
+
+        assertFalse(snapshot().isUsable());
+    }
+
+    @Test
+    public void testInvalidatedSnapshotIsNotUsed() {
+        snapshot().saved();
+        snapshot().invalidate();
+
+        assertFalse(snapshot().isUsable());
+    }
+
+    @Test
+    public void testBootTimesAreRecorded() throws IOException {
+        EmulatorSnapshot snapshot = snapshot();
+        snapshot.recordBoot(60000L);
+        snapshot.saved();
+        snapshot().recordBoot(3000L);
+
+        BufferedReader reader = new BufferedReader(new FileReader(new File(avd, EmulatorSnapshot.BOOT_TIMES_FILE)));
+        try {
+            assertTrue(reader.readLine().endsWith("\tclean\tcold\t60000"));
+            assertTrue(reader.readLine().endsWith("\tclean\tsnapshot\t3000"));
+        } finally {
+            reader.close();
+        }
+    }
+
+    private EmulatorSnapshot snapshot() {
+        return new EmulatorSnapshot("clean", avd, sdk, emulator);
+    }
+
+    private static void write(File file, String content) throws IOException {
+        FileWriter writer = new FileWriter(file);
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.android.managed.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests killing of emulators by {@link EmulatorTeardown} against a local stand-in of the emulator console.
+ */
+public class EmulatorTeardownTestCase {
+
+    private StandInConsole server;
+    private ProcessExecutor executor;
+    private File exit;
+
+    @Before
+    public void setup() throws IOException {
+        assumeTrue(new File("/bin/sh").canExecute());
+        server = new StandInConsole(StandInConsole.BANNER, 1);
+        executor = new ProcessExecutor();
+        exit = File.createTempFile("emulator", ".exit");
+        exit.delete();
+    }
+
+    @After
+    public void cleanup() throws IOException {
+        if (server != null) {
+            server.close();
+            executor.shutdown();
+            exit.delete();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testEmulatorExitsOnAcceptedKill() throws Exception {
+        // the emulator can not be destroyed, it exits only when it is killed through the console
+        Process emulator = spawnEmulator(true);
+        server.reply("kill", "OK: killing emulator, bye bye\r\n", new Runnable() {
+            @Override
+            public void run() {
+                exitEmulator();
+            }
+        });
+
+        assertTrue(kill(emulator, 5L));
+        assertEquals(0, emulator.exitValue());
+    }
+
+    @Test(timeout = 10000)
+    public void testEmulatorIsDestroyedWhenKillIsRejected() throws Exception {
+        Process emulator = spawnEmulator(false);
+        server.reply("kill", "KO: unknown command, try 'help'\r\n");
+
+        long started = System.nanoTime();
+        assertTrue(kill(emulator, 10L));
+        // destroyed right after the kill was rejected, not once the emulator did not exit in time
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) < 5000L);
+        emulator.exitValue();
+    }
+
+    @Test(timeout = 20000)
+    public void testExitOfDestroyedEmulatorIsAwaited() throws Exception {
+        // the emulator accepts the kill but it neither exits nor can it be destroyed, it exits on its own after the timeout
+        final Process emulator = spawnEmulator(true);
+        server.reply("kill", "OK: killing emulator, bye bye\r\n");
+        Thread exiting = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(2500L);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                exitEmulator();
+            }
+        };
+        exiting.start();
+
+        long started = System.nanoTime();
+        assertTrue(kill(emulator, 1L));
+        // the AVD is deleted only once the emulator exits
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) >= 2000L);
+        emulator.exitValue();
+    }
+
+    private boolean kill(Process emulator, long timeoutInSeconds) {
+        return EmulatorTeardown.kill(emulator, executor, server.console(new File(exit.getPath() + ".token")),
+            "emulator-5554", new CountDownWatch(timeoutInSeconds, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Spawns a process standing in for an emulator, which runs until {@link #exitEmulator()} is called or it is destroyed
+     * unless it ignores the signal.
+     */
+    private Process spawnEmulator(boolean ignoresDestroy) throws Exception {
+        String script = "while [ ! -f " + exit.getAbsolutePath() + " ]; do sleep 0.05; done";
+        return executor.spawn("/bin/sh", "-c", ignoresDestroy ? "trap '' TERM; " + script : script);
+    }
+
+    private void exitEmulator() {
+        try {
+            exit.createNewFile();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
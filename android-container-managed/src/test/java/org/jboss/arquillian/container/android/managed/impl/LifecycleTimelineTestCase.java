@@ -0,0 +1,108 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.android.managed.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.arquillian.android.spi.event.AndroidLifecycleTimings;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests recording of phases by {@link LifecycleTimeline}.
+ */
+public class LifecycleTimelineTestCase {
+
+    private File directory;
+
+    @Before
+    public void setup() throws IOException {
+        directory = File.createTempFile("timings", "");
+        directory.delete();
+    }
+
+    @After
+    public void cleanup() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testPhasesAreRecordedInOrder() throws Exception {
+        LifecycleTimeline timeline = new LifecycleTimeline();
+
+        long mark = timeline.record(AndroidLifecycleTimings.PROCESS_SPAWN, System.nanoTime());
+        Thread.sleep(20);
+        mark = timeline.record(AndroidLifecycleTimings.ADB_ATTACH, mark);
+        timeline.record(AndroidLifecycleTimings.ONLINE, mark);
+
+        AndroidLifecycleTimings timings = new AndroidLifecycleTimings("test", timeline.getDurations());
+        assertEquals(Arrays.asList(AndroidLifecycleTimings.PROCESS_SPAWN, AndroidLifecycleTimings.ADB_ATTACH,
+            AndroidLifecycleTimings.ONLINE), new ArrayList<String>(timings.getDurations().keySet()));
+        assertTrue(timings.getDuration(AndroidLifecycleTimings.ADB_ATTACH, TimeUnit.MILLISECONDS) >= 20L);
+        assertEquals(-1L, timings.getDuration(AndroidLifecycleTimings.AVD_CREATION, TimeUnit.MILLISECONDS));
+        assertTrue(timings.getTotal(TimeUnit.MILLISECONDS) >= 20L);
+    }
+
+    @Test
+    public void testTimelineIsWrittenToFile() throws Exception {
+        LifecycleTimeline timeline = new LifecycleTimeline();
+        timeline.setProfile("headless-ci");
+        long mark = timeline.record(AndroidLifecycleTimings.AVD_CREATION, System.nanoTime());
+        timeline.record(AndroidLifecycleTimings.PROCESS_SPAWN, mark);
+
+        File file = timeline.write(directory, "test");
+        assertTrue(file.getName().startsWith("test-"));
+        assertTrue(file.getName().endsWith(LifecycleTimeline.FILE_SUFFIX));
+
+        List<String[]> lines = new ArrayList<String[]>();
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            assertEquals("# profile\theadless-ci", reader.readLine());
+            assertTrue(reader.readLine().startsWith("#"));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line.split("\t"));
+            }
+        } finally {
+            reader.close();
+        }
+        assertEquals(2, lines.size());
+        assertEquals(AndroidLifecycleTimings.AVD_CREATION, lines.get(0)[0]);
+        assertEquals(AndroidLifecycleTimings.PROCESS_SPAWN, lines.get(1)[0]);
+        assertEquals(3, lines.get(1).length);
+        assertTrue(Long.parseLong(lines.get(1)[1]) >= Long.parseLong(lines.get(0)[1]));
+        assertNull(timeline.getDurations().get(AndroidLifecycleTimings.UNLOCK));
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.android.managed.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests chaining of steps to {@link ProcessFuture}.
+ */
+public class ProcessFutureTestCase {
+
+    private ExecutorService service;
+
+    @Before
+    public void setup() {
+        service = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void shutdown() {
+        service.shutdownNow();
+    }
+
+    @Test
+    public void testStepsAreChained() throws Exception {
+        ProcessFuture<Integer> first = new ProcessFuture<Integer>(service);
+
+        ProcessFuture<String> chained = first.thenApply(new ProcessFuture.Step<Integer, Integer>() {
+            @Override
+            public Integer apply(Integer result) {
+                return result + 1;
+            }
+        }).thenCompose(new ProcessFuture.Step<Integer, ProcessFuture<String>>() {
+            @Override
+            public ProcessFuture<String> apply(Integer result) {
+                ProcessFuture<String> next = new ProcessFuture<String>(service);
+                next.complete("result " + result);
+                return next;
+            }
+        });
+
+        first.complete(41);
+        assertEquals("result 42", chained.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testFailureIsPropagated() throws Exception {
+        ProcessFuture<Integer> first = new ProcessFuture<Integer>(service);
+        ProcessFuture<Integer> chained = first.thenApply(new ProcessFuture.Step<Integer, Integer>() {
+            @Override
+            public Integer apply(Integer result) {
+                fail("Step must not be executed when the previous one failed");
+                return result;
+            }
+        });
+
+        first.fail(new IllegalStateException("failed"));
+        try {
+            chained.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void testListenerOfCompletedFutureIsRun() throws Exception {
+        ProcessFuture<Integer> completed = new ProcessFuture<Integer>(service);
+        completed.complete(1);
+
+        final ProcessFuture<Boolean> notified = new ProcessFuture<Boolean>(service);
+        completed.addListener(new Runnable() {
+            @Override
+            public void run() {
+                notified.complete(true);
+            }
+        });
+
+        assertTrue(notified.get(5, TimeUnit.SECONDS));
+    }
+}
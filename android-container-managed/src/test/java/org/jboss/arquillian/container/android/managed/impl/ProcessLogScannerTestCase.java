@@ -0,0 +1,79 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.android.managed.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests incremental scanning of a process log by {@link ProcessLogScanner}.
+ */
+public class ProcessLogScannerTestCase {
+
+    private static final File LOG = new File(System.getProperty("java.io.tmpdir"), "process-log-scanner-test.log");
+
+    @After
+    public void deleteFiles() {
+        LOG.delete();
+    }
+
+    @Test
+    public void testOnlyAppendedLinesAreScanned() throws Exception {
+        ProcessLogScanner scanner = new ProcessLogScanner("test", LOG);
+        ProcessOutputTail tail = new ProcessOutputTail(10, 1024);
+
+        assertEquals(0, scanner.scan(tail));
+
+        append("first\nsec", false);
+        assertEquals(1, scanner.scan(tail));
+        assertEquals(Arrays.asList("first\n"), tail.getLines());
+
+        append("ond\nthird\n", true);
+        assertEquals(2, scanner.scan(tail));
+        assertEquals(0, scanner.scan(tail));
+        assertEquals(Arrays.asList("first\n", "second\n", "third\n"), tail.getLines());
+    }
+
+    @Test
+    public void testTruncatedLogIsScannedFromStart() throws Exception {
+        ProcessLogScanner scanner = new ProcessLogScanner("test", LOG);
+        ProcessOutputTail tail = new ProcessOutputTail(10, 1024);
+
+        append("some long first line\n", false);
+        assertEquals(1, scanner.scan(tail));
+
+        append("new\n", false);
+        assertEquals(1, scanner.scan(tail));
+        assertEquals(Arrays.asList("some long first line\n", "new\n"), tail.getLines());
+    }
+
+    private void append(String text, boolean append) throws IOException {
+        FileOutputStream out = new FileOutputStream(LOG, append);
+        try {
+            out.write(text.getBytes());
+        } finally {
+            out.close();
+        }
+    }
+}
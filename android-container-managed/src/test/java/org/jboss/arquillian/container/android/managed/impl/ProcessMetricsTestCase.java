@@ -0,0 +1,78 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.android.managed.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+
+import org.junit.Test;
+
+/**
+ * Tests execution metrics recorded by {@link ProcessExecutor}.
+ */
+public class ProcessMetricsTestCase {
+
+    @Test
+    public void testHistogramPercentiles() {
+        Histogram histogram = new Histogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(1, histogram.getMin());
+        assertEquals(100, histogram.getMax());
+        assertEquals(50.5, histogram.getMean(), 0.001);
+        // percentiles are approximated by the upper bound of their bucket
+        assertEquals(63, histogram.getPercentile(50));
+        assertEquals(100, histogram.getPercentile(99));
+    }
+
+    @Test
+    public void testExecutableName() {
+        assertEquals("adb", ProcessMetrics.executableName("/opt/android/platform-tools/adb"));
+        assertEquals("android", ProcessMetrics.executableName("C:\\android\\tools\\android.bat".replace('\\',
+            File.separatorChar)));
+    }
+
+    @Test(timeout = 10000)
+    public void testExecutionIsRecorded() throws Exception {
+        assumeTrue(new File("/bin/sh").canExecute());
+
+        ProcessExecutor executor = new ProcessExecutor();
+        try {
+            executor.execute("/bin/sh", "-c", "echo first; echo second");
+            executor.execute("/bin/sh", "-c", "exit 3");
+        } finally {
+            executor.shutdown();
+        }
+
+        ProcessMetrics.CommandStatistics statistics = executor.getMetrics().getStatistics("sh");
+        assertNotNull(statistics);
+        assertEquals(2, statistics.getWallTime().getCount());
+        assertEquals(1, statistics.getTimeToFirstByte().getCount());
+        assertEquals(13, statistics.getBytes().getSum());
+        assertEquals(2, statistics.getLines().getSum());
+        assertEquals(Long.valueOf(1L), statistics.getExitCodes().get(0));
+        assertEquals(Long.valueOf(1L), statistics.getExitCodes().get(3));
+        assertTrue(statistics.getWallTime().getMax() >= statistics.getSpawnLatency().getMax());
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.android.managed.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests splitting of the process output into lines, answering of prompts and throughput of {@link ProcessOutputPump}.
+ */
+public class ProcessOutputPumpTestCase {
+
+    private static final int MEGABYTE = 1024 * 1024;
+
+    @Test
+    public void testLinesAreSplitOnNewLine() throws Exception {
+        List<String> lines = pump("first\nsecond\r\nthird", Collections.<String, String> emptyMap(),
+            new ByteArrayOutputStream());
+
+        assertEquals(3, lines.size());
+        assertEquals("first\n", lines.get(0));
+        assertEquals("second\r\n", lines.get(1));
+        assertEquals("third", lines.get(2));
+    }
+
+    @Test
+    public void testPromptIsAnswered() throws Exception {
+        Map<String, String> prompts = new HashMap<String, String>();
+        prompts.put("Do you wish to create a custom hardware profile [no]", "no\n");
+        prompts.put("Overwrite?", "yes\n");
+
+        ByteArrayOutputStream replies = new ByteArrayOutputStream();
+        List<String> lines = pump("Created AVD\nDo you wish to create a custom hardware profile [no]Done\n", prompts,
+            replies);
+
+        assertEquals("no\n", replies.toString());
+        assertEquals(2, lines.size());
+        assertEquals("Do you wish to create a custom hardware profile [no]Done\n", lines.get(1));
+    }
+
+    @Test
+    public void testPromptIsMatchedOnlyFromLineStart() throws Exception {
+        Map<String, String> prompts = new HashMap<String, String>();
+        prompts.put("[no]", "no\n");
+        prompts.put("profile [no]", "yes\n");
+
+        ByteArrayOutputStream replies = new ByteArrayOutputStream();
+        pump("custom profile [no]\nprofile [no]\n[no]", prompts, replies);
+
+        assertEquals("yes\nno\n", replies.toString());
+    }
+
+    @Test
+    public void testThroughputIsLinear() throws Exception {
+        Map<String, String> prompts = new HashMap<String, String>();
+        prompts.put("Do you wish to create a custom hardware profile [no]", "no\n");
+
+        // warm up
+        pump(generate(MEGABYTE, 80), prompts, new ByteArrayOutputStream());
+
+        // the former implementation was quadratic in the length of the line, so four times longer lines took sixteen
+        // times longer, a single 4MB line took hours
+        assertLinear(generate(2 * MEGABYTE, 2 * MEGABYTE), generate(8 * MEGABYTE, 8 * MEGABYTE), prompts);
+        assertLinear(generate(2 * MEGABYTE, 80), generate(8 * MEGABYTE, 80), prompts);
+    }
+
+    private void assertLinear(String small, String large, Map<String, String> prompts) throws Exception {
+        long smallDuration = fastest(small, prompts);
+        long largeDuration = fastest(large, prompts);
+        long ratio = large.length() / small.length();
+
+        // twice the ratio of the sizes leaves room for noise, the constant for durations too short to be measured
+        assertTrue("Pumping " + large.length() + " characters took " + largeDuration + "ms, " + small.length()
+            + " characters took " + smallDuration + "ms", largeDuration <= 2 * ratio * smallDuration + 50);
+    }
+
+    private long fastest(String output, Map<String, String> prompts) throws Exception {
+        long fastest = Long.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            fastest = Math.min(fastest, measure(output, prompts));
+        }
+        return fastest;
+    }
+
+    private long measure(String output, Map<String, String> prompts) throws Exception {
+        long start = System.currentTimeMillis();
+        List<String> lines = pump(output, prompts, new ByteArrayOutputStream());
+        long duration = System.currentTimeMillis() - start;
+
+        int length = 0;
+        for (String line : lines) {
+            length += line.length();
+        }
+        assertEquals(output.length(), length);
+
+        return duration;
+    }
+
+    private List<String> pump(String output, Map<String, String> prompts, ByteArrayOutputStream replies)
+        throws Exception {
+        final List<String> lines = new ArrayList<String>();
+        new ProcessOutputPump("test", new ByteArrayInputStream(output.getBytes()), replies, prompts)
+            .pump(new ProcessOutputPump.LineHandler() {
+                @Override
+                public void handle(String line) {
+                    lines.add(line);
+                }
+            });
+        return lines;
+    }
+
+    private String generate(int size, int lineLength) {
+        StringBuilder sb = new StringBuilder(size);
+        while (sb.length() < size) {
+            int column = sb.length() % lineLength;
+            sb.append(column == lineLength - 1 ? '\n' : (char) ('a' + column % 26));
+        }
+        return sb.toString();
+    }
+}
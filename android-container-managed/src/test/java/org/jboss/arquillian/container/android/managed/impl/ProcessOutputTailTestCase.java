@@ -0,0 +1,100 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.android.managed.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests that {@link ProcessOutputTail} keeps only the last lines of the output and spills the output to rotated files.
+ */
+public class ProcessOutputTailTestCase {
+
+    private static final File LOG = new File(System.getProperty("java.io.tmpdir"), "process-output-tail-test.log");
+
+    @After
+    public void deleteFiles() {
+        LOG.delete();
+        for (int i = 1; i <= ProcessOutputTail.LOG_BACKUPS + 1; i++) {
+            new File(LOG.getPath() + "." + i).delete();
+        }
+    }
+
+    @Test
+    public void testOldestLinesAreEvicted() {
+        ProcessOutputTail tail = new ProcessOutputTail(3, 1024);
+        for (int i = 0; i < 10; i++) {
+            tail.handle("line" + i + "\n");
+        }
+
+        assertEquals(Arrays.asList("line7\n", "line8\n", "line9\n"), tail.getLines());
+    }
+
+    @Test
+    public void testSizeIsBounded() {
+        ProcessOutputTail tail = new ProcessOutputTail(100, 10);
+        tail.handle("12345\n");
+        tail.handle("abcd\n");
+        tail.handle("xyz\n");
+
+        assertEquals(Arrays.asList("abcd\n", "xyz\n"), tail.getLines());
+
+        tail.handle("a very long line\n");
+        List<String> lines = tail.getLines();
+        assertEquals(1, lines.size());
+        assertEquals("long line\n", lines.get(0));
+    }
+
+    @Test
+    public void testOutputIsSpilledToRotatedFiles() throws Exception {
+        ProcessOutputTail tail = new ProcessOutputTail(2, 1024, LOG, 20);
+        for (int i = 0; i < 20; i++) {
+            tail.handle("line" + i + "\n");
+        }
+        tail.close();
+
+        assertTrue(LOG.exists());
+        for (int i = 1; i <= ProcessOutputTail.LOG_BACKUPS; i++) {
+            assertTrue(new File(LOG.getPath() + "." + i).exists());
+        }
+        assertFalse(new File(LOG.getPath() + "." + (ProcessOutputTail.LOG_BACKUPS + 1)).exists());
+        assertTrue(LOG.length() <= 20);
+    }
+
+    @Test
+    public void testSizeOfSpilledOutputIsCountedInBytes() throws Exception {
+        ProcessOutputTail tail = new ProcessOutputTail(2, 1024, LOG, 20);
+        String line = "\u017e\u017e\u017e\u017e\n";
+        for (int i = 0; i < 10; i++) {
+            tail.handle(line);
+        }
+
+        // output is on the disk before the tail is closed
+        long lineSize = line.getBytes().length;
+        assertTrue(LOG.length() >= lineSize);
+        assertTrue(LOG.length() <= 20);
+        tail.close();
+    }
+}
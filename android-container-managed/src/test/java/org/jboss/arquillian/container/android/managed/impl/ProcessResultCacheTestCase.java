@@ -0,0 +1,173 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.android.managed.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.jboss.arquillian.container.android.managed.configuration.ExecutorStrategy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests caching of outputs of read-only commands by {@link ProcessResultCache}.
+ */
+public class ProcessResultCacheTestCase {
+
+    private static final File TMP = new File(System.getProperty("java.io.tmpdir"));
+
+    private File directory;
+    private File store;
+    private File inputs;
+
+    @Before
+    public void setup() {
+        directory = new File(TMP, "process-result-cache-test");
+        store = new File(directory, "command-cache");
+        inputs = new File(TMP, "process-result-cache-test-inputs");
+        inputs.mkdirs();
+    }
+
+    @After
+    public void deleteFiles() {
+        delete(directory);
+        delete(inputs);
+    }
+
+    private static void delete(File directory) {
+        File[] children = directory.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                child.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testOutputIsPersistedAndInvalidatedByChangedInputs() throws IOException {
+        List<String> command = Arrays.asList("android", "list", "avd");
+        String fingerprint = ProcessResultCache.fingerprint(Collections.singletonList(inputs));
+
+        new ProcessResultCache(store).put(command, fingerprint, Arrays.asList("Name: test\n"));
+
+        // a new instance reads the output stored by the previous one
+        ProcessResultCache cache = new ProcessResultCache(store);
+        assertEquals(Arrays.asList("Name: test\n"), cache.get(command, fingerprint));
+        assertNull(cache.get(Arrays.asList("android", "list", "target"), fingerprint));
+
+        new File(inputs, "new.ini").createNewFile();
+        assertNull(cache.get(command, ProcessResultCache.fingerprint(Collections.singletonList(inputs))));
+    }
+
+    @Test
+    public void testInvalidatedOutputIsNotUsed() {
+        List<String> command = Arrays.asList("android", "list", "avd");
+        ProcessResultCache cache = new ProcessResultCache(store);
+        cache.put(command, "fingerprint", Arrays.asList("Name: test\n"));
+        cache.invalidate();
+
+        assertNull(cache.get(command, "fingerprint"));
+        assertNull(new ProcessResultCache(store).get(command, "fingerprint"));
+    }
+
+    @Test
+    public void testEntriesStoredByConcurrentInstancesAreMerged() {
+        List<String> avds = Arrays.asList("android", "list", "avd");
+        List<String> targets = Arrays.asList("android", "list", "target");
+
+        ProcessResultCache first = new ProcessResultCache(store);
+        ProcessResultCache second = new ProcessResultCache(store);
+        assertNull(second.get(avds, "fingerprint"));
+        first.put(avds, "fingerprint", Arrays.asList("Name: test\n"));
+        second.put(targets, "fingerprint", Arrays.asList("id: 1\n"));
+
+        ProcessResultCache cache = new ProcessResultCache(store);
+        assertEquals(Arrays.asList("Name: test\n"), cache.get(avds, "fingerprint"));
+        assertEquals(Arrays.asList("id: 1\n"), cache.get(targets, "fingerprint"));
+        assertEquals(Arrays.asList("id: 1\n"), first.get(targets, "fingerprint"));
+    }
+
+    @Test
+    public void testOutputIsStoredAsEscapedText() {
+        List<String> command = Arrays.asList("/bin/sh", "-c", "printf 'a\tb\\\\n'");
+        List<String> output = Arrays.asList("a\tb\\\r\n", "", "end\nof output");
+
+        new ProcessResultCache(store).put(command, "finger\nprint", output);
+
+        assertEquals(output, new ProcessResultCache(store).get(command, "finger\nprint"));
+        assertTrue("Store directory was not created", directory.isDirectory());
+    }
+
+    @Test
+    public void testMalformedStoreIsIgnored() throws IOException {
+        List<String> command = Arrays.asList("android", "list", "avd");
+        directory.mkdirs();
+        OutputStream out = new FileOutputStream(store);
+        try {
+            // header of a serialized object
+            out.write(new byte[] { (byte) 0xac, (byte) 0xed, 0x00, 0x05, 0x73, 0x72 });
+        } finally {
+            out.close();
+        }
+
+        ProcessResultCache cache = new ProcessResultCache(store);
+        assertNull(cache.get(command, "fingerprint"));
+        cache.put(command, "fingerprint", Arrays.asList("Name: test\n"));
+        assertEquals(Arrays.asList("Name: test\n"), new ProcessResultCache(store).get(command, "fingerprint"));
+    }
+
+    @Test(timeout = 10000)
+    public void testSuccessfulCommandIsExecutedOnce() throws Exception {
+        assumeTrue(new File("/bin/sh").canExecute());
+
+        File counter = new File(TMP, "process-result-cache-test.counter");
+        counter.delete();
+        ProcessExecutor executor = new ProcessExecutor(ExecutorStrategy.PLATFORM, new ProcessResultCache(store));
+        try {
+            String script = "echo run >> " + counter.getAbsolutePath() + "; echo output";
+            List<File> dependencies = Collections.singletonList(inputs);
+
+            assertEquals(Arrays.asList("output\n"), executor.executeCached(dependencies, "/bin/sh", "-c", script));
+            assertEquals(Arrays.asList("output\n"), executor.executeCached(dependencies, "/bin/sh", "-c", script));
+            assertEquals(1, executor.execute("/bin/cat", counter.getAbsolutePath()).size());
+
+            executor.invalidateCachedResults();
+            executor.executeCached(dependencies, "/bin/sh", "-c", script);
+            assertEquals(2, executor.execute("/bin/cat", counter.getAbsolutePath()).size());
+
+            // failed command is not cached
+            executor.executeCached(dependencies, "/bin/sh", "-c", "echo run >> " + counter.getAbsolutePath() + "; exit 1");
+            executor.executeCached(dependencies, "/bin/sh", "-c", "echo run >> " + counter.getAbsolutePath() + "; exit 1");
+            assertEquals(4, executor.execute("/bin/cat", counter.getAbsolutePath()).size());
+        } finally {
+            executor.shutdown();
+            counter.delete();
+        }
+    }
+}
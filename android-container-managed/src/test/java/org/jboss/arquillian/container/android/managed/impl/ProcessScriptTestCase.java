@@ -0,0 +1,120 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.android.managed.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.arquillian.container.android.api.AndroidExecutionException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests scripted interaction with processes executed by {@link ProcessExecutor}.
+ */
+public class ProcessScriptTestCase {
+
+    private static final ProcessScript NAME_SCRIPT = new ProcessScript()
+        .failOn("^Error: ")
+        .expectOptionally("Are you sure\\? \\[no\\]", "yes\n")
+        .expect("Name( \\[.*\\])?: ", "arquillian\n");
+
+    private ProcessExecutor executor;
+
+    @Before
+    public void setup() {
+        assumeTrue(new File("/bin/sh").canExecute());
+        executor = new ProcessExecutor();
+    }
+
+    @After
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testPromptsAreAnswered() throws Exception {
+        assertEquals(Arrays.asList("Name: Hello arquillian\n"),
+            executor.execute(NAME_SCRIPT, "/bin/sh", "-c", "printf 'Name: '; read name; echo \"Hello $name\""));
+
+        // the script is reusable and the optional step is answered when asked
+        assertEquals(Arrays.asList("Are you sure? [no]Name [x]: yes arquillian\n"),
+            executor.execute(NAME_SCRIPT, "/bin/sh", "-c",
+                "printf 'Are you sure? [no]'; read sure; printf 'Name [x]: '; read name; echo \"$sure $name\""));
+    }
+
+    @Test(timeout = 10000)
+    public void testMissingPromptFailsWithinDeadline() throws Exception {
+        ProcessScript script = new ProcessScript().expect("^Name: ", "arquillian\n").within(200, TimeUnit.MILLISECONDS);
+
+        long start = System.currentTimeMillis();
+        try {
+            executor.execute(script, "/bin/sh", "-c", "printf 'Surname: '; sleep 30");
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof AndroidExecutionException);
+        }
+        assertTrue(System.currentTimeMillis() - start < 5000);
+    }
+
+    @Test(timeout = 10000)
+    public void testAvdCreationWithUnknownPromptFailsWithinTimeout() throws Exception {
+        ProcessScript script = AndroidVirtualDeviceManager.createAvdScript(1, TimeUnit.SECONDS);
+
+        long start = System.currentTimeMillis();
+        try {
+            executor.execute(script, "/bin/sh", "-c", "printf 'Create a custom hardware profile? [no] '; read answer");
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause().getMessage().contains("did not finish"));
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        assertTrue(elapsed >= 1000 && elapsed < 3000);
+    }
+
+    @Test(timeout = 10000)
+    public void testFailureOutputFailsImmediately() throws Exception {
+        long start = System.currentTimeMillis();
+        try {
+            executor.execute(NAME_SCRIPT, "/bin/sh", "-c", "echo 'Error: invalid target'; sleep 30");
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause().getMessage().contains("invalid target"));
+        }
+        assertTrue(System.currentTimeMillis() - start < 5000);
+    }
+
+    @Test(timeout = 10000)
+    public void testProcessFinishedWithoutPromptFails() throws Exception {
+        try {
+            executor.execute(NAME_SCRIPT, "/bin/sh", "-c", "echo done");
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause().getMessage().contains("without prompting"));
+        }
+    }
+}
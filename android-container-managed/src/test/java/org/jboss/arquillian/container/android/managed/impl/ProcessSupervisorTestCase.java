@@ -0,0 +1,91 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.android.managed.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests tracking and killing of processes by {@link ProcessSupervisor}.
+ */
+public class ProcessSupervisorTestCase {
+
+    @Before
+    public void requireShell() {
+        assumeTrue(new File("/bin/sh").canExecute());
+    }
+
+    @Test
+    public void testExitedProcessIsNotTracked() throws Exception {
+        ProcessSupervisor supervisor = new ProcessSupervisor();
+        Process process = new ProcessBuilder("/bin/sh", "-c", "exit 0").start();
+        supervisor.track(process);
+        process.waitFor();
+
+        assertEquals(0, supervisor.size());
+        supervisor.close();
+    }
+
+    @Test(timeout = 10000)
+    public void testLiveProcessesAreDestroyed() throws Exception {
+        ProcessSupervisor supervisor = new ProcessSupervisor();
+        Process first = new ProcessBuilder("/bin/sh", "-c", "sleep 60").start();
+        Process second = new ProcessBuilder("/bin/sh", "-c", "sleep 60").start();
+        supervisor.track(first);
+        supervisor.track(second);
+        assertEquals(2, supervisor.size());
+
+        supervisor.destroyAll(ProcessSupervisor.SHUTDOWN_TIMEOUT_MILLIS);
+        first.waitFor();
+        second.waitFor();
+
+        assertEquals(0, supervisor.size());
+        supervisor.close();
+    }
+
+    @Test(timeout = 10000)
+    public void testProcessSpawnedWithoutShutdownHookIsNotDestroyed() throws Exception {
+        ProcessExecutor executor = new ProcessExecutor();
+        Process tracked = executor.spawnAsync("/bin/sh", "-c", "sleep 60").get();
+        Process untracked = executor.spawnAsyncWithoutShutdownHook("/bin/sh", "-c", "sleep 60").get();
+        try {
+            assertEquals(1, executor.getSupervisor().size());
+
+            executor.getSupervisor().destroyAll(ProcessSupervisor.SHUTDOWN_TIMEOUT_MILLIS);
+            tracked.waitFor();
+            assertFalse(hasExited(untracked));
+        } finally {
+            untracked.destroy();
+            executor.shutdown();
+        }
+    }
+
+    private static boolean hasExited(Process process) {
+        try {
+            process.exitValue();
+            return true;
+        } catch (IllegalThreadStateException e) {
+            return false;
+        }
+    }
+}
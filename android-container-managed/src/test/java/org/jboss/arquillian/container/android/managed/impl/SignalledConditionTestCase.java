@@ -0,0 +1,128 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.android.managed.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+/**
+ * Tests awaiting of {@link SignalledCondition}.
+ */
+public class SignalledConditionTestCase {
+
+    @Test(timeout = 5000)
+    public void testSignalWakesAwaitingThread() throws Exception {
+        final AtomicBoolean holds = new AtomicBoolean();
+        // polling alone would not notice the change in time
+        final SignalledCondition condition = new SignalledCondition(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return holds.get();
+            }
+        }, 60000L, 60000L);
+
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                holds.set(true);
+                condition.signal();
+            }
+        }).start();
+
+        long start = System.currentTimeMillis();
+        assertTrue(condition.await(30, TimeUnit.SECONDS));
+        assertTrue(System.currentTimeMillis() - start < 2000);
+    }
+
+    @Test(timeout = 5000)
+    public void testConditionIsPolledWithoutSignal() throws Exception {
+        final long start = System.currentTimeMillis();
+        SignalledCondition condition = new SignalledCondition(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return System.currentTimeMillis() - start > 200;
+            }
+        });
+
+        assertTrue(condition.await(3, TimeUnit.SECONDS));
+    }
+
+    @Test(timeout = 5000)
+    public void testTimeoutElapses() throws Exception {
+        SignalledCondition condition = new SignalledCondition(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return false;
+            }
+        });
+
+        assertFalse(condition.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test(expected = ExecutionException.class)
+    public void testFailedCheckIsReported() throws Exception {
+        new SignalledCondition(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                throw new IllegalStateException("failed");
+            }
+        }).await(1, TimeUnit.SECONDS);
+    }
+
+    @Test(timeout = 5000)
+    public void testAbortWakesAwaitingThread() throws Exception {
+        final SignalledCondition condition = new SignalledCondition(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return false;
+            }
+        }, 60000L, 60000L);
+
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                condition.abort(new IllegalStateException("crashed"));
+            }
+        }).start();
+
+        try {
+            condition.await(30, TimeUnit.SECONDS);
+            fail("Waiting should have been aborted");
+        } catch (ExecutionException e) {
+            assertEquals("crashed", e.getCause().getMessage());
+        }
+    }
+}
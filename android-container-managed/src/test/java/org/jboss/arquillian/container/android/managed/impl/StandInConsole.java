@@ -0,0 +1,142 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.android.managed.impl;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local stand-in of the emulator console, which greets by a banner and replies to known commands. The first commands of
+ * a connection are replied to only once all of a batch were read.
+ */
+class StandInConsole extends Thread {
+
+    static final String BANNER = "Android Console: type 'help' for a list of commands\r\nOK\r\n";
+
+    private final ServerSocket socket;
+    private final String banner;
+    private final int batch;
+    private final Map<String, String> replies = Collections.synchronizedMap(new HashMap<String, String>());
+    private final Map<String, Runnable> actions = Collections.synchronizedMap(new HashMap<String, Runnable>());
+    private final AtomicInteger connections = new AtomicInteger();
+
+    StandInConsole(String banner, int batch) throws IOException {
+        this.socket = new ServerSocket(0, 5, InetAddress.getByName("127.0.0.1"));
+        this.banner = banner;
+        this.batch = batch;
+        setDaemon(true);
+        start();
+    }
+
+    EmulatorConsole console(File authToken) {
+        return new EmulatorConsole(new InetSocketAddress("127.0.0.1", socket.getLocalPort()), authToken);
+    }
+
+    void reply(String command, String reply) {
+        replies.put(command, reply);
+    }
+
+    /**
+     * Runs an action once a command is replied to, e.g. stops the process of the emulator on kill.
+     */
+    void reply(String command, String reply, Runnable action) {
+        actions.put(command, action);
+        replies.put(command, reply);
+    }
+
+    int getConnections() {
+        return connections.get();
+    }
+
+    void close() throws IOException {
+        socket.close();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                final Socket connection = socket.accept();
+                connections.incrementAndGet();
+                new Thread() {
+                    @Override
+                    public void run() {
+                        serve(connection);
+                    }
+                }.start();
+            }
+        } catch (IOException e) {
+            // closed
+        }
+    }
+
+    private void serve(Socket connection) {
+        try {
+            Writer out = new OutputStreamWriter(connection.getOutputStream(), "UTF-8");
+            BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream(), "UTF-8"));
+            out.write(banner);
+            out.flush();
+            List<String> commands = new ArrayList<String>();
+            int expected = batch;
+            String line;
+            while ((line = in.readLine()) != null) {
+                commands.add(line);
+                if (commands.size() < expected && !line.startsWith("auth ")) {
+                    continue;
+                }
+                for (String command : commands) {
+                    String reply = replies.get(command);
+                    if (reply != null) {
+                        out.write(reply);
+                    }
+                }
+                out.flush();
+                for (String command : commands) {
+                    Runnable action = actions.get(command);
+                    if (action != null) {
+                        action.run();
+                    }
+                }
+                commands.clear();
+                // only the first commands are replied to in a batch
+                expected = 1;
+            }
+        } catch (IOException e) {
+            // closed by the client
+        } finally {
+            try {
+                connection.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+}
@@ -16,12 +16,39 @@
  */
 package org.jboss.arquillian.android.spi.event;
 
+import java.util.concurrent.TimeUnit;
+
 /**
- * Event representing that Android Bridge was initialized and connected.
+ * Event representing that Android Bridge was initialized and connected, it carries how long it took to connect to the
+ * bridge.
  *
  * @author <a href="kpiwko@redhat.com">Karel Piwko</a>
  *
  */
 public class AndroidBridgeInitialized {
 
+    private final long connectionTime;
+
+    public AndroidBridgeInitialized() {
+        this(-1L);
+    }
+
+    /**
+     *
+     * @param connectionTime duration of the connection to the bridge in nanoseconds, including the wait for the initial
+     *        device list when the bridge was created
+     */
+    public AndroidBridgeInitialized(long connectionTime) {
+        this.connectionTime = connectionTime;
+    }
+
+    /**
+     * Returns how long it took to connect to the bridge. Connection to a bridge created by another container is immediate.
+     *
+     * @param unit unit of the duration
+     * @return the duration or {@code -1} if it was not measured
+     */
+    public long getConnectionTime(TimeUnit unit) {
+        return connectionTime < 0 ? -1L : unit.convert(connectionTime, TimeUnit.NANOSECONDS);
+    }
 }
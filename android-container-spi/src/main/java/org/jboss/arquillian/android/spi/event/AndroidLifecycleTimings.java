@@ -0,0 +1,118 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.android.spi.event;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Event representing that an emulator was started, it carries durations of the phases of the start in the order they were
+ * run in. Phases which were not run, e.g. creation of an AVD which already existed, are missing.
+ */
+public class AndroidLifecycleTimings extends AndroidVirtualDeviceEvent {
+
+    public static final String BRIDGE_CONNECTION = "bridgeConnection";
+
+    public static final String ADMISSION_QUEUE = "admissionQueue";
+
+    public static final String SD_CARD_CREATION = "sdCardCreation";
+
+    public static final String AVD_CREATION = "avdCreation";
+
+    public static final String PROCESS_SPAWN = "processSpawn";
+
+    public static final String ADB_ATTACH = "adbAttach";
+
+    public static final String ONLINE = "online";
+
+    public static final String BOOT_COMPLETE = "bootComplete";
+
+    public static final String UNLOCK = "unlock";
+
+    public static final String DRONE_PORT_SETUP = "dronePortSetup";
+
+    private final String profile;
+
+    private final Map<String, Long> durations;
+
+    /**
+     *
+     * @param name name of the AVD
+     * @param durations durations of the phases in nanoseconds
+     */
+    public AndroidLifecycleTimings(String name, Map<String, Long> durations) {
+        this(name, null, durations);
+    }
+
+    /**
+     *
+     * @param name name of the AVD
+     * @param profile name of the emulator profile the emulator was started with, {@code null} if there was none
+     * @param durations durations of the phases in nanoseconds
+     */
+    public AndroidLifecycleTimings(String name, String profile, Map<String, Long> durations) {
+        super(name);
+        this.profile = profile;
+        this.durations = Collections.unmodifiableMap(new LinkedHashMap<String, Long>(durations));
+    }
+
+    /**
+     * Returns the emulator profile the emulator was started with, so boot times of profiles can be compared.
+     *
+     * @return name of the profile or {@code null} if the emulator was started without a profile
+     */
+    public String getProfile() {
+        return profile;
+    }
+
+    /**
+     * Returns durations of the phases.
+     *
+     * @return durations in nanoseconds by the phase, in the order the phases were run in
+     */
+    public Map<String, Long> getDurations() {
+        return durations;
+    }
+
+    /**
+     * Returns duration of a phase.
+     *
+     * @param phase the phase
+     * @param unit unit of the duration
+     * @return the duration or {@code -1} if the phase was not run
+     */
+    public long getDuration(String phase, TimeUnit unit) {
+        Long duration = durations.get(phase);
+        return duration == null ? -1L : unit.convert(duration, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns sum of durations of all the phases.
+     *
+     * @param unit unit of the duration
+     * @return the total duration
+     */
+    public long getTotal(TimeUnit unit) {
+        long total = 0L;
+        for (Long duration : durations.values()) {
+            total += duration;
+        }
+        return unit.convert(total, TimeUnit.NANOSECONDS);
+    }
+}